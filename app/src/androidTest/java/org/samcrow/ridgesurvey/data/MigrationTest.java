@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.samcrow.ridgesurvey.data;
+
+import android.database.Cursor;
+
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.ISODateTimeFormat;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the migrations in {@link Database} produce the schemas exported in app/schemas
+ */
+@RunWith(AndroidJUnit4.class)
+public class MigrationTest {
+    private static final String TEST_DB = "migration-test";
+
+    @Rule
+    public final MigrationTestHelper mHelper = new MigrationTestHelper(
+            InstrumentationRegistry.getInstrumentation(), Database.class);
+
+    /**
+     * Runs each migration on its own, starting from an empty database of the earlier version
+     */
+    @Test
+    public void eachMigration() throws IOException {
+        final int latest = Database.MIGRATIONS[Database.MIGRATIONS.length - 1].endVersion;
+        for (int version = 1; version < latest; version++) {
+            final String name = TEST_DB + "-" + version;
+            mHelper.createDatabase(name, version).close();
+            mHelper.runMigrationsAndValidate(name, version + 1, true, Database.MIGRATIONS)
+                    .close();
+        }
+    }
+
+    /**
+     * Migrates a version 1 database with one event all the way, and checks that the event
+     * keeps its time and is waiting for upload
+     */
+    @Test
+    public void migrateAllWithEvent() throws IOException {
+        final String time = "2016-06-01T10:30:00-07:00";
+        try (SupportSQLiteDatabase db = mHelper.createDatabase(TEST_DB, 1)) {
+            db.execSQL("INSERT INTO SimpleTimedEvent (id, name, time) VALUES (1, 'Break', ?)",
+                    new Object[]{time});
+        }
+
+        final int latest = Database.MIGRATIONS[Database.MIGRATIONS.length - 1].endVersion;
+        try (SupportSQLiteDatabase db = mHelper.runMigrationsAndValidate(TEST_DB, latest, true,
+                Database.MIGRATIONS)) {
+            final long millis = ISODateTimeFormat.dateTimeNoMillis().parseMillis(time);
+            try (Cursor rows = db.query("SELECT name, time, time_offset, route FROM SimpleTimedEvent")) {
+                assertTrue(rows.moveToNext());
+                assertEquals("Break", rows.getString(0));
+                assertEquals(millis, rows.getLong(1));
+                assertEquals(DateTimeZone.getDefault().getOffset(millis), rows.getInt(2));
+                assertEquals("", rows.getString(3));
+            }
+            try (Cursor rows = db.query("SELECT source_id FROM outbox WHERE kind = ?",
+                    new Object[]{OutboxEntry.KIND_TIMED_EVENT})) {
+                assertTrue(rows.moveToNext());
+                assertEquals(1, rows.getInt(0));
+                assertEquals(1, rows.getCount());
+            }
+        }
+    }
+}
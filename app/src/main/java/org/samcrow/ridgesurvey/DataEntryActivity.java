@@ -20,7 +20,6 @@ package org.samcrow.ridgesurvey;
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.Intent;
-import android.database.SQLException;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -31,17 +30,15 @@ import android.widget.Toast;
 import org.jetbrains.annotations.Nullable;
 import org.joda.time.DateTime;
 import org.samcrow.ridgesurvey.data.Observation;
+import org.samcrow.ridgesurvey.data.DatabaseExecutor;
 import org.samcrow.ridgesurvey.data.ObservationDatabase;
 import org.samcrow.ridgesurvey.data.RouteState;
-import org.samcrow.ridgesurvey.data.UploadService;
-import org.samcrow.ridgesurvey.data.UploadStatusTracker;
 
 import java.util.HashMap;
 import java.util.Map;
 
 import androidx.activity.result.contract.ActivityResultContract;
 import androidx.annotation.NonNull;
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 /**
  * An activity that allows the user to enter information
@@ -97,6 +94,11 @@ public class DataEntryActivity extends ObservationActivity {
 
     private RouteState mRouteState;
 
+    /**
+     * If the observation is being saved, so that saving again should do nothing
+     */
+    private boolean mSaving;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -143,6 +145,9 @@ public class DataEntryActivity extends ObservationActivity {
     }
 
     private void submit() {
+        if (mSaving) {
+            return;
+        }
         final boolean observed = mObservedSwitch.isChecked();
         // Collect species data
         final Map<String, Boolean> speciesData = new HashMap<>();
@@ -161,23 +166,30 @@ public class DataEntryActivity extends ObservationActivity {
                 speciesData, notes, observed, testMode);
 
         // Store
-        try {
-            final ObservationDatabase db = new ObservationDatabase(this);
+        mSaving = true;
+        final ObservationDatabase db = new ObservationDatabase(this);
+        DatabaseExecutor.submit(() -> {
             db.insertObservation(observation);
-            Toast.makeText(this, R.string.saved, Toast.LENGTH_SHORT).show();
-            // Start a service to upload the observation
-            startService(new Intent(getApplicationContext(), UploadService.class));
-            // Update the status bar
-            LocalBroadcastManager.getInstance(this)
-                    .sendBroadcast(new Intent(UploadStatusTracker.ACTION_OBSERVATION_MADE));
-            setResult(RESULT_OK);
-            finish();
-        } catch (SQLException e) {
-            new AlertDialog.Builder(this)
-                    .setTitle("Failed to save")
-                    .setMessage(e.getLocalizedMessage())
-                    .show();
-        }
+            return null;
+        }, new DatabaseExecutor.Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                Toast.makeText(DataEntryActivity.this, R.string.saved, Toast.LENGTH_SHORT).show();
+                setResult(RESULT_OK);
+                finish();
+            }
 
+            @Override
+            public void onFailure(@NonNull Exception e) {
+                mSaving = false;
+                if (isFinishing()) {
+                    return;
+                }
+                new AlertDialog.Builder(DataEntryActivity.this)
+                        .setTitle("Failed to save")
+                        .setMessage(e.getLocalizedMessage())
+                        .show();
+            }
+        });
     }
 }
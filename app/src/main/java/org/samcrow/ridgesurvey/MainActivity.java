@@ -23,7 +23,6 @@ import static org.samcrow.ridgesurvey.map.RouteGraphicsKt.readRoutes;
 import android.Manifest;
 import android.annotation.SuppressLint;
 import android.content.DialogInterface;
-import android.content.Intent;
 import android.content.IntentFilter;
 import android.graphics.drawable.ColorDrawable;
 import android.os.Bundle;
@@ -42,7 +41,6 @@ import androidx.appcompat.app.ActionBar;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
-import androidx.room.Room;
 
 import com.google.android.material.snackbar.BaseTransientBottomBar;
 import com.google.android.material.snackbar.Snackbar;
@@ -62,15 +60,15 @@ import org.maplibre.android.maps.MapLibreMap;
 import org.maplibre.android.maps.MapView;
 import org.maplibre.android.maps.Style;
 import org.maplibre.android.style.layers.Layer;
-import org.samcrow.ridgesurvey.data.Database;
+import org.samcrow.ridgesurvey.data.DatabaseExecutor;
 import org.samcrow.ridgesurvey.data.IdentifiedObservation;
 import org.samcrow.ridgesurvey.data.UploadTrigger;
 import org.samcrow.ridgesurvey.data.ObservationDatabase;
 import org.samcrow.ridgesurvey.data.RouteState;
 import org.samcrow.ridgesurvey.data.SimpleTimedEvent;
-import org.samcrow.ridgesurvey.data.SimpleTimedEventDao;
+import org.samcrow.ridgesurvey.data.Outbox;
 import org.samcrow.ridgesurvey.data.UploadMenuItemController;
-import org.samcrow.ridgesurvey.data.UploadService;
+import org.samcrow.ridgesurvey.data.UploadEngine;
 import org.samcrow.ridgesurvey.data.UploadStatusTracker;
 import org.samcrow.ridgesurvey.map.RouteLayer;
 
@@ -124,7 +122,7 @@ public class MainActivity extends AppCompatActivity {
      */
     private RouteState mRouteState;
 
-    private Database mDatabase;
+    private Outbox mOutbox;
     private RouteLayer mRouteLayer;
     private PermissionsManager mLocationPermissions;
     private UploadTrigger mUploadTrigger;
@@ -203,11 +201,11 @@ public class MainActivity extends AppCompatActivity {
 
         final LocalBroadcastManager manager = LocalBroadcastManager.getInstance(this);
         final IntentFilter filter = new IntentFilter();
-        filter.addAction(UploadStatusTracker.ACTION_OBSERVATION_MADE);
         filter.addAction(UploadStatusTracker.ACTION_UPLOAD_STARTED);
         filter.addAction(UploadStatusTracker.ACTION_UPLOAD_SUCCESS);
         filter.addAction(UploadStatusTracker.ACTION_UPLOAD_FAILED);
         manager.registerReceiver(mUploadStatusTracker, filter);
+        new ObservationDatabase(this).addChangeListener(mUploadStatusTracker);
 
         try {
             setUpMap(savedInstanceState);
@@ -219,11 +217,7 @@ public class MainActivity extends AppCompatActivity {
             Log.e(TAG, "Failed to set up map", e);
         }
 
-        mDatabase = Room.databaseBuilder(getApplicationContext(), Database.class, "events")
-                .allowMainThreadQueries()
-                .build();
-
-        startUpload();
+        mOutbox = new Outbox(this);
     }
 
     @Override
@@ -293,11 +287,13 @@ public class MainActivity extends AppCompatActivity {
         mMapView.onCreate(savedInstanceState);
         mMapView.getMapAsync(map -> {
             mMap = map;
-            mRouteLayer = new RouteLayer(new ObservationDatabase(this), mRoutes, mSelectionManager);
+            final ObservationDatabase observationDatabase = new ObservationDatabase(this);
+            mRouteLayer = new RouteLayer(observationDatabase, mRoutes, mSelectionManager);
             mSelectionManager.addSelectionListener(mRouteLayer);
+            observationDatabase.addChangeListener(mRouteLayer);
 
             final Style.Builder style = new Style.Builder()
-                    .fromUri("asset://map_style.json").withSources(mRouteLayer.getSource());
+                    .fromUri("asset://map_style.json").withSources(mRouteLayer.getSources());
             for (Layer layer : createRouteLayers(this)) {
                 style.withLayerBelow(layer, "all_site_labels");
             }
@@ -380,16 +376,24 @@ public class MainActivity extends AppCompatActivity {
                 if (selectedSite != null && selectedSiteRoute != null) {
                     // Look up observations for this site
                     final ObservationDatabase database = new ObservationDatabase(MainActivity.this);
-                    final IdentifiedObservation lastObservation = database.getObservationForSite(selectedSite.getId());
-                    // If this site has been visited, edit the most recent observation
-                    if (lastObservation != null) {
-                        mObservationEditLauncher.launch(lastObservation);
-                    } else {
-                        // Otherwise create a new observation
-                        mDataEntryLauncher.launch(new DataEntryActivity.Arguments(selectedSite,
-                                selectedSiteRoute,
-                                mRouteState));
-                    }
+                    DatabaseExecutor.submit(() -> database.getObservationForSite(selectedSite.getId()),
+                            new DatabaseExecutor.Callback<IdentifiedObservation>() {
+                                @Override
+                                public void onSuccess(IdentifiedObservation lastObservation) {
+                                    if (isFinishing()) {
+                                        return;
+                                    }
+                                    // If this site has been visited, edit the most recent observation
+                                    if (lastObservation != null) {
+                                        mObservationEditLauncher.launch(lastObservation);
+                                    } else {
+                                        // Otherwise create a new observation
+                                        mDataEntryLauncher.launch(new DataEntryActivity.Arguments(selectedSite,
+                                                selectedSiteRoute,
+                                                mRouteState));
+                                    }
+                                }
+                            });
                 } else {
                     new AlertDialog.Builder(MainActivity.this)
                             .setTitle(R.string.no_site_selected)
@@ -419,7 +423,7 @@ public class MainActivity extends AppCompatActivity {
                 return true;
             }
         });
-        final UploadMenuItemController controller = new UploadMenuItemController(uploadItem);
+        final UploadMenuItemController controller = new UploadMenuItemController(this, uploadItem);
         if (mUploadStatusTracker != null) {
             mUploadStatusTracker.addListener(controller);
         }
@@ -453,10 +457,8 @@ public class MainActivity extends AppCompatActivity {
                         final String activeRoute = mRouteState.getRouteName();
 
                         final SimpleTimedEvent event = new SimpleTimedEvent(selectedDateTime, eventName, activeRoute);
-                        final SimpleTimedEventDao dao = mDatabase.simpleTimedEventDao();
-                        dao.insert(event);
-                        // Upload the new event if possible
-                        startUpload();
+                        // The upload trigger uploads the new event when it can
+                        DatabaseExecutor.execute(() -> mOutbox.addTimedEvent(event));
 
                         final String timeString = DateTimeFormat.shortTime().print(selectedDateTime);
                         final Snackbar bar = Snackbar.make(mMapView,
@@ -483,8 +485,8 @@ public class MainActivity extends AppCompatActivity {
         // The data entry activity just returned and an observation was recorded
         // Deselect the site so that the user does not accidentally enter an observation
         // for it after moving to another site
+        // The route layer updates itself when the observation is saved
         mSelectionManager.setSelectedSite(null, null);
-        mRouteLayer.updateVisitedSites();
     }
 
     private void onObservationListClosed() {
@@ -497,13 +499,19 @@ public class MainActivity extends AppCompatActivity {
         super.onDestroy();
         mMapView.onDestroy();
         mUploadTrigger.close();
+        final ObservationDatabase observationDatabase = new ObservationDatabase(this);
+        observationDatabase.removeChangeListener(mUploadStatusTracker);
+        if (mRouteLayer != null) {
+            observationDatabase.removeChangeListener(mRouteLayer);
+        }
+        LocalBroadcastManager.getInstance(this).unregisterReceiver(mUploadStatusTracker);
     }
 
     /**
-     * Starts a service to upload observations
+     * Starts an upload, or queues one if an upload is already running
      */
     private void startUpload() {
-        startService(new Intent(getApplicationContext(), UploadService.class));
+        UploadEngine.getInstance(this).requestUpload(false);
     }
 
     // Close this activity when the user presses the back button
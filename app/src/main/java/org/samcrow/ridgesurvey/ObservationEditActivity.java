@@ -21,7 +21,6 @@ import android.app.Activity;
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.Intent;
-import android.database.SQLException;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -35,8 +34,8 @@ import androidx.annotation.NonNull;
 import org.jetbrains.annotations.Nullable;
 import org.joda.time.DateTime;
 import org.samcrow.ridgesurvey.data.IdentifiedObservation;
+import org.samcrow.ridgesurvey.data.DatabaseExecutor;
 import org.samcrow.ridgesurvey.data.ObservationDatabase;
-import org.samcrow.ridgesurvey.data.UploadService;
 
 import java.util.Map;
 
@@ -52,6 +51,11 @@ public class ObservationEditActivity extends ObservationActivity {
      */
     private IdentifiedObservation mObservation;
 
+    /**
+     * If the observation is being saved, so that saving again should do nothing
+     */
+    private boolean mSaving;
+
     /**
      * This activity's contract requires a non-null {@link IdentifiedObservation} and returns
      * true if the activity created/updated an observation, or false otherwise
@@ -119,6 +123,9 @@ public class ObservationEditActivity extends ObservationActivity {
     }
 
     private void submit() {
+        if (mSaving) {
+            return;
+        }
         final boolean observed = mObservedSwitch.isChecked();
         // Collect species data
         final Map<String, Boolean> speciesData = mObservation.getSpecies();
@@ -138,21 +145,31 @@ public class ObservationEditActivity extends ObservationActivity {
                 speciesData, notes, mObservation.getId(), observed, mObservation.isTest());
 
         // Store
-        try {
-            final ObservationDatabase db = new ObservationDatabase(this);
+        mSaving = true;
+        final ObservationDatabase db = new ObservationDatabase(this);
+        DatabaseExecutor.submit(() -> {
             db.updateObservation(edited);
-            Toast.makeText(this, R.string.saved, Toast.LENGTH_SHORT).show();
-            // Start a service to upload the observation
-            startService(new Intent(getApplicationContext(), UploadService.class));
-            setResult(RESULT_OK);
-            finish();
-        } catch (SQLException e) {
-            new AlertDialog.Builder(this)
-                    .setTitle("Failed to save")
-                    .setMessage(e.getLocalizedMessage())
-                    .show();
-        }
+            return null;
+        }, new DatabaseExecutor.Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                Toast.makeText(ObservationEditActivity.this, R.string.saved, Toast.LENGTH_SHORT).show();
+                setResult(RESULT_OK);
+                finish();
+            }
 
+            @Override
+            public void onFailure(@NonNull Exception e) {
+                mSaving = false;
+                if (isFinishing()) {
+                    return;
+                }
+                new AlertDialog.Builder(ObservationEditActivity.this)
+                        .setTitle("Failed to save")
+                        .setMessage(e.getLocalizedMessage())
+                        .show();
+            }
+        });
     }
 
     @Override
@@ -21,20 +21,22 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnClickListener;
 import android.content.Intent;
-import android.database.SQLException;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.MenuItem.OnMenuItemClickListener;
-import android.widget.ListView;
 import android.widget.Toast;
 
 import org.jetbrains.annotations.Nullable;
-import org.samcrow.ridgesurvey.data.IdentifiedObservation;
+import org.samcrow.ridgesurvey.data.DatabaseExecutor;
+import org.samcrow.ridgesurvey.data.ObservationChange;
+import org.samcrow.ridgesurvey.data.ObservationChangeListener;
 import org.samcrow.ridgesurvey.data.ObservationDatabase;
 import org.samcrow.ridgesurvey.data.ObservationListAdapter;
-import org.samcrow.ridgesurvey.data.UploadService;
+import org.samcrow.ridgesurvey.data.ObservationSummary;
+import org.samcrow.ridgesurvey.data.UploadEngine;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import androidx.activity.result.contract.ActivityResultContract;
@@ -42,8 +44,16 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.ActionBar;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
-public class ObservationListActivity extends AppCompatActivity {
+public class ObservationListActivity extends AppCompatActivity
+        implements ObservationListAdapter.NextPageListener, ObservationChangeListener {
+
+    /**
+     * The number of observations to load at a time
+     */
+    private static final int PAGE_SIZE = 50;
 
     public static class Contract extends ActivityResultContract<Void, Void> {
 
@@ -59,6 +69,39 @@ public class ObservationListActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * The list view
+     */
+    private RecyclerView mList;
+
+    /**
+     * The list model
+     */
+    private ObservationListAdapter mAdapter;
+
+    /**
+     * The observations that have been loaded, newest first
+     */
+    @NonNull
+    private List<ObservationSummary> mObservations = new ArrayList<>();
+
+    /**
+     * If the oldest observation has been loaded
+     */
+    private boolean mEndReached;
+
+    /**
+     * If a page is being loaded
+     */
+    private boolean mLoading;
+
+    /**
+     * Changes that were reported while a page was being loaded, which are applied after the page
+     * is shown
+     */
+    @NonNull
+    private final List<ObservationChange> mDeferredChanges = new ArrayList<>();
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -69,28 +112,145 @@ public class ObservationListActivity extends AppCompatActivity {
         }
 
         setTitle("Recent observations");
+
+        mAdapter = new ObservationListAdapter();
+        mAdapter.setNextPageListener(this);
+        mList = findViewById(R.id.observation_list);
+        mList.setLayoutManager(new LinearLayoutManager(this));
+        mList.setAdapter(mAdapter);
+
+        // Later changes are applied to the loaded observations, so nothing needs to be reloaded
+        new ObservationDatabase(this).addChangeListener(this);
+        loadPage(null);
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        // Load and update sites
-        try {
-            final ObservationDatabase db = new ObservationDatabase(this);
-            final List<IdentifiedObservation> observations = db.getObservationsByTime();
-            final ObservationListAdapter adapter = new ObservationListAdapter(observations);
-
-            final ListView list = findViewById(R.id.observation_list);
-            if (list != null) {
-                list.setAdapter(adapter);
+        // Refresh the "... ago" times without reloading anything
+        mAdapter.notifyItemRangeChanged(0, mAdapter.getItemCount());
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        new ObservationDatabase(this).removeChangeListener(this);
+    }
+
+    @Override
+    public void onObservationChanged(@NonNull ObservationChange change) {
+        if (mLoading) {
+            // The page may or may not include this change, so apply it after the page is shown
+            mDeferredChanges.add(change);
+            return;
+        }
+        applyChange(change);
+    }
+
+    /**
+     * Applies a change to the loaded observations and updates the list
+     * <p>
+     * Applying the same change more than once has the same effect as applying it once.
+     *
+     * @param change the change to apply
+     */
+    private void applyChange(@NonNull ObservationChange change) {
+        final ObservationSummary changed = change.getObservation();
+        final List<ObservationSummary> observations = new ArrayList<>(mObservations);
+        // Remove the old version, if it is loaded
+        for (int i = 0; i < observations.size(); i++) {
+            if (observations.get(i).getId() == changed.getId()) {
+                observations.remove(i);
+                break;
             }
+        }
+        if (change.getType() != ObservationChange.Type.DELETED) {
+            // Insert in order, unless it belongs in a page that has not been loaded yet
+            int position = 0;
+            while (position < observations.size()
+                    && comesBefore(observations.get(position), changed)) {
+                position++;
+            }
+            if (position < observations.size() || mEndReached) {
+                observations.add(position, changed);
+            }
+        }
+        showObservations(observations);
+    }
+
+    /**
+     * Determines if one observation comes before another in the list, which is ordered by time
+     * decreasing and then by ID decreasing
+     */
+    private static boolean comesBefore(@NonNull ObservationSummary a,
+                                       @NonNull ObservationSummary b) {
+        final int timeCompare = a.getTime().compareTo(b.getTime());
+        if (timeCompare != 0) {
+            return timeCompare > 0;
+        }
+        return a.getId() > b.getId();
+    }
+
+    @Override
+    public void onNextPageNeeded() {
+        if (mEndReached || mLoading || mObservations.isEmpty()) {
+            return;
+        }
+        loadPage(mObservations.get(mObservations.size() - 1));
+    }
+
+    /**
+     * Starts loading a page of observations in the background, and adds it to the list when it
+     * has been loaded
+     *
+     * @param after the last loaded observation, or null to load the first page
+     */
+    private void loadPage(@Nullable ObservationSummary after) {
+        mLoading = true;
+        final ObservationDatabase db = new ObservationDatabase(this);
+        DatabaseExecutor.submit(() -> db.getObservationSummaries(after, PAGE_SIZE),
+                new DatabaseExecutor.Callback<List<ObservationSummary>>() {
+                    @Override
+                    public void onSuccess(List<ObservationSummary> page) {
+                        mLoading = false;
+                        mEndReached = page.size() < PAGE_SIZE;
+                        final List<ObservationSummary> observations =
+                                new ArrayList<>(mObservations.size() + page.size());
+                        observations.addAll(mObservations);
+                        observations.addAll(page);
+                        showObservations(observations);
+                        applyDeferredChanges();
+                    }
+
+                    @Override
+                    public void onFailure(@NonNull Exception e) {
+                        mLoading = false;
+                        mEndReached = true;
+                        applyDeferredChanges();
+                        if (!isFinishing()) {
+                            showLoadError(e);
+                        }
+                    }
+                });
+    }
 
-        } catch (SQLException e) {
-            new AlertDialog.Builder(this)
-                    .setTitle("Failed to load observations")
-                    .setMessage(e.getLocalizedMessage())
-                    .show();
+    private void applyDeferredChanges() {
+        for (ObservationChange change : mDeferredChanges) {
+            applyChange(change);
         }
+        mDeferredChanges.clear();
+    }
+
+    private void showObservations(@NonNull List<ObservationSummary> observations) {
+        mObservations = observations;
+        mAdapter.submitList(observations);
+    }
+
+    private void showLoadError(@NonNull Exception e) {
+        new AlertDialog.Builder(this)
+                .setTitle("Failed to load observations")
+                .setMessage(e.getLocalizedMessage())
+                .show();
     }
 
     @Override
@@ -109,10 +269,8 @@ public class ObservationListActivity extends AppCompatActivity {
                         .setPositiveButton(android.R.string.ok, new OnClickListener() {
                             @Override
                             public void onClick(DialogInterface dialog, int which) {
-                                final Intent uploadIntent = new Intent(getApplicationContext(),
-                                        UploadService.class);
-                                uploadIntent.putExtra(UploadService.EXTRA_FORCE_UPLOAD, true);
-                                startService(uploadIntent);
+                                UploadEngine.getInstance(ObservationListActivity.this)
+                                        .requestUpload(true);
                                 Toast.makeText(ObservationListActivity.this, "Uploading", Toast.LENGTH_SHORT).show();
                                 finish();
                             }
@@ -24,12 +24,11 @@ import androidx.annotation.Nullable;
 
 import org.maplibre.android.geometry.LatLng;
 import org.maplibre.android.maps.MapLibreMap;
+import org.samcrow.ridgesurvey.map.SpatialIndex;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Stream;
 
@@ -45,6 +44,10 @@ public class SelectionManager implements MapLibreMap.OnMapClickListener {
     public static final double CLICK_MAX_DISTANCE_M = 40.0;
     private static final String TAG = "SelectionManager";
     private final @NonNull List<RawSite> mSites;
+    /**
+     * An index of mSites by position, for finding the site closest to a click
+     */
+    private final @NonNull SpatialIndex<RawSite> mSiteIndex;
 
     /**
      * The current selected site, or null if none is selected
@@ -81,6 +84,8 @@ public class SelectionManager implements MapLibreMap.OnMapClickListener {
         final Stream<RawSite> sitesStream = routes.stream()
                 .flatMap(route -> route.getSites().stream().map(site -> new RawSite(site, route)));
         mSites = sitesStream.collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        mSiteIndex = new SpatialIndex<>(mSites, site -> site.site.getPosition(),
+                CLICK_MAX_DISTANCE_M);
         mSelectedSite = null;
         mSelectedSiteRoute = null;
         mListeners = new LinkedHashSet<>();
@@ -157,18 +162,11 @@ public class SelectionManager implements MapLibreMap.OnMapClickListener {
      */
     @Override
     public boolean onMapClick(@NonNull LatLng clickLocation) {
-        final Optional<RawSite> maybeClosestSite = mSites.stream()
-                .min(Comparator.comparingDouble(
-                        site -> clickLocation.distanceTo(site.site.getPosition())));
-        if (maybeClosestSite.isPresent()) {
-            final @NonNull RawSite closestSite = maybeClosestSite.get();
-            if (closestSite.site.getPosition().distanceTo(clickLocation) <= CLICK_MAX_DISTANCE_M) {
-                Log.d(TAG, "Clicked on " + closestSite.site.getId());
-                setSelectedSite(closestSite.site, closestSite.route);
-                return true;
-            } else {
-                return false;
-            }
+        final RawSite closestSite = mSiteIndex.nearest(clickLocation, CLICK_MAX_DISTANCE_M);
+        if (closestSite != null) {
+            Log.d(TAG, "Clicked on " + closestSite.site.getId());
+            setSelectedSite(closestSite.site, closestSite.route);
+            return true;
         } else {
             return false;
         }
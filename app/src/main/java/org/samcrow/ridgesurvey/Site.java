@@ -74,7 +74,6 @@ public final class Site implements Parcelable {
     public @NonNull Feature asGeoJson() {
         final Feature feature = Feature.fromGeometry(Point.fromLngLat(mPosition.getLongitude(), mPosition.getLatitude()));
         feature.addStringProperty("name", Integer.toString(mId));
-        feature.addBooleanProperty("visited", false);
         return feature;
     }
 
@@ -38,6 +38,7 @@ import org.joda.time.DateTime;
 import org.joda.time.format.ISODateTimeFormat;
 import org.json.JSONException;
 import org.samcrow.ridgesurvey.data.RouteState;
+import org.samcrow.ridgesurvey.data.DatabaseExecutor;
 import org.samcrow.ridgesurvey.data.StartRouteDatabase;
 
 import java.io.IOException;
@@ -141,7 +142,7 @@ public class StartRouteDialogFragment extends AppCompatDialogFragment {
                 final RouteState newRoute = new RouteState(now, surveyorName, mSelectedRoute, tabletId, sensorId);
 
                 final StartRouteDatabase db = new StartRouteDatabase(activity);
-                db.saveRouteState(newRoute);
+                DatabaseExecutor.execute(() -> db.saveRouteState(newRoute));
 
                 // Launch map activity
                 final Intent mapIntent = new Intent(activity, MainActivity.class);
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey;
+
+import android.app.Application;
+import android.os.StrictMode;
+
+/**
+ * The application
+ * <p>
+ * In debug builds, this enables StrictMode so that any disk access on the main thread is logged.
+ * Database operations should use {@link org.samcrow.ridgesurvey.data.DatabaseExecutor}.
+ */
+public class SurveyApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        if (BuildConfig.DEBUG) {
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .penaltyLog()
+                    .build());
+            StrictMode.setVmPolicy(new StrictMode.VmPolicy.Builder()
+                    .detectLeakedSqlLiteObjects()
+                    .detectLeakedClosableObjects()
+                    .penaltyLog()
+                    .build());
+        }
+    }
+}
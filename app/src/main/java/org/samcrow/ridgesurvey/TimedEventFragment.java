@@ -25,6 +25,7 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import org.samcrow.ridgesurvey.data.Database;
+import org.samcrow.ridgesurvey.data.DatabaseExecutor;
 import org.samcrow.ridgesurvey.data.SimpleTimedEvent;
 import org.samcrow.ridgesurvey.data.SimpleTimedEventDao;
 
@@ -35,7 +36,6 @@ import androidx.annotation.Nullable;
 import androidx.fragment.app.DialogFragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
-import androidx.room.Room;
 
 /**
  * A fragment representing a list of Items.
@@ -71,17 +71,13 @@ public class TimedEventFragment extends DialogFragment {
         recyclerView.setLayoutManager(new LinearLayoutManager(context));
 
         // Load all timed events from the database
-        final Database db = Room.databaseBuilder(context, Database.class, "events")
-                .allowMainThreadQueries()
-                .build();
-        try {
-            final SimpleTimedEventDao dao = db.simpleTimedEventDao();
-            final List<SimpleTimedEvent> events = dao.getAll();
-
-            recyclerView.setAdapter(new MyTimedEventRecyclerViewAdapter(events));
-        } finally {
-            db.close();
-        }
+        final SimpleTimedEventDao dao = Database.getInstance(context).simpleTimedEventDao();
+        DatabaseExecutor.submit(dao::getAll, new DatabaseExecutor.Callback<List<SimpleTimedEvent>>() {
+            @Override
+            public void onSuccess(List<SimpleTimedEvent> events) {
+                recyclerView.setAdapter(new MyTimedEventRecyclerViewAdapter(events));
+            }
+        });
 
         return dialog;
     }
@@ -18,28 +18,33 @@
 package org.samcrow.ridgesurvey.data;
 
 import org.joda.time.DateTime;
-import org.joda.time.format.ISODateTimeFormat;
 
 import androidx.room.TypeConverter;
 
+/**
+ * Room type converters
+ * <p>
+ * Date and time values are stored as milliseconds since 1970-01-01T00:00:00Z, so that they sort
+ * and compare as integers. They are read back in the default time zone.
+ */
 public class Converters {
 
     private Converters() {
     }
 
     @TypeConverter
-    public static DateTime dateTimeFromString(String dateTimeString) {
-        if (dateTimeString != null) {
-            return ISODateTimeFormat.dateTimeNoMillis().parseDateTime(dateTimeString);
+    public static DateTime dateTimeFromMillis(Long millis) {
+        if (millis != null) {
+            return new DateTime(millis.longValue());
         } else {
             return null;
         }
     }
 
     @TypeConverter
-    public static String stringFromDateTime(DateTime dateTime) {
+    public static Long millisFromDateTime(DateTime dateTime) {
         if (dateTime != null) {
-            return ISODateTimeFormat.dateTimeNoMillis().print(dateTime);
+            return dateTime.getMillis();
         } else {
             return null;
         }
@@ -17,19 +17,226 @@
 
 package org.samcrow.ridgesurvey.data;
 
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.annotation.NonNull;
+import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.ISODateTimeFormat;
 
 /**
- * Database of simple timed events
+ * Database of observations, route start events, and simple timed events
  *
  * Changelog:
  *
+ * Version 10: Added revision column to outbox, so that an edit made during an upload is not
+ * lost
+ * Version 9: Added rejections column to outbox, so that only rejections by the server count
+ * towards quarantine
+ * Version 8: Added time_offset to SimpleTimedEvent, so that events keep the time zone where
+ * they were recorded. Existing events get the offset of the default time zone.
+ * Version 7: Added retry_after and quarantined columns to outbox, for isolating failed uploads
+ * Version 6: Added the outbox table, which holds the records waiting for upload. Existing route
+ * starts, simple timed events and observations that have not been uploaded are added to it.
+ * Version 5: Index observations by time, for the paged observation list
+ * Version 4: Added observations and route_start_events tables, which were previously in their own
+ * database files. The old files are imported when the database is opened.
+ * Version 3: Store SimpleTimedEvent times as integer milliseconds instead of ISO 8601 text, and
+ * index them
  * Version 2: Added route field to SimpleTimedEvent
  * Version 1: initial
  */
-@androidx.room.Database(entities = {SimpleTimedEvent.class}, version = 2)
+@androidx.room.Database(entities = {SimpleTimedEvent.class, ObservationEntity.class,
+        RouteStartEvent.class, OutboxEntry.class}, version = 10)
 @TypeConverters({Converters.class})
 public abstract class Database extends RoomDatabase {
+
+    /**
+     * The name of the database file
+     */
+    private static final String NAME = "events";
+
+    /**
+     * The one instance shared by everything in this process
+     */
+    private static Database sInstance;
+
+    /**
+     * The sites that have stored observations
+     */
+    private final VisitedSiteIndex mVisitedSites = new VisitedSiteIndex();
+
+    /**
+     * Reports changes to observations
+     */
+    private final ObservationChangeNotifier mObservationChanges = new ObservationChangeNotifier();
+
+    /**
+     * Reports records added to or changed in the outbox
+     */
+    private final OutboxChangeNotifier mOutboxChanges = new OutboxChangeNotifier();
+
+    /**
+     * All migrations. These are checked against the exported schemas by MigrationTest.
+     */
+    static final Migration[] MIGRATIONS = {
+            new Migration(1, 2) {
+                @Override
+                public void migrate(@NonNull SupportSQLiteDatabase database) {
+                    database.execSQL("ALTER TABLE SimpleTimedEvent ADD COLUMN `route` TEXT NOT NULL DEFAULT ''");
+                }
+            },
+            new Migration(2, 3) {
+                @Override
+                public void migrate(@NonNull SupportSQLiteDatabase database) {
+                    database.execSQL("CREATE TABLE `SimpleTimedEvent_new` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `name` TEXT NOT NULL, `time` INTEGER NOT NULL, `route` TEXT NOT NULL)");
+                    try (Cursor rows = database.query("SELECT id, name, time, route FROM SimpleTimedEvent")) {
+                        while (rows.moveToNext()) {
+                            final ContentValues values = new ContentValues();
+                            values.put("id", rows.getInt(0));
+                            values.put("name", rows.getString(1));
+                            values.put("time", ISODateTimeFormat.dateTimeNoMillis().parseMillis(rows.getString(2)));
+                            values.put("route", rows.getString(3));
+                            database.insert("SimpleTimedEvent_new", SQLiteDatabase.CONFLICT_ABORT, values);
+                        }
+                    }
+                    database.execSQL("DROP TABLE SimpleTimedEvent");
+                    database.execSQL("ALTER TABLE SimpleTimedEvent_new RENAME TO SimpleTimedEvent");
+                    database.execSQL("CREATE INDEX IF NOT EXISTS `index_SimpleTimedEvent_time` ON `SimpleTimedEvent` (`time`)");
+                }
+            },
+            new Migration(3, 4) {
+                @Override
+                public void migrate(@NonNull SupportSQLiteDatabase database) {
+                    // Rows from the old database files are copied in when the database is opened
+                    database.execSQL("CREATE TABLE IF NOT EXISTS `observations` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `uploaded` INTEGER NOT NULL, `site` INTEGER NOT NULL, `route` TEXT NOT NULL, `time` INTEGER NOT NULL, `time_offset` INTEGER NOT NULL, `species_present` INTEGER NOT NULL, `species_known` INTEGER NOT NULL, `species_catalog` INTEGER NOT NULL, `species_extra` TEXT, `notes` TEXT NOT NULL, `test_mode` INTEGER NOT NULL, `observed` INTEGER NOT NULL)");
+                    database.execSQL("CREATE INDEX IF NOT EXISTS `index_observations_site_time` ON `observations` (`site`, `time`)");
+                    database.execSQL("CREATE INDEX IF NOT EXISTS `index_observations_uploaded_time` ON `observations` (`uploaded`, `time`)");
+                    database.execSQL("CREATE TABLE IF NOT EXISTS `route_start_events` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `time` INTEGER NOT NULL, `time_offset` INTEGER NOT NULL, `surveyor` TEXT NOT NULL, `tablet` TEXT NOT NULL, `sensor` TEXT NOT NULL, `route` TEXT NOT NULL)");
+                    database.execSQL("CREATE INDEX IF NOT EXISTS `index_route_start_events_time` ON `route_start_events` (`time`)");
+                }
+            },
+            new Migration(4, 5) {
+                @Override
+                public void migrate(@NonNull SupportSQLiteDatabase database) {
+                    database.execSQL("CREATE INDEX IF NOT EXISTS `index_observations_time` ON `observations` (`time`)");
+                }
+            },
+            new Migration(5, 6) {
+                @Override
+                public void migrate(@NonNull SupportSQLiteDatabase database) {
+                    database.execSQL("CREATE TABLE IF NOT EXISTS `outbox` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `idempotency_key` TEXT NOT NULL, `kind` INTEGER NOT NULL, `source_id` INTEGER NOT NULL, `priority` INTEGER NOT NULL, `not_before` INTEGER NOT NULL, `attempts` INTEGER NOT NULL, `last_error` TEXT)");
+                    database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_outbox_idempotency_key` ON `outbox` (`idempotency_key`)");
+                    database.execSQL("CREATE INDEX IF NOT EXISTS `index_outbox_priority_not_before` ON `outbox` (`priority`, `not_before`)");
+                    database.execSQL("CREATE INDEX IF NOT EXISTS `index_outbox_kind_source_id` ON `outbox` (`kind`, `source_id`)");
+                    Outbox.enqueueMissing(database);
+                }
+            },
+            new Migration(6, 7) {
+                @Override
+                public void migrate(@NonNull SupportSQLiteDatabase database) {
+                    database.execSQL("ALTER TABLE `outbox` ADD COLUMN `retry_after` INTEGER NOT NULL DEFAULT 0");
+                    database.execSQL("ALTER TABLE `outbox` ADD COLUMN `quarantined` INTEGER NOT NULL DEFAULT 0");
+                }
+            },
+            new Migration(7, 8) {
+                @Override
+                public void migrate(@NonNull SupportSQLiteDatabase database) {
+                    database.execSQL("ALTER TABLE `SimpleTimedEvent` ADD COLUMN `time_offset` INTEGER NOT NULL DEFAULT 0");
+                    // The original offsets are unknown. Until now, times were shown in the default
+                    // time zone, so use its offset at each time.
+                    final DateTimeZone zone = DateTimeZone.getDefault();
+                    try (Cursor rows = database.query("SELECT id, time FROM SimpleTimedEvent")) {
+                        while (rows.moveToNext()) {
+                            final ContentValues values = new ContentValues();
+                            values.put("time_offset", zone.getOffset(rows.getLong(1)));
+                            database.update("SimpleTimedEvent", SQLiteDatabase.CONFLICT_ABORT,
+                                    values, "id = ?", new Object[]{rows.getInt(0)});
+                        }
+                    }
+                }
+            },
+            new Migration(8, 9) {
+                @Override
+                public void migrate(@NonNull SupportSQLiteDatabase database) {
+                    // Earlier failures were not classified, so none of them count as rejections
+                    database.execSQL("ALTER TABLE `outbox` ADD COLUMN `rejections` INTEGER NOT NULL DEFAULT 0");
+                }
+            },
+            new Migration(9, 10) {
+                @Override
+                public void migrate(@NonNull SupportSQLiteDatabase database) {
+                    database.execSQL("ALTER TABLE `outbox` ADD COLUMN `revision` INTEGER NOT NULL DEFAULT 0");
+                }
+            },
+    };
+
+    /**
+     * Returns the process-wide database, creating it if necessary
+     * <p>
+     * The database is never closed. Its connection pool stays open with write-ahead logging
+     * enabled, so the upload service can write while the map and observation list read.
+     * <p>
+     * Queries on the main thread are not allowed. Use {@link DatabaseExecutor}.
+     *
+     * @param context a context, whose application context will be used
+     * @return the shared database
+     */
+    @NonNull
+    public static synchronized Database getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            final Context appContext = context.getApplicationContext();
+            sInstance = Room.databaseBuilder(appContext, Database.class, NAME)
+                    .addMigrations(MIGRATIONS)
+                    .addCallback(new Callback() {
+                        @Override
+                        public void onOpen(@NonNull SupportSQLiteDatabase db) {
+                            LegacyDatabaseImporter.importIfNeeded(appContext, db);
+                        }
+                    })
+                    .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
+                    .build();
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return the index of sites that have stored observations, which may not be loaded yet
+     */
+    @NonNull
+    VisitedSiteIndex getVisitedSites() {
+        return mVisitedSites;
+    }
+
+    /**
+     * @return the notifier for observation changes
+     */
+    @NonNull
+    ObservationChangeNotifier getObservationChanges() {
+        return mObservationChanges;
+    }
+
+    /**
+     * @return the notifier for outbox changes
+     */
+    @NonNull
+    OutboxChangeNotifier getOutboxChanges() {
+        return mOutboxChanges;
+    }
+
     public abstract SimpleTimedEventDao simpleTimedEventDao();
+
+    public abstract ObservationDao observationDao();
+
+    public abstract RouteStartDao routeStartDao();
+
+    public abstract OutboxDao outboxDao();
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Runs database operations on one background thread, and delivers their results on the main
+ * thread
+ * <p>
+ * Operations run one at a time, in the order they were submitted. The user interface must use
+ * this instead of accessing the database directly.
+ */
+public final class DatabaseExecutor {
+    private static final String TAG = DatabaseExecutor.class.getSimpleName();
+
+    /**
+     * An operation that produces a result
+     *
+     * @param <T> the result type
+     */
+    public interface Task<T> {
+        T run() throws Exception;
+    }
+
+    /**
+     * Receives the result of a task on the main thread
+     *
+     * @param <T> the result type
+     */
+    public interface Callback<T> {
+        /**
+         * Called when the task completes successfully
+         *
+         * @param result the result of the task
+         */
+        void onSuccess(T result);
+
+        /**
+         * Called when the task throws an exception
+         * <p>
+         * The default implementation logs the exception.
+         *
+         * @param e the exception
+         */
+        default void onFailure(@NonNull Exception e) {
+            Log.e(TAG, "Database operation failed", e);
+        }
+    }
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "Database"));
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    private DatabaseExecutor() {
+    }
+
+    /**
+     * Runs a task in the background and sends its result or exception to a callback on the main
+     * thread
+     *
+     * @param task     the task to run
+     * @param callback the callback to notify
+     * @param <T>      the result type
+     */
+    public static <T> void submit(@NonNull Task<T> task, @NonNull Callback<T> callback) {
+        EXECUTOR.execute(() -> {
+            try {
+                final T result = task.run();
+                MAIN_HANDLER.post(() -> callback.onSuccess(result));
+            } catch (Exception e) {
+                MAIN_HANDLER.post(() -> callback.onFailure(e));
+            }
+        });
+    }
+
+    /**
+     * Runs an operation in the background, logging any exception that it throws
+     *
+     * @param operation the operation to run
+     */
+    public static void execute(@NonNull Runnable operation) {
+        EXECUTOR.execute(() -> {
+            try {
+                operation.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Database operation failed", e);
+            }
+        });
+    }
+}
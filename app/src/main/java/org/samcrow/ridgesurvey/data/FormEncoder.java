@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Encodes rows as application/x-www-form-urlencoded data in a reusable buffer
+ * <p>
+ * Values are percent-encoded as UTF-8 directly into the buffer. The characters that are not
+ * encoded are the same as in {@link android.net.Uri#encode(String)}. Keys are cached as
+ * described in {@link RowEncoder}.
+ * <p>
+ * A null value is encoded as an empty string.
+ * <p>
+ * This class does not depend on Android, so that it can be benchmarked on a desktop JVM.
+ * A FormEncoder is not thread-safe.
+ */
+final class FormEncoder extends RowEncoder {
+    private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * The replacement for an unpaired surrogate, matching String.getBytes()
+     */
+    private static final int REPLACEMENT = '?';
+
+    /**
+     * Encodes all entries of a row
+     *
+     * @param row the keys and values to encode
+     */
+    void addAll(@NonNull Map<String, String> row) {
+        for (Map.Entry<String, String> entry : row.entrySet()) {
+            add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Encodes one key and value
+     *
+     * @param key   the key
+     * @param value the value, or null to encode an empty value
+     */
+    @Override
+    void add(@NonNull String key, @Nullable String value) {
+        if (getLength() != 0) {
+            putByte('&');
+        }
+        putKey(key);
+        putByte('=');
+        if (value != null) {
+            putEncoded(value);
+        }
+    }
+
+    @Override
+    void encodeKey(@NonNull String key) {
+        putEncoded(key);
+    }
+
+    private void putEncoded(@NonNull String text) {
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (isUnreserved(c)) {
+                putByte(c);
+            } else if (c < 0x80) {
+                putPercent(c);
+            } else if (c < 0x800) {
+                putPercent(0xC0 | (c >> 6));
+                putPercent(0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    final int codePoint = Character.toCodePoint(c, text.charAt(i + 1));
+                    i++;
+                    putPercent(0xF0 | (codePoint >> 18));
+                    putPercent(0x80 | ((codePoint >> 12) & 0x3F));
+                    putPercent(0x80 | ((codePoint >> 6) & 0x3F));
+                    putPercent(0x80 | (codePoint & 0x3F));
+                } else {
+                    putPercent(REPLACEMENT);
+                }
+            } else {
+                putPercent(0xE0 | (c >> 12));
+                putPercent(0x80 | ((c >> 6) & 0x3F));
+                putPercent(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Returns true if a character does not need to be encoded
+     */
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '_' || c == '-' || c == '!' || c == '.' || c == '~' || c == '\''
+                || c == '(' || c == ')' || c == '*';
+    }
+
+    private void putPercent(int value) {
+        putByte('%');
+        putByte(HEX_DIGITS[(value >> 4) & 0xF]);
+        putByte(HEX_DIGITS[value & 0xF]);
+    }
+}
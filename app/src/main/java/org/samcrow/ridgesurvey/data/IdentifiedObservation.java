@@ -44,6 +44,14 @@ public class IdentifiedObservation extends Observation implements Parcelable {
         mId = id;
     }
 
+    public IdentifiedObservation(@NonNull DateTime time, boolean uploaded, int siteId,
+                                 @NonNull String routeName,
+                                 @NonNull SpeciesMask species,
+                                 @NonNull String notes, int id, boolean observed, boolean testMode) {
+        super(time, uploaded, siteId, routeName, species, notes, observed, testMode);
+        mId = id;
+    }
+
     /**
      * Returns the ID of this observation
      */
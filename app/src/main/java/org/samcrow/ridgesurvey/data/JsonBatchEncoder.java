@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import java.nio.charset.StandardCharsets;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Encodes a batch of rows as a UTF-8 JSON request body in a reusable buffer
+ * <p>
+ * The body has the form {@code {"rows":[{"key":"value",...},...]}}, which the upload script
+ * reads in batch mode. Each row is written with {@link #startRow()}, one call to
+ * {@link #add(String, String)} for each field, and {@link #endRow()}. {@link #finish()} ends
+ * the body.
+ * <p>
+ * Fields with null values are left out, like in {@link org.json.JSONObject}.
+ * <p>
+ * This class does not depend on Android, so that it can be benchmarked on a desktop JVM.
+ * A JsonBatchEncoder is not thread-safe.
+ */
+final class JsonBatchEncoder extends RowEncoder {
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * The replacement for an unpaired surrogate, matching String.getBytes()
+     */
+    private static final int REPLACEMENT = '?';
+
+    /**
+     * The number of rows started since the last reset
+     */
+    private int mRowCount;
+    /**
+     * If no field has been added to the current row
+     */
+    private boolean mRowEmpty;
+
+    @Override
+    void reset() {
+        super.reset();
+        mRowCount = 0;
+    }
+
+    /**
+     * Starts a row
+     */
+    void startRow() {
+        if (mRowCount == 0) {
+            putAscii("{\"rows\":[");
+        } else {
+            putByte(',');
+        }
+        putByte('{');
+        mRowCount++;
+        mRowEmpty = true;
+    }
+
+    /**
+     * Encodes one field of the current row
+     *
+     * @param key   the key
+     * @param value the value, or null to leave out the field
+     */
+    @Override
+    void add(@NonNull String key, @Nullable String value) {
+        if (value == null) {
+            return;
+        }
+        if (!mRowEmpty) {
+            putByte(',');
+        }
+        mRowEmpty = false;
+        putKey(key);
+        putString(value);
+    }
+
+    /**
+     * Ends the current row
+     */
+    void endRow() {
+        putByte('}');
+    }
+
+    /**
+     * Ends the request body
+     */
+    void finish() {
+        if (mRowCount == 0) {
+            putAscii("{\"rows\":[");
+        }
+        putAscii("]}");
+    }
+
+    @Override
+    void encodeKey(@NonNull String key) {
+        putString(key);
+        putByte(':');
+    }
+
+    /**
+     * Appends a quoted JSON string
+     */
+    private void putString(@NonNull String text) {
+        putByte('"');
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                putByte('\\');
+                putByte(c);
+            } else if (c < 0x20) {
+                putControl(c);
+            } else if (c < 0x80) {
+                putByte(c);
+            } else if (c < 0x800) {
+                putByte(0xC0 | (c >> 6));
+                putByte(0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    final int codePoint = Character.toCodePoint(c, text.charAt(i + 1));
+                    i++;
+                    putByte(0xF0 | (codePoint >> 18));
+                    putByte(0x80 | ((codePoint >> 12) & 0x3F));
+                    putByte(0x80 | ((codePoint >> 6) & 0x3F));
+                    putByte(0x80 | (codePoint & 0x3F));
+                } else {
+                    putByte(REPLACEMENT);
+                }
+            } else {
+                putByte(0xE0 | (c >> 12));
+                putByte(0x80 | ((c >> 6) & 0x3F));
+                putByte(0x80 | (c & 0x3F));
+            }
+        }
+        putByte('"');
+    }
+
+    /**
+     * Appends an escaped control character
+     */
+    private void putControl(char c) {
+        putByte('\\');
+        switch (c) {
+            case '\b':
+                putByte('b');
+                break;
+            case '\f':
+                putByte('f');
+                break;
+            case '\n':
+                putByte('n');
+                break;
+            case '\r':
+                putByte('r');
+                break;
+            case '\t':
+                putByte('t');
+                break;
+            default:
+                putAscii("u00");
+                putByte(HEX_DIGITS[(c >> 4) & 0xF]);
+                putByte(HEX_DIGITS[c & 0xF]);
+                break;
+        }
+    }
+}
@@ -0,0 +1,437 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+/**
+ * Copies observations and route start events from the separate database files that were used
+ * before they were moved into {@link Database}
+ * <p>
+ * Each old file is first upgraded to its final schema version with its original open helper.
+ * Its rows are then copied with their IDs in one transaction, and the file is deleted.
+ */
+final class LegacyDatabaseImporter {
+    private static final String TAG = LegacyDatabaseImporter.class.getSimpleName();
+
+    private LegacyDatabaseImporter() {
+    }
+
+    /**
+     * Imports any old database files that exist into a database
+     *
+     * @param context a context used to find the old files
+     * @param db      the database to import into
+     */
+    static void importIfNeeded(@NonNull Context context, @NonNull SupportSQLiteDatabase db) {
+        importFile(context, db, new ObservationOpenHelper(context), ObservationDatabase.TABLE_NAME);
+        importFile(context, db, new StartRouteOpenHelper(context), StartRouteDatabase.TABLE_NAME);
+    }
+
+    /**
+     * Copies all rows of one table from an old database file, and then deletes the file
+     * <p>
+     * The old table and the new table must have the same columns. Rows with IDs that already
+     * exist in the new table are ignored, so an import that was interrupted can be repeated.
+     *
+     * @param context   a context used to find and delete the old file
+     * @param db        the database to import into
+     * @param helper    an open helper for the old file
+     * @param tableName the name of the table to copy, which is the same in both databases
+     */
+    private static void importFile(@NonNull Context context, @NonNull SupportSQLiteDatabase db,
+                                   @NonNull SQLiteOpenHelper helper, @NonNull String tableName) {
+        final String fileName = helper.getDatabaseName();
+        if (!context.getDatabasePath(fileName).exists()) {
+            return;
+        }
+        Log.i(TAG, "Importing " + tableName + " from old database file " + fileName);
+        int count = 0;
+        try {
+            final SQLiteDatabase oldDb = helper.getReadableDatabase();
+            db.beginTransaction();
+            try (Cursor rows = oldDb.query(tableName, null, null, null, null, null, null)) {
+                while (rows.moveToNext()) {
+                    final ContentValues values = new ContentValues();
+                    DatabaseUtils.cursorRowToContentValues(rows, values);
+                    db.insert(tableName, SQLiteDatabase.CONFLICT_IGNORE, values);
+                    count++;
+                }
+                // Queue the imported rows that have not been uploaded
+                Outbox.enqueueMissing(db);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            helper.close();
+        }
+        context.deleteDatabase(fileName);
+        Log.i(TAG, "Imported " + count + " rows into " + tableName);
+    }
+
+    /**
+     * The open helper for the old observations database file, version 7
+     * <p>
+     * Schema:
+     * id: Observation ID, INTEGER PRIMARY KEY
+     * uploaded: 1/0 uploaded yet or not, INTEGER
+     * site: Site ID, INTEGER
+     * route: Route name, TEXT
+     * time: Time recorded, milliseconds since 1970-01-01T00:00:00Z, INTEGER
+     * time_offset: Offset from UTC of the time zone where the time was recorded, milliseconds,
+     *   INTEGER
+     * species_present, species_known, species_catalog, species_extra: Species, as in
+     *   {@link ObservationEntity}
+     * notes: Notes, TEXT
+     * test_mode: 1/0 recorded in test mode or not, INTEGER
+     * observed: 1/0 observed or not, INTEGER
+     * <p>
+     * Before version 6, species were stored in a species column, as a JSON-formatted map from
+     * column name to boolean present.
+     * <p>
+     * Before version 7, time was stored in ISO 8601 date+time format with milliseconds, as TEXT,
+     * and there was no time_offset column.
+     */
+    private static class ObservationOpenHelper extends SQLiteOpenHelper {
+
+        private static final String NAME = "observations";
+        private static final String TABLE_NAME = ObservationDatabase.TABLE_NAME;
+
+        private static final int VERSION = 7;
+
+        ObservationOpenHelper(Context context) {
+            super(context, NAME, null, VERSION);
+        }
+
+        /**
+         * Returns the create table syntax for the table with the specified name, as it was in
+         * a specific schema version
+         *
+         * @param tableName the name of the table to create
+         * @param version   the schema version, 6 or later
+         * @return SQL to create the table
+         */
+        private static String createSyntax(String tableName, int version) {
+            final String timeColumns = version >= 7
+                    ? "time INTEGER NOT NULL, time_offset INTEGER NOT NULL DEFAULT 0, "
+                    : "time TEXT NOT NULL, ";
+            return "CREATE TABLE " + tableName + " (" +
+                    "id INTEGER NOT NULL PRIMARY KEY, " +
+                    "uploaded INTEGER NOT NULL DEFAULT 0 CHECK (uploaded = 0 OR uploaded = 1), " +
+                    "site INTEGER NOT NULL, " +
+                    "route TEXT NOT NULL, " +
+                    timeColumns +
+                    "species_present INTEGER NOT NULL DEFAULT 0, " +
+                    "species_known INTEGER NOT NULL DEFAULT 0, " +
+                    "species_catalog INTEGER NOT NULL, " +
+                    "species_extra TEXT, " +
+                    "notes TEXT NOT NULL," +
+                    "test_mode INTEGER NOT NULL DEFAULT 0 CHECK (test_mode = 0 OR test_mode = 1)," +
+                    "observed INTEGER NOT NULL DEFAULT 0 CHECK (observed = 0 OR observed = 1) )";
+        }
+
+        /**
+         * Creates the indexes on the table with the specified name
+         *
+         * @param db        the database
+         * @param tableName the name of the table to index
+         */
+        private static void createIndexes(SQLiteDatabase db, String tableName) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS " + tableName + "_site_time ON " + tableName +
+                    " (site, time)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS " + tableName + "_uploaded_time ON " +
+                    tableName + " (uploaded, time)");
+        }
+
+        /**
+         * Binds species to four consecutive statement parameters, in the order species_present,
+         * species_known, species_catalog, species_extra
+         *
+         * @param statement  the statement to bind to
+         * @param firstIndex the index of the species_present parameter
+         * @param species    the species to bind
+         * @throws SQLException if the extra species could not be converted to JSON
+         */
+        private static void bindSpecies(@NonNull SQLiteStatement statement, int firstIndex,
+                                        @NonNull SpeciesMask species) throws SQLException {
+            statement.bindLong(firstIndex, species.getPresent());
+            statement.bindLong(firstIndex + 1, species.getKnown());
+            statement.bindLong(firstIndex + 2, SpeciesCatalog.CURRENT_VERSION);
+            final Map<String, Boolean> extra = species.getExtra();
+            if (extra != null) {
+                statement.bindString(firstIndex + 3, ObservationDatabase.speciesToJson(extra));
+            } else {
+                statement.bindNull(firstIndex + 3);
+            }
+        }
+
+        /**
+         * Replaces the version 5 JSON species column with species masks
+         *
+         * @param db the database
+         */
+        private static void convertSpeciesToMasks(SQLiteDatabase db) {
+            final String copyTable = TABLE_NAME + "_temp";
+            db.execSQL(createSyntax(copyTable, 6));
+            final SQLiteStatement insert = db.compileStatement("INSERT INTO " + copyTable +
+                    " (id, uploaded, site, route, time, species_present, species_known, " +
+                    "species_catalog, species_extra, notes, test_mode, observed) " +
+                    "SELECT id, uploaded, site, route, time, ?, ?, ?, ?, notes, test_mode, " +
+                    "observed FROM " + TABLE_NAME + " WHERE id = ?");
+            try (Cursor rows = db.query(TABLE_NAME, new String[]{"id", "species"}, null, null,
+                    null, null, null)) {
+                while (rows.moveToNext()) {
+                    final int id = rows.getInt(0);
+                    SpeciesMask species;
+                    try {
+                        species = SpeciesMask.fromMap(
+                                ObservationDatabase.speciesFromJson(rows.getString(1)));
+                    } catch (SQLException e) {
+                        Log.w(TAG, "Invalid species in observation " + id, e);
+                        species = SpeciesMask.EMPTY;
+                    }
+                    bindSpecies(insert, 1, species);
+                    insert.bindLong(5, id);
+                    insert.executeInsert();
+                    insert.clearBindings();
+                }
+            } finally {
+                insert.close();
+            }
+            db.execSQL("DROP TABLE " + TABLE_NAME);
+            db.execSQL("ALTER TABLE " + copyTable + " RENAME TO " + TABLE_NAME);
+            createIndexes(db, TABLE_NAME);
+        }
+
+        /**
+         * Replaces the version 6 ISO 8601 time column with time and time_offset columns in
+         * milliseconds
+         *
+         * @param db the database
+         */
+        private static void convertTimesToMillis(SQLiteDatabase db) {
+            final String copyTable = TABLE_NAME + "_temp";
+            db.execSQL(createSyntax(copyTable, 7));
+            final SQLiteStatement insert = db.compileStatement("INSERT INTO " + copyTable +
+                    " (id, uploaded, site, route, time, time_offset, species_present, " +
+                    "species_known, species_catalog, species_extra, notes, test_mode, observed) " +
+                    "SELECT id, uploaded, site, route, ?, ?, species_present, species_known, " +
+                    "species_catalog, species_extra, notes, test_mode, observed FROM " +
+                    TABLE_NAME + " WHERE id = ?");
+            // Keep the offset that was in the text, instead of converting to the local time zone
+            final DateTimeFormatter formatter = ISODateTimeFormat.dateTime().withOffsetParsed();
+            try (Cursor rows = db.query(TABLE_NAME, new String[]{"id", "time"}, null, null,
+                    null, null, null)) {
+                while (rows.moveToNext()) {
+                    final int id = rows.getInt(0);
+                    final DateTime time;
+                    try {
+                        time = formatter.parseDateTime(rows.getString(1));
+                    } catch (IllegalArgumentException e) {
+                        // This row could not be read before, so it is not copied
+                        Log.w(TAG, "Discarding observation " + id + " with invalid time", e);
+                        continue;
+                    }
+                    insert.bindLong(1, time.getMillis());
+                    insert.bindLong(2, time.getZone().getOffset(time.getMillis()));
+                    insert.bindLong(3, id);
+                    insert.executeInsert();
+                    insert.clearBindings();
+                }
+            } finally {
+                insert.close();
+            }
+            db.execSQL("DROP TABLE " + TABLE_NAME);
+            db.execSQL("ALTER TABLE " + copyTable + " RENAME TO " + TABLE_NAME);
+            createIndexes(db, TABLE_NAME);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            // Only called if the file was removed after the existence check. There is nothing
+            // to import, but the table must exist for the import query.
+            db.execSQL(createSyntax(TABLE_NAME, VERSION));
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // Apply each upgrade step in order
+            for (int version = oldVersion; version < newVersion; version++) {
+                upgradeFrom(db, version);
+            }
+        }
+
+        /**
+         * Upgrades the database from one version to the next version
+         *
+         * @param db         the database
+         * @param oldVersion the version to upgrade from
+         */
+        private static void upgradeFrom(SQLiteDatabase db, int oldVersion) {
+            if (oldVersion == 1) {
+                // Add an ID column
+                // Create a new table
+                // (This uses the version 2 schema, because later steps add the other columns)
+                final String copyTable = TABLE_NAME + "_temp";
+                db.execSQL("CREATE TABLE " + copyTable + " (" +
+                        "id INTEGER NOT NULL PRIMARY KEY, " +
+                        "uploaded INTEGER NOT NULL DEFAULT 0 CHECK (uploaded = 0 OR uploaded = 1), " +
+                        "site INTEGER NOT NULL, " +
+                        "route TEXT NOT NULL, " +
+                        "time TEXT NOT NULL, " +
+                        "species TEXT NOT NULL, " +
+                        "notes TEXT NOT NULL)");
+                // Copy everything into the new table
+                // IDs will be assigned automatically
+                db.execSQL("INSERT INTO " + copyTable + " (site, route, time, species, notes)" +
+                        " SELECT site, route, time, species, notes FROM " + TABLE_NAME);
+                // Delete the old table
+                db.execSQL("DROP TABLE " + TABLE_NAME);
+                db.execSQL("ALTER TABLE " + copyTable + " RENAME TO " + TABLE_NAME);
+            } else if (oldVersion == 2) {
+                db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " +
+                        "test_mode INTEGER NOT NULL DEFAULT 0 CHECK (test_mode = 0 OR test_mode = 1)");
+            } else if (oldVersion == 3) {
+                db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " +
+                        "observed INTEGER NOT NULL DEFAULT 0 CHECK (observed = 0 OR observed = 1)");
+            } else if (oldVersion == 4) {
+                createIndexes(db, TABLE_NAME);
+            } else if (oldVersion == 5) {
+                convertSpeciesToMasks(db);
+            } else if (oldVersion == 6) {
+                convertTimesToMillis(db);
+            } else {
+                throw new RuntimeException("Unsupported combination of database versions");
+            }
+        }
+    }
+
+    /**
+     * The open helper for the old route start events database file, version 2
+     * <p>
+     * Schema:
+     * id: event ID, INTEGER PRIMARY KEY
+     * time: Time started, milliseconds since 1970-01-01T00:00:00Z, INTEGER
+     * time_offset: Offset from UTC of the time zone where the route was started, milliseconds,
+     *   INTEGER
+     * surveyor: Surveyor name, TEXT
+     * tablet: Tablet ID, TEXT
+     * sensor: Sensor ID, TEXT
+     * route: Route name, TEXT
+     * <p>
+     * Before version 2, time was stored in ISO 8601 date+time format with milliseconds, as TEXT,
+     * and there was no time_offset column.
+     */
+    private static class StartRouteOpenHelper extends SQLiteOpenHelper {
+
+        private static final String TABLE_NAME = StartRouteDatabase.TABLE_NAME;
+
+        private static final int VERSION = 2;
+
+        StartRouteOpenHelper(Context context) {
+            super(context, TABLE_NAME, null, VERSION);
+        }
+
+        /**
+         * Returns the create table syntax for the table with the specified name
+         *
+         * @param tableName the name of the table to create
+         * @return SQL to create the table
+         */
+        private static String createSyntax(String tableName) {
+            return "CREATE TABLE " + tableName + "(" +
+                    "id INTEGER NOT NULL PRIMARY KEY, " +
+                    "time INTEGER NOT NULL," +
+                    "time_offset INTEGER NOT NULL DEFAULT 0," +
+                    "surveyor TEXT NOT NULL," +
+                    "tablet TEXT NOT NULL," +
+                    "sensor TEXT NOT NULL," +
+                    "route TEXT NOT NULL)";
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL(createSyntax(TABLE_NAME));
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            if (oldVersion == 1 && newVersion == 2) {
+                convertTimesToMillis(db);
+            } else {
+                throw new RuntimeException("Unsupported combination of database versions");
+            }
+        }
+
+        /**
+         * Replaces the version 1 ISO 8601 time column with time and time_offset columns in
+         * milliseconds
+         *
+         * @param db the database
+         */
+        private static void convertTimesToMillis(SQLiteDatabase db) {
+            final String copyTable = TABLE_NAME + "_temp";
+            db.execSQL(createSyntax(copyTable));
+            // Keep the offset that was in the text, instead of converting to the local time zone
+            final DateTimeFormatter formatter = ISODateTimeFormat.dateTime().withOffsetParsed();
+            try (Cursor rows = db.query(TABLE_NAME, null, null, null, null, null, null)) {
+                while (rows.moveToNext()) {
+                    final int id = rows.getInt(rows.getColumnIndexOrThrow("id"));
+                    final String timeText = rows.getString(rows.getColumnIndexOrThrow("time"));
+                    final DateTime time;
+                    try {
+                        time = formatter.parseDateTime(String.valueOf(timeText));
+                    } catch (IllegalArgumentException e) {
+                        // This row could not be read before, so it is not copied. Throwing
+                        // would fail the import every time the database is opened.
+                        Log.w(TAG, "Discarding route start " + id + " with invalid time", e);
+                        continue;
+                    }
+                    final ContentValues values = new ContentValues();
+                    values.put("id", id);
+                    values.put("time", time.getMillis());
+                    values.put("time_offset", time.getZone().getOffset(time.getMillis()));
+                    for (String column : new String[]{"surveyor", "tablet", "sensor", "route"}) {
+                        values.put(column, rows.getString(rows.getColumnIndexOrThrow(column)));
+                    }
+                    db.insertOrThrow(copyTable, null, values);
+                }
+            }
+            db.execSQL("DROP TABLE " + TABLE_NAME);
+            db.execSQL("ALTER TABLE " + copyTable + " RENAME TO " + TABLE_NAME);
+        }
+    }
+}
@@ -21,7 +21,6 @@ import androidx.annotation.NonNull;
 
 import org.joda.time.DateTime;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
@@ -53,11 +52,9 @@ public class Observation {
 
     /**
      * The species that were observed
-     *
-     * Keys in this map are species column names. Values may not be null.
      */
     @NonNull
-    private final Map<String, Boolean> mSpecies;
+    private final SpeciesMask mSpecies;
 
     /**
      * If someone was able to observe this site
@@ -77,16 +74,28 @@ public class Observation {
     @NonNull
     private final String mNotes;
 
+    /**
+     * Creates an observation
+     *
+     * @param species a map from species column name to present/not present. Values may not be
+     *                null.
+     */
     public Observation(@NonNull DateTime time, boolean uploaded, int siteId, @NonNull String routeName,
                        @NonNull Map<String, Boolean> species, @NonNull String notes, boolean observed, boolean test) {
-        for (Boolean value : species.values()) {
-            Objects.requireNonNull(value);
-        }
+        this(time, uploaded, siteId, routeName, SpeciesMask.fromMap(Objects.requireNonNull(species)),
+                notes, observed, test);
+    }
+
+    /**
+     * Creates an observation with species in compact form
+     */
+    public Observation(@NonNull DateTime time, boolean uploaded, int siteId, @NonNull String routeName,
+                       @NonNull SpeciesMask species, @NonNull String notes, boolean observed, boolean test) {
         mTime = Objects.requireNonNull(time);
         mUploaded = uploaded;
         mSiteId = siteId;
         mRouteName = Objects.requireNonNull(routeName);
-        mSpecies = new HashMap<>(Objects.requireNonNull(species));
+        mSpecies = Objects.requireNonNull(species);
         mNotes = Objects.requireNonNull(notes);
         mObserved = observed;
         mTest = test;
@@ -110,9 +119,22 @@ public class Observation {
         return mRouteName;
     }
 
+    /**
+     * Returns the species that were observed
+     *
+     * @return a new mutable map from species column name to present/not present
+     */
     @NonNull
     public Map<String, Boolean> getSpecies() {
-        return new HashMap<>(mSpecies);
+        return mSpecies.toMap();
+    }
+
+    /**
+     * Returns the species that were observed, in compact form
+     */
+    @NonNull
+    public SpeciesMask getSpeciesMask() {
+        return mSpecies;
     }
 
     @NonNull
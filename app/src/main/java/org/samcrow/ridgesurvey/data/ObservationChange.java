@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import java.util.Objects;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A change to one stored observation
+ */
+public final class ObservationChange {
+
+    /**
+     * Kinds of changes
+     */
+    public enum Type {
+        /**
+         * A new observation was stored
+         */
+        INSERTED,
+        /**
+         * An observation was edited
+         */
+        UPDATED,
+        /**
+         * An observation was marked as uploaded
+         */
+        UPLOADED,
+        /**
+         * An observation was deleted
+         */
+        DELETED,
+    }
+
+    @NonNull
+    private final Type mType;
+
+    /**
+     * The observation after the change, or before the change if it was deleted
+     */
+    @NonNull
+    private final ObservationSummary mObservation;
+
+    public ObservationChange(@NonNull Type type, @NonNull ObservationSummary observation) {
+        mType = Objects.requireNonNull(type);
+        mObservation = Objects.requireNonNull(observation);
+    }
+
+    @NonNull
+    public Type getType() {
+        return mType;
+    }
+
+    /**
+     * @return the observation after the change, or before the change if it was deleted
+     */
+    @NonNull
+    public ObservationSummary getObservation() {
+        return mObservation;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ObservationChange{" +
+                "mType=" + mType +
+                ", mObservation=" + mObservation +
+                '}';
+    }
+}
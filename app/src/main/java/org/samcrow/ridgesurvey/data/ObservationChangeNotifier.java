@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Delivers observation changes to listeners on the main thread
+ * <p>
+ * Changes can be reported from any thread. They are delivered in the order they were reported.
+ */
+final class ObservationChangeNotifier {
+
+    @NonNull
+    private final CopyOnWriteArraySet<ObservationChangeListener> mListeners;
+
+    @NonNull
+    private final Handler mMainHandler;
+
+    ObservationChangeNotifier() {
+        mListeners = new CopyOnWriteArraySet<>();
+        mMainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    void addListener(@NonNull ObservationChangeListener listener) {
+        mListeners.add(Objects.requireNonNull(listener));
+    }
+
+    void removeListener(@NonNull ObservationChangeListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Reports a change to all listeners
+     *
+     * @param type        the kind of change
+     * @param observation the observation after the change, or before the change if it was
+     *                    deleted
+     */
+    void notifyChange(@NonNull ObservationChange.Type type,
+                      @NonNull ObservationSummary observation) {
+        if (mListeners.isEmpty()) {
+            return;
+        }
+        final ObservationChange change = new ObservationChange(type, observation);
+        // Always post, so that listeners are never called in the middle of a database operation
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (ObservationChangeListener listener : mListeners) {
+                    listener.onObservationChanged(change);
+                }
+            }
+        });
+    }
+}
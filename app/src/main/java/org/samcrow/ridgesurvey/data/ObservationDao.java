@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import java.util.List;
+
+import androidx.annotation.Nullable;
+import androidx.room.ColumnInfo;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+import androidx.room.Update;
+
+@Dao
+public interface ObservationDao {
+    @Insert
+    long insert(ObservationEntity observation);
+
+    @Update
+    int update(ObservationEntity observation);
+
+    /**
+     * Marks observations as uploaded
+     * <p>
+     * Each ID is a statement parameter, so no more than 999 IDs may be passed at once.
+     */
+    @Query("UPDATE observations SET uploaded = 1 WHERE id IN (:ids)")
+    int markUploaded(List<Integer> ids);
+
+    @Query("DELETE FROM observations WHERE id = :id")
+    int deleteById(int id);
+
+    @Query("SELECT * FROM observations LIMIT 1")
+    ObservationEntity getOne();
+
+    @Query("SELECT * FROM observations WHERE id = :id")
+    ObservationEntity getById(int id);
+
+    /**
+     * Returns the newest observation summaries, using the (time) index
+     */
+    @Query("SELECT id, site, time, time_offset, uploaded FROM observations " +
+            "ORDER BY time DESC, id DESC LIMIT :limit")
+    List<SummaryRow> getNewestSummaries(int limit);
+
+    /**
+     * Returns the observation summaries that come after (are older than) an observation with
+     * the provided time and ID, using the (time) index
+     */
+    @Query("SELECT id, site, time, time_offset, uploaded FROM observations " +
+            "WHERE time <= :time AND (time < :time OR id < :id) " +
+            "ORDER BY time DESC, id DESC LIMIT :limit")
+    List<SummaryRow> getSummariesAfter(long time, int id, int limit);
+
+    /**
+     * Returns the most recent observations of a site, using the (site, time) index
+     */
+    @Query("SELECT * FROM observations WHERE site = :site ORDER BY time DESC LIMIT :limit")
+    List<ObservationEntity> getBySite(int site, int limit);
+
+    @Query("SELECT * FROM observations ORDER BY time DESC")
+    List<ObservationEntity> getAllByTime();
+
+    @Query("SELECT * FROM observations WHERE id IN (:ids)")
+    List<ObservationEntity> getByIds(List<Integer> ids);
+
+    /**
+     * Returns summaries of the uploaded observations recorded before a time
+     */
+    @Query("SELECT id, site, time, time_offset, uploaded FROM observations " +
+            "WHERE uploaded = 1 AND time < :before")
+    List<SummaryRow> getUploadedSummariesBefore(long before);
+
+    /**
+     * Deletes the uploaded observations recorded before a time
+     */
+    @Query("DELETE FROM observations WHERE uploaded = 1 AND time < :before")
+    int deleteUploadedBefore(long before);
+
+    /**
+     * Returns the number of observations that have not been uploaded and the oldest of their
+     * times, using only the (uploaded, time) index
+     */
+    @Query("SELECT COUNT(*) AS count, MIN(time) AS oldestTime FROM observations " +
+            "WHERE uploaded = 0")
+    PendingSummary getPendingSummary();
+
+    @Query("SELECT site, COUNT(*) AS count FROM observations GROUP BY site")
+    List<SiteCount> getSiteCounts();
+
+    /**
+     * The columns of an observation that are shown in the observation list
+     */
+    class SummaryRow {
+        public int id;
+        public int site;
+        public long time;
+        @ColumnInfo(name = "time_offset")
+        public int timeOffset;
+        public boolean uploaded;
+    }
+
+    /**
+     * The number of observations of one site
+     */
+    class SiteCount {
+        public int site;
+        public int count;
+    }
+
+    /**
+     * The number of observations waiting for upload, and the oldest of their times
+     */
+    class PendingSummary {
+        public int count;
+        /**
+         * Milliseconds since 1970-01-01T00:00:00Z, or null if count is zero
+         */
+        @Nullable
+        public Long oldestTime;
+    }
+}
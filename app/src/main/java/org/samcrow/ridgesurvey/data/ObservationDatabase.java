@@ -17,17 +17,13 @@
 
 package org.samcrow.ridgesurvey.data;
 
-import android.content.ContentValues;
 import android.content.Context;
-import android.database.Cursor;
 import android.database.SQLException;
-import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
+import android.util.SparseArray;
 
 import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormatter;
-import org.joda.time.format.ISODateTimeFormat;
+import org.joda.time.DateTimeZone;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -39,102 +35,82 @@ import java.util.Map;
 import java.util.Objects;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 /**
  * Stores {@link Observation} objects in local persistent storage
+ * <p>
+ * Observations are stored in the observations table of {@link Database}. See
+ * {@link ObservationEntity} for the columns.
  */
 public final class ObservationDatabase {
     public static final String TABLE_NAME = "observations";
     private static final String TAG = ObservationDatabase.class.getSimpleName();
-    /*
-     * Schema:
-     * id: Observation ID, INTEGER PRIMARY KEY
-     * uploaded: 1/0 uploaded yet or not, INTEGER
-     * site: Site ID, INTEGER
-     * route: Route name, TEXT
-     * time: Time recorded, ISO 8601 date+time format with milliseconds, TEXT
-     * species: JSON-formatted map from column name to boolean present, TEXT
-     * notes: Notes, TEXT
-     * test_mode: 1/0 recorded in test mode or not, INTEGER
-     * observed: 1/0 observed or not, INTEGER
+
+    /**
+     * The maximum number of observations that can be changed in one batch
+     * <p>
+     * This is below the SQLite limit of 999 statement parameters.
+     */
+    public static final int MAX_BATCH_SIZE = 500;
+
+    /**
+     * The shared database
      */
+    @NonNull
+    private final Database mDatabase;
+
     /**
-     * The open helper used to access the database
+     * The observation DAO of the database
      */
     @NonNull
-    private final SQLiteOpenHelper mOpenHelper;
+    private final ObservationDao mDao;
 
     /**
      * Creates a database accessor
+     * <p>
+     * All accessors in a process share one database and one long-lived connection pool, so
+     * creating an accessor is cheap and does not reopen the database file.
      *
      * @param context a non-null context to use
      */
     public ObservationDatabase(@NonNull Context context) {
         Objects.requireNonNull(context);
-        mOpenHelper = new ObservationOpenHelper(context);
+        mDatabase = Database.getInstance(context);
+        mDao = mDatabase.observationDao();
     }
 
-    private static ContentValues createContentValues(@NonNull Observation observation) {
-        final ContentValues values = new ContentValues();
-        values.put("uploaded", observation.isUploaded() ? 1 : 0);
-        values.put("site", observation.getSiteId());
-        values.put("route", observation.getRouteName());
-
-        final DateTimeFormatter formatter = ISODateTimeFormat.dateTime();
-        values.put("time", formatter.print(observation.getTime()));
-
-        // Convert species to JSON
+    /**
+     * Converts a map from species column name to boolean present into JSON
+     *
+     * @param speciesPresent the species map
+     * @return a JSON representation of the map
+     * @throws SQLException if the map could not be converted
+     */
+    static String speciesToJson(@NonNull Map<String, Boolean> speciesPresent)
+            throws SQLException {
         final JSONObject species = new JSONObject();
         try {
-            for (Map.Entry<String, Boolean> entry : observation.getSpecies().entrySet()) {
+            for (Map.Entry<String, Boolean> entry : speciesPresent.entrySet()) {
                 species.put(entry.getKey(), entry.getValue().booleanValue());
             }
-            values.put("species", species.toString(0));
+            return species.toString(0);
         } catch (JSONException e) {
             final SQLException e1 = new SQLException("JSON problem");
             //noinspection UnnecessaryInitCause (the cause constructor requires API 16)
             e1.initCause(e);
             throw e1;
         }
-
-        values.put("notes", observation.getNotes());
-        values.put("test_mode", observation.isTest());
-        values.put("observed", observation.isObserved());
-
-        return values;
     }
 
-    private static IdentifiedObservation createObservation(Cursor result) throws SQLException {
-        final int idIndex = result.getColumnIndexOrThrow("id");
-        final int uploadedIndex = result.getColumnIndexOrThrow("uploaded");
-        final int siteIndex = result.getColumnIndexOrThrow("site");
-        final int routeIndex = result.getColumnIndexOrThrow("route");
-        final int timeIndex = result.getColumnIndexOrThrow("time");
-        final int speciesIndex = result.getColumnIndexOrThrow("species");
-        final int notesIndex = result.getColumnIndexOrThrow("notes");
-        final int testModeIndex = result.getColumnIndexOrThrow("test_mode");
-        final int observedIndex = result.getColumnIndexOrThrow("observed");
-
-        final int id = result.getInt(idIndex);
-        final boolean uploaded = result.getInt(uploadedIndex) == 1;
-
-        final int site = result.getInt(siteIndex);
-        final String route = result.getString(routeIndex);
-
-        final DateTimeFormatter formatter = ISODateTimeFormat.dateTime();
-        final String timeString = result.getString(timeIndex);
-        DateTime time;
-        try {
-            time = formatter.parseDateTime(timeString);
-        } catch (IllegalArgumentException e) {
-            final SQLException e1 = new SQLException("Invalid date/time value: " + timeString);
-            //noinspection UnnecessaryInitCause
-            e1.initCause(e);
-            throw e1;
-        }
-
-        final String speciesJson = result.getString(speciesIndex);
-
+    /**
+     * Parses a JSON map from species column name to boolean present
+     *
+     * @param speciesJson the JSON text
+     * @return the species map
+     * @throws SQLException if the JSON could not be parsed
+     */
+    static Map<String, Boolean> speciesFromJson(String speciesJson) throws SQLException {
         final Map<String, Boolean> speciesPresent = new HashMap<>();
         // Try to parse
         try {
@@ -148,13 +124,111 @@ public final class ObservationDatabase {
             final SQLException e1 = new SQLException("Species JSON could not be parsed", e);
             throw e1;
         }
+        return speciesPresent;
+    }
+
+    /**
+     * Converts an observation into a row
+     *
+     * @param observation the observation to convert
+     * @param id          the ID of the row, or 0 to assign a new ID when inserting
+     * @return a row containing the observation
+     * @throws SQLException if the extra species could not be converted to JSON
+     */
+    @NonNull
+    private static ObservationEntity toEntity(@NonNull Observation observation, int id)
+            throws SQLException {
+        final DateTime time = observation.getTime();
+        final SpeciesMask species = observation.getSpeciesMask();
+        final Map<String, Boolean> extra = species.getExtra();
+        return new ObservationEntity(id,
+                observation.isUploaded(),
+                observation.getSiteId(),
+                observation.getRouteName(),
+                time.getMillis(),
+                time.getZone().getOffset(time.getMillis()),
+                species.getPresent(),
+                species.getKnown(),
+                SpeciesCatalog.CURRENT_VERSION,
+                extra != null ? speciesToJson(extra) : null,
+                observation.getNotes(),
+                observation.isTest(),
+                observation.isObserved());
+    }
+
+    /**
+     * Converts stored time and time_offset values into a date and time
+     *
+     * @param millis       milliseconds since 1970-01-01T00:00:00Z
+     * @param offsetMillis the offset from UTC where the time was recorded, in milliseconds
+     * @return a date and time in a time zone with the provided fixed offset
+     * @throws SQLException if the offset is out of range
+     */
+    @NonNull
+    private static DateTime timeFromColumns(long millis, int offsetMillis) throws SQLException {
+        try {
+            return new DateTime(millis, DateTimeZone.forOffsetMillis(offsetMillis));
+        } catch (IllegalArgumentException e) {
+            final SQLException e1 = new SQLException("Invalid time offset: " + offsetMillis);
+            //noinspection UnnecessaryInitCause
+            e1.initCause(e);
+            throw e1;
+        }
+    }
 
-        final String notes = result.getString(notesIndex);
+    private static IdentifiedObservation createObservation(ObservationEntity row)
+            throws SQLException {
+        final DateTime time = timeFromColumns(row.getTime(), row.getTimeOffset());
 
-        final boolean testMode = result.getInt(testModeIndex) != 0;
-        final boolean observed = result.getInt(observedIndex) != 0;
+        final int catalogVersion = row.getSpeciesCatalog();
+        if (catalogVersion > SpeciesCatalog.CURRENT_VERSION) {
+            throw new SQLException("Unknown species catalog version " + catalogVersion);
+        }
+        final String extraJson = row.getSpeciesExtra();
+        final Map<String, Boolean> extraSpecies = extraJson != null
+                ? speciesFromJson(extraJson) : null;
+        final SpeciesMask species = new SpeciesMask(row.getSpeciesPresent(),
+                row.getSpeciesKnown(), extraSpecies);
+
+        return new IdentifiedObservation(time, row.isUploaded(), row.getSite(), row.getRoute(),
+                species, row.getNotes(), row.getId(), row.isObserved(), row.isTestMode());
+    }
 
-        return new IdentifiedObservation(time, uploaded, site, route, speciesPresent, notes, id, observed, testMode);
+    /**
+     * Converts rows into observations, skipping rows that contain invalid data
+     *
+     * @param rows the rows to convert
+     * @return the valid observations, in the same order as the rows
+     */
+    @NonNull
+    private static List<IdentifiedObservation> createObservations(
+            @NonNull List<ObservationEntity> rows) {
+        return createObservations(rows, null);
+    }
+
+    /**
+     * Converts rows into observations, skipping rows that contain invalid data
+     *
+     * @param rows   the rows to convert
+     * @param errors if not null, receives the problem with each invalid row, by observation ID
+     * @return the valid observations, in the same order as the rows
+     */
+    @NonNull
+    private static List<IdentifiedObservation> createObservations(
+            @NonNull List<ObservationEntity> rows, @Nullable SparseArray<String> errors) {
+        final List<IdentifiedObservation> observations = new ArrayList<>(rows.size());
+        for (ObservationEntity row : rows) {
+            try {
+                observations.add(createObservation(row));
+            } catch (SQLException e) {
+                Log.w(TAG, "Invalid observation entry", e);
+                if (errors != null) {
+                    errors.put(row.getId(), e.getMessage());
+                }
+                // Continue
+            }
+        }
+        return observations;
     }
 
     /**
@@ -164,29 +238,142 @@ public final class ObservationDatabase {
      * @throws SQLException if an error occurs
      */
     public void insertObservation(@NonNull Observation observation) throws SQLException {
-        final ContentValues values = createContentValues(observation);
-        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
-        try {
-            db.insertOrThrow("observations", null, values);
-        } finally {
-            db.close();
+        final ObservationEntity row = toEntity(observation, 0);
+        final VisitedSiteIndex visitedSites = mDatabase.getVisitedSites();
+        // Hold the index lock so that a concurrent load cannot count this observation twice
+        final int id;
+        synchronized (visitedSites) {
+            id = mDatabase.runInTransaction(() -> {
+                final int newId = (int) mDao.insert(row);
+                mDatabase.outboxDao().insert(OutboxEntry.create(OutboxEntry.KIND_OBSERVATION,
+                        newId, uploadNotBefore(observation)));
+                return newId;
+            });
+            visitedSites.observationInserted(observation.getSiteId());
         }
+        notifyChange(ObservationChange.Type.INSERTED, observation, id);
+        mDatabase.getOutboxChanges().notifyChange();
+    }
+
+    /**
+     * Registers a listener to be notified on the main thread when an observation is inserted,
+     * updated, marked as uploaded, or deleted
+     * <p>
+     * Listeners are shared by all accessors in this process, and are held until they are removed.
+     *
+     * @param listener the listener to add
+     */
+    public void addChangeListener(@NonNull ObservationChangeListener listener) {
+        mDatabase.getObservationChanges().addListener(listener);
+    }
+
+    /**
+     * Unregisters a listener that was added with
+     * {@link #addChangeListener(ObservationChangeListener)}
+     *
+     * @param listener the listener to remove
+     */
+    public void removeChangeListener(@NonNull ObservationChangeListener listener) {
+        mDatabase.getObservationChanges().removeListener(listener);
+    }
+
+    private void notifyChange(@NonNull ObservationChange.Type type,
+                              @NonNull Observation observation, int id) {
+        mDatabase.getObservationChanges().notifyChange(type, new ObservationSummary(id,
+                observation.getSiteId(), observation.getTime(), observation.isUploaded()));
+    }
+
+    /**
+     * Returns an index of the sites that have one or more stored observations
+     * <p>
+     * The first call loads the index with one query. The index is shared by all accessors in this
+     * process and is kept up to date as observations are inserted and deleted.
+     *
+     * @return the visited site index
+     * @throws SQLException if an error occurs
+     */
+    @NonNull
+    public VisitedSiteIndex getVisitedSites() throws SQLException {
+        final VisitedSiteIndex visitedSites = mDatabase.getVisitedSites();
+        visitedSites.loadIfNeeded(mDao);
+        return visitedSites;
     }
 
     /**
      * Updates an observation in the database
+     * <p>
+     * The site of an observation must not be changed by an update.
      *
      * @param observation the observation
      * @throws SQLException if an error occurs
      */
     public void updateObservation(@NonNull IdentifiedObservation observation) throws SQLException {
-        final ContentValues values = createContentValues(observation);
-        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
-        try {
-            db.update(TABLE_NAME, values, "id = ?",
-                    new String[]{Integer.toString(observation.getId())});
-        } finally {
-            db.close();
+        final int id = observation.getId();
+        final boolean updated = mDatabase.runInTransaction(() -> {
+            if (mDao.update(toEntity(observation, id)) == 0) {
+                return false;
+            }
+            if (!observation.isUploaded()) {
+                // Upload the new version, using the existing queue entry if there is one
+                final OutboxDao outbox = mDatabase.outboxDao();
+                final long notBefore = uploadNotBefore(observation);
+                if (outbox.setChanged(OutboxEntry.KIND_OBSERVATION, id, notBefore) == 0) {
+                    outbox.insert(OutboxEntry.create(OutboxEntry.KIND_OBSERVATION, id, notBefore));
+                }
+            }
+            return true;
+        });
+        if (updated) {
+            notifyChange(ObservationChange.Type.UPDATED, observation, id);
+            if (!observation.isUploaded()) {
+                mDatabase.getOutboxChanges().notifyChange();
+            }
+        }
+    }
+
+    /**
+     * Returns the earliest time when an observation should be uploaded, which gives the surveyor
+     * time to correct it
+     */
+    private static long uploadNotBefore(@NonNull Observation observation) {
+        return observation.getTime().getMillis() + UploadEngine.UPLOAD_AGE.getMillis();
+    }
+
+    /**
+     * Marks observations as uploaded, in one transaction
+     * <p>
+     * This does not notify listeners, because it is normally called inside a larger
+     * transaction. Call {@link #notifyUploaded(List)} after that transaction has finished.
+     *
+     * @param observations the observations to mark. At most {@link #MAX_BATCH_SIZE} may be
+     *                     passed.
+     * @throws SQLException if an error occurs
+     */
+    public void markUploaded(@NonNull List<IdentifiedObservation> observations)
+            throws SQLException {
+        if (observations.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Too many observations");
+        }
+        if (observations.isEmpty()) {
+            return;
+        }
+        final List<Integer> ids = new ArrayList<>(observations.size());
+        for (IdentifiedObservation observation : observations) {
+            ids.add(observation.getId());
+        }
+        mDao.markUploaded(ids);
+    }
+
+    /**
+     * Notifies listeners that observations have been marked as uploaded
+     *
+     * @param observations the observations that were marked
+     */
+    void notifyUploaded(@NonNull List<IdentifiedObservation> observations) {
+        for (IdentifiedObservation observation : observations) {
+            mDatabase.getObservationChanges().notifyChange(ObservationChange.Type.UPLOADED,
+                    new ObservationSummary(observation.getId(), observation.getSiteId(),
+                            observation.getTime(), true));
         }
     }
 
@@ -199,24 +386,49 @@ public final class ObservationDatabase {
      * @throws SQLException if an error occurs
      */
     public IdentifiedObservation getOneObservation() throws SQLException {
-        final SQLiteDatabase db = mOpenHelper.getReadableDatabase();
-        try {
-            // Select one
-            final Cursor result = db.query(TABLE_NAME, null, null, null, null, null, null, "1");
-            try {
-                if (result.moveToNext()) {
-                    return createObservation(result);
-                } else {
-                    return null;
-                }
-            } finally {
-                result.close();
-            }
-        } finally {
-            db.close();
+        final ObservationEntity row = mDao.getOne();
+        if (row != null) {
+            return createObservation(row);
+        } else {
+            return null;
         }
     }
 
+    /**
+     * Loads one observation by ID
+     *
+     * @param id the ID of the observation
+     * @return the observation, or null if it does not exist
+     * @throws SQLException if an error occurs or the observation contains invalid data
+     */
+    @Nullable
+    public IdentifiedObservation getObservation(int id) throws SQLException {
+        final ObservationEntity row = mDao.getById(id);
+        if (row != null) {
+            return createObservation(row);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Loads observations by ID
+     * <p>
+     * Rows that contain invalid data are not returned. A description of the problem with each
+     * one is put in {@code errors}.
+     *
+     * @param ids    the IDs of the observations. At most {@link #MAX_BATCH_SIZE} may be passed.
+     * @param errors receives the problem with each invalid row, by observation ID
+     * @return the valid observations that exist, in no particular order
+     * @throws SQLException if an error occurs
+     */
+    @NonNull
+    public List<IdentifiedObservation> getObservations(@NonNull List<Integer> ids,
+                                                       @NonNull SparseArray<String> errors)
+            throws SQLException {
+        return createObservations(mDao.getByIds(ids), errors);
+    }
+
     /**
      * Gets an observation for the site with the provided site ID
      * <p>
@@ -227,22 +439,65 @@ public final class ObservationDatabase {
      * @throws SQLException if an error occurs
      */
     public IdentifiedObservation getObservationForSite(int siteId) throws SQLException {
-        try (SQLiteDatabase db = mOpenHelper.getReadableDatabase()) {
-            try (Cursor result = db.query(TABLE_NAME,
-                    null,
-                    "site = ?",
-                    new String[]{Integer.toString(siteId)},
-                    null,
-                    null,
-                    "time DESC",
-                    "1")) {
-                if (result.moveToNext()) {
-                    return createObservation(result);
-                } else {
-                    return null;
-                }
+        final List<ObservationEntity> rows = mDao.getBySite(siteId, 1);
+        if (!rows.isEmpty()) {
+            return createObservation(rows.get(0));
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Loads the most recent observations of a site
+     * <p>
+     * This reads at most {@code limit} rows from the (site, time) index, so its cost does not
+     * depend on the total number of stored observations.
+     *
+     * @param siteId the site ID to find observations for
+     * @param limit  the maximum number of observations to return
+     * @return up to {@code limit} observations of the site, ordered by time decreasing
+     * (newest first)
+     * @throws SQLException if an error occurs
+     */
+    @NonNull
+    public List<IdentifiedObservation> getSiteHistory(int siteId, int limit) throws SQLException {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative");
+        }
+        return createObservations(mDao.getBySite(siteId, limit));
+    }
+
+    /**
+     * Loads one page of observation summaries, ordered by time decreasing (newest first)
+     * <p>
+     * Pages are found by seeking in the (time) index, so the cost of loading a page does not
+     * depend on how many pages come before it.
+     *
+     * @param after the last summary of the previous page, or null to load the first page
+     * @param limit the maximum number of summaries to load
+     * @return up to {@code limit} summaries that come after {@code after}
+     * @throws SQLException if an error occurs
+     */
+    @NonNull
+    public List<ObservationSummary> getObservationSummaries(@Nullable ObservationSummary after,
+                                                            int limit) throws SQLException {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative");
+        }
+        final List<ObservationDao.SummaryRow> rows = after != null
+                ? mDao.getSummariesAfter(after.getTime().getMillis(), after.getId(), limit)
+                : mDao.getNewestSummaries(limit);
+        final List<ObservationSummary> summaries = new ArrayList<>(rows.size());
+        for (ObservationDao.SummaryRow row : rows) {
+            try {
+                summaries.add(new ObservationSummary(row.id, row.site,
+                        timeFromColumns(row.time, row.timeOffset), row.uploaded));
+            } catch (SQLException e) {
+                Log.w(TAG, "Invalid observation entry", e);
+                // Continue
             }
         }
+        return summaries;
     }
 
     /**
@@ -253,28 +508,62 @@ public final class ObservationDatabase {
      * @throws SQLException if an error occurs
      */
     public List<IdentifiedObservation> getObservationsByTime() throws SQLException {
-        final List<IdentifiedObservation> observations = new ArrayList<>();
+        return createObservations(mDao.getAllByTime());
+    }
 
-        final SQLiteDatabase db = mOpenHelper.getReadableDatabase();
-        try {
-            final Cursor result = db.query(TABLE_NAME, null, null, null, null, null, "time DESC");
-            try {
-                while (result.moveToNext()) {
-                    try {
-                        observations.add(createObservation(result));
-                    } catch (SQLException e) {
-                        Log.w(TAG, "Invalid observation entry", e);
-                        // Continue
-                    }
+    /**
+     * Deletes all uploaded observations recorded before a time
+     * <p>
+     * The rows are deleted with one statement. Their IDs and sites are read first, in the same
+     * transaction, so that listeners and the visited site index can be updated.
+     *
+     * @param recordedBefore the time before which uploaded observations are deleted
+     * @return the number of observations deleted
+     * @throws SQLException if an error occurs
+     */
+    public int deleteUploadedBefore(@NonNull DateTime recordedBefore) throws SQLException {
+        final long before = recordedBefore.getMillis();
+        final VisitedSiteIndex visitedSites = mDatabase.getVisitedSites();
+        final List<ObservationDao.SummaryRow> deleted;
+        synchronized (visitedSites) {
+            deleted = mDatabase.runInTransaction(() -> {
+                final List<ObservationDao.SummaryRow> rows = mDao.getUploadedSummariesBefore(before);
+                if (!rows.isEmpty()) {
+                    mDao.deleteUploadedBefore(before);
                 }
-            } finally {
-                result.close();
+                return rows;
+            });
+            for (ObservationDao.SummaryRow row : deleted) {
+                visitedSites.observationDeleted(row.site);
             }
-        } finally {
-            db.close();
         }
+        final ObservationChangeNotifier changes = mDatabase.getObservationChanges();
+        for (ObservationDao.SummaryRow row : deleted) {
+            try {
+                changes.notifyChange(ObservationChange.Type.DELETED, new ObservationSummary(row.id,
+                        row.site, timeFromColumns(row.time, row.timeOffset), true));
+            } catch (SQLException e) {
+                Log.w(TAG, "Invalid observation entry", e);
+            }
+        }
+        return deleted.size();
+    }
 
-        return observations;
+    /**
+     * Counts the observations that have not been uploaded
+     * <p>
+     * This is one aggregate query over the (uploaded, time) index. It does not load any
+     * observations.
+     *
+     * @return the number of observations waiting for upload and the time of the oldest one
+     * @throws SQLException if an error occurs
+     */
+    @NonNull
+    public PendingUploads getPendingUploads() throws SQLException {
+        final ObservationDao.PendingSummary summary = mDao.getPendingSummary();
+        final DateTime oldestTime = summary.oldestTime != null
+                ? new DateTime(summary.oldestTime.longValue()) : null;
+        return new PendingUploads(summary.count, oldestTime);
     }
 
     /**
@@ -285,75 +574,18 @@ public final class ObservationDatabase {
      * @return true if the observation was deleted, otherwise false
      */
     public boolean delete(IdentifiedObservation observation) {
-        final ContentValues values = createContentValues(observation);
-        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
-        try {
-            final int count = db.delete(TABLE_NAME,
-                    "id = ?",
-                    new String[]{Integer.toString(observation.getId())});
-            return count > 0;
-        } finally {
-            db.close();
-        }
-    }
-
-    private static class ObservationOpenHelper extends SQLiteOpenHelper {
-
-        private static final String NAME = "observations";
-
-        private static final int VERSION = 4;
-
-        ObservationOpenHelper(Context context) {
-            super(context, NAME, null, VERSION);
-        }
-
-        /**
-         * Returns the create table syntax for the table with the specified name
-         *
-         * @param tableName the name of the table to create
-         * @return SQL to create the table
-         */
-        private static String createSyntax(String tableName) {
-            return "CREATE TABLE " + tableName + " (" +
-                    "id INTEGER NOT NULL PRIMARY KEY, " +
-                    "uploaded INTEGER NOT NULL DEFAULT 0 CHECK (uploaded = 0 OR uploaded = 1), " +
-                    "site INTEGER NOT NULL, " +
-                    "route TEXT NOT NULL, " +
-                    "time TEXT NOT NULL, " +
-                    "species TEXT NOT NULL, " +
-                    "notes TEXT NOT NULL," +
-                    "test_mode INTEGER NOT NULL DEFAULT 0 CHECK (test_mode = 0 OR test_mode = 1)," +
-                    "observed INTEGER NOT NULL DEFAULT 0 CHECK (observed = 0 OR observed = 1) )";
-        }
-
-        @Override
-        public void onCreate(SQLiteDatabase db) {
-            db.execSQL(createSyntax(TABLE_NAME));
-        }
-
-        @Override
-        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-            if (oldVersion == 1 && newVersion == 2) {
-                // Add an ID column
-                // Create a new table
-                final String copyTable = TABLE_NAME + "_temp";
-                db.execSQL(createSyntax(copyTable));
-                // Copy everything into the new table
-                // IDs will be assigned automatically
-                db.execSQL("INSERT INTO " + copyTable + " (site, route, time, species, notes)" +
-                        " SELECT site, route, time, species, notes FROM " + TABLE_NAME);
-                // Delete the old table
-                db.execSQL("DROP TABLE " + TABLE_NAME);
-                db.execSQL("ALTER TABLE " + copyTable + " RENAME TO " + TABLE_NAME);
-            } else if (oldVersion == 2 && newVersion == 3) {
-                db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " +
-                        "test_mode INTEGER NOT NULL DEFAULT 0 CHECK (test_mode = 0 OR test_mode = 1)");
-            } else if (oldVersion == 3 && newVersion == 4) {
-                db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " +
-                        "observed INTEGER NOT NULL DEFAULT 0 CHECK (observed = 0 OR observed = 1)");
-            } else {
-                throw new RuntimeException("Unsupported combination of database versions");
+        final VisitedSiteIndex visitedSites = mDatabase.getVisitedSites();
+        synchronized (visitedSites) {
+            final boolean deleted = mDatabase.runInTransaction(() -> {
+                mDatabase.outboxDao().deleteBySource(OutboxEntry.KIND_OBSERVATION,
+                        observation.getId());
+                return mDao.deleteById(observation.getId()) > 0;
+            });
+            if (deleted) {
+                visitedSites.observationDeleted(observation.getSiteId());
+                notifyChange(ObservationChange.Type.DELETED, observation, observation.getId());
             }
+            return deleted;
         }
     }
 }
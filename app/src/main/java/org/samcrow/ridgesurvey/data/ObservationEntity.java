@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * A row of the observations table
+ * <p>
+ * This is the storage form of an {@link IdentifiedObservation}. {@link ObservationDatabase}
+ * converts between the two.
+ */
+@Entity(tableName = ObservationDatabase.TABLE_NAME,
+        indices = {@Index({"site", "time"}), @Index({"uploaded", "time"}), @Index("time")})
+public class ObservationEntity {
+
+    @PrimaryKey(autoGenerate = true)
+    private final int id;
+    private final boolean uploaded;
+    private final int site;
+    @NonNull
+    private final String route;
+    /**
+     * Time recorded, milliseconds since 1970-01-01T00:00:00Z
+     */
+    private final long time;
+    /**
+     * Offset from UTC of the time zone where the time was recorded, milliseconds
+     */
+    @ColumnInfo(name = "time_offset")
+    private final int timeOffset;
+    /**
+     * Bit mask of species present, indexed by SpeciesCatalog
+     */
+    @ColumnInfo(name = "species_present")
+    private final long speciesPresent;
+    /**
+     * Bit mask of species with a recorded value, indexed by SpeciesCatalog
+     */
+    @ColumnInfo(name = "species_known")
+    private final long speciesKnown;
+    /**
+     * Version of SpeciesCatalog used to encode the masks
+     */
+    @ColumnInfo(name = "species_catalog")
+    private final int speciesCatalog;
+    /**
+     * JSON-formatted map from column name to boolean present for species not in the catalog,
+     * or null if there are none
+     */
+    @Nullable
+    @ColumnInfo(name = "species_extra")
+    private final String speciesExtra;
+    @NonNull
+    private final String notes;
+    @ColumnInfo(name = "test_mode")
+    private final boolean testMode;
+    private final boolean observed;
+
+    public ObservationEntity(int id, boolean uploaded, int site, @NonNull String route, long time,
+                             int timeOffset, long speciesPresent, long speciesKnown,
+                             int speciesCatalog, @Nullable String speciesExtra,
+                             @NonNull String notes, boolean testMode, boolean observed) {
+        this.id = id;
+        this.uploaded = uploaded;
+        this.site = site;
+        this.route = route;
+        this.time = time;
+        this.timeOffset = timeOffset;
+        this.speciesPresent = speciesPresent;
+        this.speciesKnown = speciesKnown;
+        this.speciesCatalog = speciesCatalog;
+        this.speciesExtra = speciesExtra;
+        this.notes = notes;
+        this.testMode = testMode;
+        this.observed = observed;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public boolean isUploaded() {
+        return uploaded;
+    }
+
+    public int getSite() {
+        return site;
+    }
+
+    @NonNull
+    public String getRoute() {
+        return route;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public int getTimeOffset() {
+        return timeOffset;
+    }
+
+    public long getSpeciesPresent() {
+        return speciesPresent;
+    }
+
+    public long getSpeciesKnown() {
+        return speciesKnown;
+    }
+
+    public int getSpeciesCatalog() {
+        return speciesCatalog;
+    }
+
+    @Nullable
+    public String getSpeciesExtra() {
+        return speciesExtra;
+    }
+
+    @NonNull
+    public String getNotes() {
+        return notes;
+    }
+
+    public boolean isTestMode() {
+        return testMode;
+    }
+
+    public boolean isObserved() {
+        return observed;
+    }
+}
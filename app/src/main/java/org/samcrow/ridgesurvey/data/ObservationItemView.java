@@ -20,13 +20,16 @@ package org.samcrow.ridgesurvey.data;
 import android.content.Context;
 import android.content.Intent;
 import android.util.AttributeSet;
+import android.util.Log;
 import android.view.Gravity;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.TextView;
+import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import org.joda.time.DateTime;
@@ -40,6 +43,7 @@ import java.util.Locale;
  * Displays an observation in a list
  */
 public class ObservationItemView extends LinearLayout {
+    private static final String TAG = ObservationItemView.class.getSimpleName();
 
     private static final int PADDING = 30;
 
@@ -47,7 +51,7 @@ public class ObservationItemView extends LinearLayout {
      * The observation to display
      */
     @Nullable
-    private IdentifiedObservation mObservation;
+    private ObservationSummary mObservation;
 
     /**
      * The primary text view
@@ -116,7 +120,7 @@ public class ObservationItemView extends LinearLayout {
         });
     }
 
-    public void setObservation(@Nullable IdentifiedObservation observation) {
+    public void setObservation(@Nullable ObservationSummary observation) {
         mObservation = observation;
         if (mObservation != null) {
             mPrimaryText.setText(String.format(Locale.getDefault(), "Site %d", mObservation.getSiteId()));
@@ -153,11 +157,33 @@ public class ObservationItemView extends LinearLayout {
     }
 
     /**
-     * Opens an activity to edit the observation
+     * Loads the full observation and opens an activity to edit it
      */
     private void openEditActivity() {
-        final Intent intent =
-                new ObservationEditActivity.EditContract().createIntent(getContext(), mObservation);
-        getContext().startActivity(intent);
+        if (mObservation == null) {
+            return;
+        }
+        final int id = mObservation.getId();
+        final ObservationDatabase db = new ObservationDatabase(getContext());
+        DatabaseExecutor.submit(() -> db.getObservation(id),
+                new DatabaseExecutor.Callback<IdentifiedObservation>() {
+                    @Override
+                    public void onSuccess(IdentifiedObservation observation) {
+                        if (observation == null) {
+                            // Deleted since the list was loaded
+                            return;
+                        }
+                        final Intent intent = new ObservationEditActivity.EditContract()
+                                .createIntent(getContext(), observation);
+                        getContext().startActivity(intent);
+                    }
+
+                    @Override
+                    public void onFailure(@NonNull Exception e) {
+                        Log.e(TAG, "Failed to load observation " + id, e);
+                        Toast.makeText(getContext(), "Failed to load observation",
+                                Toast.LENGTH_SHORT).show();
+                    }
+                });
     }
 }
@@ -17,58 +17,97 @@
 
 package org.samcrow.ridgesurvey.data;
 
-import android.view.View;
 import android.view.ViewGroup;
-import android.widget.BaseAdapter;
-import android.widget.TextView;
 
-import java.util.List;
-import java.util.Locale;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
 
 /**
  * A model for an observation list
+ * <p>
+ * Lists passed to {@link #submitList(java.util.List)} are compared with the current list on a
+ * background thread, and only the items that changed are rebound.
  */
-public class ObservationListAdapter extends BaseAdapter {
+public class ObservationListAdapter
+        extends ListAdapter<ObservationSummary, ObservationListAdapter.ViewHolder> {
 
     /**
-     * The observations
+     * An interface for objects that load more observations when the end of the list is near
      */
-    private final List<IdentifiedObservation> mObservations;
+    public interface NextPageListener {
+        /**
+         * Called when an item near the end of the list is displayed
+         */
+        void onNextPageNeeded();
+    }
+
+    /**
+     * When an item this close to the end of the list is displayed, the next page is requested
+     */
+    private static final int PREFETCH_DISTANCE = 20;
+
+    private static final DiffUtil.ItemCallback<ObservationSummary> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<ObservationSummary>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull ObservationSummary oldItem,
+                                               @NonNull ObservationSummary newItem) {
+                    return oldItem.getId() == newItem.getId();
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull ObservationSummary oldItem,
+                                                  @NonNull ObservationSummary newItem) {
+                    return oldItem.equals(newItem);
+                }
+            };
+
+    /**
+     * The listener to notify when more observations are needed
+     */
+    @Nullable
+    private NextPageListener mNextPageListener;
 
-    public ObservationListAdapter(
-            List<IdentifiedObservation> observations) {
-        mObservations = observations;
+    public ObservationListAdapter() {
+        super(DIFF_CALLBACK);
+        setHasStableIds(true);
     }
 
-    @Override
-    public int getCount() {
-        return mObservations.size();
+    public void setNextPageListener(@Nullable NextPageListener listener) {
+        mNextPageListener = listener;
     }
 
     @Override
-    public Object getItem(int position) {
-        return mObservations.get(position);
+    public long getItemId(int position) {
+        return getItem(position).getId();
     }
 
+    @NonNull
     @Override
-    public long getItemId(int position) {
-        return mObservations.get(position).getId();
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        final ObservationItemView view = new ObservationItemView(parent.getContext());
+        view.setLayoutParams(new RecyclerView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+        return new ViewHolder(view);
     }
 
     @Override
-    public View getView(int position, View convertView, ViewGroup parent) {
-        final IdentifiedObservation observation = mObservations.get(position);
-        if (observation == null) {
-            return null;
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        holder.mView.setObservation(getItem(position));
+        if (mNextPageListener != null && position >= getItemCount() - PREFETCH_DISTANCE) {
+            mNextPageListener.onNextPageNeeded();
         }
-        ObservationItemView view;
-        if (convertView != null) {
-            view = (ObservationItemView) convertView;
-        } else {
-            view = new ObservationItemView(parent.getContext());
-        }
-        view.setObservation(observation);
+    }
 
-        return view;
+    public static class ViewHolder extends RecyclerView.ViewHolder {
+        @NonNull
+        public final ObservationItemView mView;
+
+        public ViewHolder(@NonNull ObservationItemView view) {
+            super(view);
+            mView = view;
+        }
     }
 }
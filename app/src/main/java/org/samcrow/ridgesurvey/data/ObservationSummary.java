@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import org.joda.time.DateTime;
+
+import java.util.Objects;
+
+import androidx.annotation.NonNull;
+
+/**
+ * The parts of a stored observation that are shown in the observation list
+ * <p>
+ * Loading summaries reads only the id, site, time, and uploaded columns, not the species or
+ * notes. Use {@link ObservationDatabase#getObservation(int)} to load the full observation.
+ */
+public final class ObservationSummary {
+    private final int mId;
+    private final int mSiteId;
+    @NonNull
+    private final DateTime mTime;
+    private final boolean mUploaded;
+
+    public ObservationSummary(int id, int siteId, @NonNull DateTime time, boolean uploaded) {
+        mId = id;
+        mSiteId = siteId;
+        mTime = Objects.requireNonNull(time);
+        mUploaded = uploaded;
+    }
+
+    public int getId() {
+        return mId;
+    }
+
+    public int getSiteId() {
+        return mSiteId;
+    }
+
+    @NonNull
+    public DateTime getTime() {
+        return mTime;
+    }
+
+    public boolean isUploaded() {
+        return mUploaded;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final ObservationSummary that = (ObservationSummary) o;
+        return mId == that.mId && mSiteId == that.mSiteId && mUploaded == that.mUploaded
+                && mTime.equals(that.mTime);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mId, mSiteId, mTime, mUploaded);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ObservationSummary{" +
+                "mId=" + mId +
+                ", mSiteId=" + mSiteId +
+                ", mTime=" + mTime +
+                ", mUploaded=" + mUploaded +
+                '}';
+    }
+}
@@ -0,0 +1,445 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import android.content.Context;
+import android.database.SQLException;
+import android.util.Log;
+import android.util.SparseArray;
+
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+/**
+ * The queue of records waiting to be uploaded
+ * <p>
+ * Route starts, simple timed events, and observations are all uploaded from this queue. Each
+ * record is added to the queue in the same transaction that stores it. See {@link OutboxEntry}.
+ */
+public class Outbox {
+    static final String TABLE_NAME = "outbox";
+    private static final String TAG = Outbox.class.getSimpleName();
+
+    /**
+     * The number of times the server can reject an entry before it is quarantined
+     */
+    static final int MAX_REJECTIONS = 5;
+    /**
+     * The delay before the first retry of an entry that failed
+     */
+    private static final Duration RETRY_DELAY = Duration.standardMinutes(1);
+    /**
+     * The maximum delay before retrying an entry that failed
+     */
+    private static final Duration MAX_RETRY_DELAY = Duration.standardHours(6);
+
+    @NonNull
+    private final Database mDatabase;
+    @NonNull
+    private final OutboxDao mDao;
+    @NonNull
+    private final ObservationDatabase mObservations;
+    @NonNull
+    private final StartRouteDatabase mRouteStarts;
+
+    /**
+     * Creates an outbox accessor
+     *
+     * @param context a non-null context to use
+     */
+    public Outbox(@NonNull Context context) {
+        Objects.requireNonNull(context);
+        mDatabase = Database.getInstance(context);
+        mDao = mDatabase.outboxDao();
+        mObservations = new ObservationDatabase(context);
+        mRouteStarts = new StartRouteDatabase(context);
+    }
+
+    /**
+     * Stores a simple timed event and adds it to the queue
+     *
+     * @param event the event to store
+     */
+    public void addTimedEvent(@NonNull SimpleTimedEvent event) {
+        mDatabase.runInTransaction(() -> {
+            final int id = (int) mDatabase.simpleTimedEventDao().insert(event);
+            mDao.insert(OutboxEntry.create(OutboxEntry.KIND_TIMED_EVENT, id, 0));
+        });
+        mDatabase.getOutboxChanges().notifyChange();
+    }
+
+    /**
+     * Registers a listener to be notified on the main thread when a record of any kind is added
+     * to the outbox, or when a queued record is changed
+     * <p>
+     * Listeners are shared by all accessors in this process, and are held until they are removed.
+     *
+     * @param listener the listener to add
+     */
+    public void addChangeListener(@NonNull OutboxChangeListener listener) {
+        mDatabase.getOutboxChanges().addListener(listener);
+    }
+
+    /**
+     * Unregisters a listener
+     *
+     * @param listener the listener to remove
+     */
+    public void removeChangeListener(@NonNull OutboxChangeListener listener) {
+        mDatabase.getOutboxChanges().removeListener(listener);
+    }
+
+    /**
+     * Returns records that are ready to upload, with the highest priority and oldest first
+     * <p>
+     * Quarantined entries and entries waiting to retry after a failure are not returned. While
+     * a route start is waiting to retry, the observations made on its route are not returned
+     * either, so the route start is still sent before them. Other records are not held back.
+     * Entries that refer to rows that no longer exist are removed. Entries whose rows contain
+     * invalid data are quarantined.
+     *
+     * @param now         the current time
+     * @param ignoreDelay if true, entries that are not old enough to send are also returned
+     * @param limit       the maximum number of entries to return, at most
+     *                    {@link ObservationDatabase#MAX_BATCH_SIZE}
+     * @return the records
+     * @throws SQLException if an error occurs
+     */
+    @NonNull
+    public List<Item> getReady(@NonNull DateTime now, boolean ignoreDelay, int limit)
+            throws SQLException {
+        final long nowMillis = now.getMillis();
+        final long notBefore = ignoreDelay ? Long.MAX_VALUE : nowMillis;
+        while (true) {
+            final List<OutboxEntry> entries = mDao.getReady(notBefore, nowMillis, limit);
+            final List<Item> items = loadRecords(entries, now);
+            // If every entry was removed or quarantined, try the next ones
+            if (!items.isEmpty() || entries.isEmpty()) {
+                return items;
+            }
+        }
+    }
+
+    /**
+     * Loads the records that entries refer to. Entries whose records do not exist are removed,
+     * and entries whose records could not be read are quarantined.
+     */
+    @NonNull
+    private List<Item> loadRecords(@NonNull List<OutboxEntry> entries, @NonNull DateTime now)
+            throws SQLException {
+        // Load the rows for each kind with one query
+        final List<Integer> routeStartIds = new ArrayList<>();
+        final List<Integer> eventIds = new ArrayList<>();
+        final List<Integer> observationIds = new ArrayList<>();
+        for (OutboxEntry entry : entries) {
+            switch (entry.getKind()) {
+                case OutboxEntry.KIND_ROUTE_START:
+                    routeStartIds.add(entry.getSourceId());
+                    break;
+                case OutboxEntry.KIND_TIMED_EVENT:
+                    eventIds.add(entry.getSourceId());
+                    break;
+                case OutboxEntry.KIND_OBSERVATION:
+                    observationIds.add(entry.getSourceId());
+                    break;
+            }
+        }
+        // Problems with rows that exist but could not be read, by kind and then ID
+        final SparseArray<String> routeStartErrors = new SparseArray<>();
+        final SparseArray<String> eventErrors = new SparseArray<>();
+        final SparseArray<String> observationErrors = new SparseArray<>();
+        final SparseArray<RouteState> routeStates = new SparseArray<>();
+        if (!routeStartIds.isEmpty()) {
+            for (StartRouteDatabase.IdentifiedRouteState state
+                    : mRouteStarts.getRouteStates(routeStartIds, routeStartErrors)) {
+                routeStates.put(state.mId, state.mRouteState);
+            }
+        }
+        final SparseArray<SimpleTimedEvent> events = new SparseArray<>();
+        if (!eventIds.isEmpty()) {
+            for (SimpleTimedEvent event : mDatabase.simpleTimedEventDao().getByIds(eventIds)) {
+                try {
+                    event.getTime();
+                    events.put(event.getId(), event);
+                } catch (IllegalArgumentException e) {
+                    eventErrors.put(event.getId(), "Invalid time offset " + event.getTimeOffset());
+                }
+            }
+        }
+        final SparseArray<IdentifiedObservation> observations = new SparseArray<>();
+        if (!observationIds.isEmpty()) {
+            for (IdentifiedObservation observation
+                    : mObservations.getObservations(observationIds, observationErrors)) {
+                observations.put(observation.getId(), observation);
+            }
+        }
+
+        final List<Item> items = new ArrayList<>(entries.size());
+        final List<Integer> orphans = new ArrayList<>();
+        for (OutboxEntry entry : entries) {
+            final int sourceId = entry.getSourceId();
+            final Item item;
+            final String error;
+            switch (entry.getKind()) {
+                case OutboxEntry.KIND_ROUTE_START:
+                    final RouteState routeState = routeStates.get(sourceId);
+                    item = routeState != null ? new Item(entry, routeState, null, null) : null;
+                    error = routeStartErrors.get(sourceId);
+                    break;
+                case OutboxEntry.KIND_TIMED_EVENT:
+                    final SimpleTimedEvent event = events.get(sourceId);
+                    item = event != null ? new Item(entry, null, event, null) : null;
+                    error = eventErrors.get(sourceId);
+                    break;
+                case OutboxEntry.KIND_OBSERVATION:
+                    final IdentifiedObservation observation = observations.get(sourceId);
+                    item = observation != null ? new Item(entry, null, null, observation) : null;
+                    error = observationErrors.get(sourceId);
+                    break;
+                default:
+                    item = null;
+                    error = null;
+                    break;
+            }
+            if (item != null) {
+                items.add(item);
+            } else if (error != null) {
+                // Retrying will not fix the data, so it waits for resetFailures()
+                recordFailure(entry, "Invalid record: " + error, true, true, now);
+            } else {
+                Log.w(TAG, "Removing entry with no record: " + entry);
+                orphans.add(entry.getId());
+            }
+        }
+        if (!orphans.isEmpty()) {
+            mDao.deleteByIds(orphans);
+        }
+        return items;
+    }
+
+    /**
+     * Removes uploaded records from the queue, in one transaction
+     * <p>
+     * Route starts and timed events are deleted. Observations are marked as uploaded. A record
+     * that was edited after it was read from the queue stays in the queue, so that the edited
+     * version is uploaded.
+     *
+     * @param items the records that were uploaded, at most
+     *              {@link ObservationDatabase#MAX_BATCH_SIZE}
+     * @throws SQLException if an error occurs
+     */
+    public void complete(@NonNull List<Item> items) throws SQLException {
+        if (items.isEmpty()) {
+            return;
+        }
+        final List<Integer> routeStartIds = new ArrayList<>();
+        final List<SimpleTimedEvent> events = new ArrayList<>();
+        final List<IdentifiedObservation> observations = new ArrayList<>();
+        mDatabase.runInTransaction(() -> {
+            for (Item item : items) {
+                final OutboxEntry entry = item.getEntry();
+                if (mDao.deleteIfUnchanged(entry.getId(), entry.getRevision()) == 0) {
+                    Log.d(TAG, "Keeping entry that changed during upload: " + entry);
+                    continue;
+                }
+                if (item.getRouteState() != null) {
+                    routeStartIds.add(entry.getSourceId());
+                } else if (item.getTimedEvent() != null) {
+                    events.add(item.getTimedEvent());
+                } else if (item.getObservation() != null) {
+                    observations.add(item.getObservation());
+                }
+            }
+            mRouteStarts.deleteRouteStates(routeStartIds);
+            if (!events.isEmpty()) {
+                mDatabase.simpleTimedEventDao().delete(events);
+            }
+            mObservations.markUploaded(observations);
+        });
+        mObservations.notifyUploaded(observations);
+    }
+
+    /**
+     * Records a failed attempt to upload a record
+     * <p>
+     * The record will not be sent again until a delay that doubles with each attempt. If the
+     * server rejected the record {@link #MAX_REJECTIONS} times, it is quarantined. Other
+     * failures, which may be caused by the server or the network, delay the record but do not
+     * count towards quarantine.
+     *
+     * @param item     the record that was not uploaded
+     * @param error    a description of the failure
+     * @param rejected true if the server responded and reported an error for this record
+     * @param now      the current time
+     * @throws SQLException if an error occurs
+     */
+    public void recordFailure(@NonNull Item item, @NonNull String error, boolean rejected,
+                              @NonNull DateTime now) throws SQLException {
+        recordFailure(item.getEntry(), error, rejected, false, now);
+    }
+
+    /**
+     * Records a failed attempt to upload an entry
+     *
+     * @param entry      the entry that was not uploaded
+     * @param error      a description of the failure
+     * @param rejected   true if the failure counts as a rejection
+     * @param quarantine true to quarantine the entry now, whatever its number of rejections
+     * @param now        the current time
+     * @throws SQLException if an error occurs
+     */
+    private void recordFailure(@NonNull OutboxEntry entry, @NonNull String error,
+                               boolean rejected, boolean quarantine, @NonNull DateTime now)
+            throws SQLException {
+        final int attempts = entry.getAttempts() + 1;
+        final int rejections = entry.getRejections() + (rejected ? 1 : 0);
+        final boolean quarantined = quarantine || (rejected && rejections >= MAX_REJECTIONS);
+        final long retryAfter = now.getMillis() + getRetryDelay(attempts).getMillis();
+        mDao.recordFailure(entry.getId(), attempts, rejections, error, retryAfter, quarantined);
+        if (quarantined) {
+            Log.w(TAG, "Quarantined " + entry + " after error " + error);
+        }
+    }
+
+    /**
+     * Returns the delay before retrying an entry after a failed attempt
+     *
+     * @param attempts the number of failed attempts, including the latest one
+     */
+    @NonNull
+    static Duration getRetryDelay(int attempts) {
+        // Limit the shift so that it cannot overflow
+        final int doublings = Math.min(attempts - 1, 20);
+        final long delay = RETRY_DELAY.getMillis() << Math.max(doublings, 0);
+        return new Duration(Math.min(delay, MAX_RETRY_DELAY.getMillis()));
+    }
+
+    /**
+     * Makes quarantined records and records waiting to retry after a failure ready to upload
+     * again
+     *
+     * @return the number of records changed
+     * @throws SQLException if an error occurs
+     */
+    public int resetFailures() throws SQLException {
+        return mDao.resetFailures();
+    }
+
+    /**
+     * Returns the earliest time when a record will be ready to upload
+     * <p>
+     * This does not include quarantined records, or observations held back by a route start on
+     * their route that is waiting to retry. The time may be in the past if records are ready
+     * now.
+     *
+     * @return the time, or null if no records are waiting
+     * @throws SQLException if an error occurs
+     */
+    @Nullable
+    public DateTime getNextReadyTime() throws SQLException {
+        final Long millis = mDao.getNextReadyTime(System.currentTimeMillis());
+        return millis != null ? new DateTime(millis.longValue()) : null;
+    }
+
+    /**
+     * @return the number of quarantined records
+     * @throws SQLException if an error occurs
+     */
+    public int countQuarantined() throws SQLException {
+        return mDao.countQuarantined();
+    }
+
+    /**
+     * Adds entries for route starts, simple timed events, and observations that have not been
+     * uploaded and are not already in the queue
+     * <p>
+     * This is used when upgrading a database from a version without the outbox, and when importing
+     * old database files.
+     *
+     * @param db the database to modify
+     */
+    static void enqueueMissing(@NonNull SupportSQLiteDatabase db) {
+        enqueueMissing(db, OutboxEntry.KIND_ROUTE_START, StartRouteDatabase.TABLE_NAME, "1", "0");
+        enqueueMissing(db, OutboxEntry.KIND_TIMED_EVENT, "SimpleTimedEvent", "1", "0");
+        enqueueMissing(db, OutboxEntry.KIND_OBSERVATION, ObservationDatabase.TABLE_NAME,
+                "uploaded = 0", "time + " + UploadEngine.UPLOAD_AGE.getMillis());
+    }
+
+    private static void enqueueMissing(@NonNull SupportSQLiteDatabase db, int kind,
+                                       @NonNull String table, @NonNull String where,
+                                       @NonNull String notBefore) {
+        db.execSQL("INSERT INTO " + TABLE_NAME + " (idempotency_key, kind, source_id, priority, " +
+                "not_before, attempts) SELECT lower(hex(randomblob(16))), " + kind + ", id, " +
+                kind + ", " + notBefore + ", 0 FROM " + table + " WHERE " + where +
+                " AND id NOT IN (SELECT source_id FROM " + TABLE_NAME + " WHERE kind = " + kind +
+                ") ORDER BY time ASC");
+    }
+
+    /**
+     * An outbox entry and the record that it refers to
+     * <p>
+     * Exactly one of the route state, timed event and observation is not null.
+     */
+    public static final class Item {
+        @NonNull
+        private final OutboxEntry mEntry;
+        @Nullable
+        private final RouteState mRouteState;
+        @Nullable
+        private final SimpleTimedEvent mTimedEvent;
+        @Nullable
+        private final IdentifiedObservation mObservation;
+
+        private Item(@NonNull OutboxEntry entry, @Nullable RouteState routeState,
+                     @Nullable SimpleTimedEvent timedEvent,
+                     @Nullable IdentifiedObservation observation) {
+            mEntry = entry;
+            mRouteState = routeState;
+            mTimedEvent = timedEvent;
+            mObservation = observation;
+        }
+
+        @NonNull
+        public OutboxEntry getEntry() {
+            return mEntry;
+        }
+
+        @Nullable
+        public RouteState getRouteState() {
+            return mRouteState;
+        }
+
+        @Nullable
+        public SimpleTimedEvent getTimedEvent() {
+            return mTimedEvent;
+        }
+
+        @Nullable
+        public IdentifiedObservation getObservation() {
+            return mObservation;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Delivers outbox changes to listeners on the main thread
+ * <p>
+ * Changes can be reported from any thread, after the transaction that made them has finished.
+ */
+final class OutboxChangeNotifier {
+
+    @NonNull
+    private final CopyOnWriteArraySet<OutboxChangeListener> mListeners;
+
+    @NonNull
+    private final Handler mMainHandler;
+
+    OutboxChangeNotifier() {
+        mListeners = new CopyOnWriteArraySet<>();
+        mMainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    void addListener(@NonNull OutboxChangeListener listener) {
+        mListeners.add(Objects.requireNonNull(listener));
+    }
+
+    void removeListener(@NonNull OutboxChangeListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Reports a change to all listeners
+     */
+    void notifyChange() {
+        if (mListeners.isEmpty()) {
+            return;
+        }
+        // Always post, so that listeners are never called in the middle of a database operation
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (OutboxChangeListener listener : mListeners) {
+                    listener.onOutboxChanged();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import java.util.List;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+@Dao
+public interface OutboxDao {
+    @Insert
+    long insert(OutboxEntry entry);
+
+    /**
+     * Returns the entries that can be sent, highest priority and oldest first
+     * <p>
+     * While a route start is waiting to retry, the observations made on its route are held
+     * back, so that they are not sent before it.
+     *
+     * @param notBefore entries with a not-before time after this are not returned
+     * @param now       entries with a retry time after this are not returned
+     */
+    @Query("SELECT * FROM outbox WHERE quarantined = 0 AND not_before <= :notBefore " +
+            "AND retry_after <= :now AND NOT " + HELD_BACK + " " +
+            "ORDER BY priority ASC, not_before ASC, id ASC LIMIT :limit")
+    List<OutboxEntry> getReady(long notBefore, long now, int limit);
+
+    /**
+     * A condition that is true for an outbox entry that refers to an observation on the same
+     * route as a route start that is waiting to retry. Queries that use this have a :now
+     * parameter.
+     */
+    String HELD_BACK = "(kind = " + OutboxEntry.KIND_OBSERVATION + " AND source_id IN (" +
+            "SELECT observation.id FROM outbox AS failed " +
+            "JOIN " + StartRouteDatabase.TABLE_NAME + " AS route_start " +
+            "ON route_start.id = failed.source_id " +
+            "JOIN " + ObservationDatabase.TABLE_NAME + " AS observation " +
+            "ON observation.route = route_start.route " +
+            "WHERE failed.kind = " + OutboxEntry.KIND_ROUTE_START + " " +
+            "AND failed.quarantined = 0 AND failed.retry_after > :now))";
+
+    /**
+     * Marks the entries that refer to a row as changed, and sets their earliest send time
+     * <p>
+     * The entries get a new revision, so that an upload that read the old revision does not
+     * remove them, and a new idempotency key, so that the server does not ignore the new version
+     * if it has already added the old one.
+     *
+     * @return the number of entries changed
+     */
+    @Query("UPDATE outbox SET not_before = :notBefore, revision = revision + 1, " +
+            "idempotency_key = lower(hex(randomblob(16))) " +
+            "WHERE kind = :kind AND source_id = :sourceId")
+    int setChanged(int kind, int sourceId, long notBefore);
+
+    @Query("UPDATE outbox SET attempts = :attempts, rejections = :rejections, " +
+            "last_error = :error, retry_after = :retryAfter, quarantined = :quarantined " +
+            "WHERE id = :id")
+    int recordFailure(int id, int attempts, int rejections, String error, long retryAfter,
+                      boolean quarantined);
+
+    /**
+     * Makes all quarantined entries and entries waiting to retry ready to send
+     *
+     * @return the number of entries changed
+     */
+    @Query("UPDATE outbox SET attempts = 0, rejections = 0, retry_after = 0, quarantined = 0 " +
+            "WHERE quarantined = 1 OR retry_after > 0")
+    int resetFailures();
+
+    /**
+     * Returns the earliest time when an entry will be ready to send, or null if no entries are
+     * waiting
+     * <p>
+     * Observations that are held back by a route start waiting to retry are not ready before
+     * it, so they are left out.
+     *
+     * @param now the current time, for finding the entries that are waiting to retry
+     */
+    @Query("SELECT MIN(MAX(not_before, retry_after)) FROM outbox WHERE quarantined = 0 " +
+            "AND NOT " + HELD_BACK)
+    Long getNextReadyTime(long now);
+
+    @Query("SELECT COUNT(*) FROM outbox WHERE quarantined = 1")
+    int countQuarantined();
+
+    @Query("DELETE FROM outbox WHERE id IN (:ids)")
+    int deleteByIds(List<Integer> ids);
+
+    /**
+     * Deletes an entry if it has not changed since it was read
+     *
+     * @return 1 if the entry was deleted, or 0 if it has a different revision or does not exist
+     */
+    @Query("DELETE FROM outbox WHERE id = :id AND revision = :revision")
+    int deleteIfUnchanged(int id, int revision);
+
+    @Query("DELETE FROM outbox WHERE kind = :kind AND source_id = :sourceId")
+    int deleteBySource(int kind, int sourceId);
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import java.util.UUID;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * A row of the outbox table, which holds one entry for each record that needs to be uploaded
+ * <p>
+ * An entry refers to a row of another table (route_start_events, SimpleTimedEvent or
+ * observations). The uploaded data is read from that row when the entry is sent, so edits made
+ * before the upload are included.
+ * <p>
+ * The idempotency key is generated when the entry is created and sent with every attempt.
+ * The upload script ignores a row with a key that it has already added, so an entry can be
+ * sent again safely if the app stopped before the entry was removed.
+ * <p>
+ * When the row is edited, the entry gets a new revision and a new key. An upload that sent the
+ * old version does not remove the entry, so the new version is sent too.
+ * <p>
+ * When an attempt to send an entry fails, the entry is not sent again until its retry time,
+ * which increases exponentially with the number of attempts. An entry that the server has
+ * rejected too many times is quarantined and is not sent again until the user forces an upload.
+ * Only rejections count towards quarantine, so an entry is not quarantined because the server
+ * was unavailable.
+ */
+@Entity(tableName = Outbox.TABLE_NAME,
+        indices = {@Index(value = "idempotency_key", unique = true),
+                @Index({"priority", "not_before"}), @Index({"kind", "source_id"})})
+public class OutboxEntry {
+
+    /**
+     * Kind of an entry that refers to a route_start_events row
+     */
+    public static final int KIND_ROUTE_START = 0;
+    /**
+     * Kind of an entry that refers to a SimpleTimedEvent row
+     */
+    public static final int KIND_TIMED_EVENT = 1;
+    /**
+     * Kind of an entry that refers to an observations row
+     */
+    public static final int KIND_OBSERVATION = 2;
+
+    @PrimaryKey(autoGenerate = true)
+    private final int id;
+    @NonNull
+    @ColumnInfo(name = "idempotency_key")
+    private final String idempotencyKey;
+    /**
+     * One of the KIND constants
+     */
+    private final int kind;
+    /**
+     * The ID of the row that this entry refers to, in the table for the kind
+     */
+    @ColumnInfo(name = "source_id")
+    private final int sourceId;
+    /**
+     * Entries with lower priority values are sent first
+     */
+    private final int priority;
+    /**
+     * The time before which this entry should not be sent (unless the upload is forced),
+     * milliseconds since 1970-01-01T00:00:00Z
+     */
+    @ColumnInfo(name = "not_before")
+    private final long notBefore;
+    /**
+     * The number of times this entry has been sent without success
+     */
+    private final int attempts;
+    /**
+     * The number of times the server has received this entry and reported an error for it.
+     * Failed attempts that may not be the entry's fault, such as server errors, are not counted.
+     */
+    @ColumnInfo(defaultValue = "0")
+    private final int rejections;
+    /**
+     * The time before which this entry should not be sent after a failure, even if the upload
+     * is forced, milliseconds since 1970-01-01T00:00:00Z
+     */
+    @ColumnInfo(name = "retry_after", defaultValue = "0")
+    private final long retryAfter;
+    /**
+     * If this entry has been rejected too many times and will not be sent automatically
+     */
+    @ColumnInfo(defaultValue = "0")
+    private final boolean quarantined;
+    /**
+     * The error from the last failed attempt, or null if no attempt has failed
+     */
+    @Nullable
+    @ColumnInfo(name = "last_error")
+    private final String lastError;
+    /**
+     * Incremented each time the row that this entry refers to is edited
+     */
+    @ColumnInfo(defaultValue = "0")
+    private final int revision;
+
+    public OutboxEntry(int id, @NonNull String idempotencyKey, int kind, int sourceId,
+                       int priority, long notBefore, int attempts, int rejections,
+                       long retryAfter, boolean quarantined, @Nullable String lastError,
+                       int revision) {
+        this.id = id;
+        this.idempotencyKey = idempotencyKey;
+        this.kind = kind;
+        this.sourceId = sourceId;
+        this.priority = priority;
+        this.notBefore = notBefore;
+        this.attempts = attempts;
+        this.rejections = rejections;
+        this.retryAfter = retryAfter;
+        this.quarantined = quarantined;
+        this.lastError = lastError;
+        this.revision = revision;
+    }
+
+    /**
+     * Creates a new entry with a random idempotency key
+     * <p>
+     * Route starts are sent first, then timed events, then observations.
+     *
+     * @param kind      one of the KIND constants
+     * @param sourceId  the ID of the row to upload
+     * @param notBefore the earliest time to send the entry
+     * @return an entry that has not been inserted
+     */
+    @NonNull
+    static OutboxEntry create(int kind, int sourceId, long notBefore) {
+        return new OutboxEntry(0, UUID.randomUUID().toString(), kind, sourceId, kind, notBefore,
+                0, 0, 0, false, null, 0);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    @NonNull
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public int getKind() {
+        return kind;
+    }
+
+    public int getSourceId() {
+        return sourceId;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public long getNotBefore() {
+        return notBefore;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public int getRejections() {
+        return rejections;
+    }
+
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+
+    public boolean isQuarantined() {
+        return quarantined;
+    }
+
+    @Nullable
+    public String getLastError() {
+        return lastError;
+    }
+
+    public int getRevision() {
+        return revision;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "OutboxEntry{" +
+                "id=" + id +
+                ", idempotencyKey='" + idempotencyKey + '\'' +
+                ", kind=" + kind +
+                ", sourceId=" + sourceId +
+                ", attempts=" + attempts +
+                ", rejections=" + rejections +
+                ", revision=" + revision +
+                ", quarantined=" + quarantined +
+                '}';
+    }
+}
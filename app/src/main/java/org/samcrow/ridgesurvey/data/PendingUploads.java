@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import android.content.res.Resources;
+
+import org.joda.time.DateTime;
+import org.joda.time.ReadableInstant;
+import org.samcrow.ridgesurvey.R;
+
+import java.util.Objects;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A summary of the observations that are waiting to be uploaded
+ */
+public final class PendingUploads {
+
+    /**
+     * A summary with no observations waiting
+     */
+    public static final PendingUploads NONE = new PendingUploads(0, null);
+
+    /**
+     * The number of observations that have not been uploaded
+     */
+    private final int mCount;
+
+    /**
+     * The time of the oldest observation that has not been uploaded, or null if mCount is zero
+     */
+    @Nullable
+    private final DateTime mOldestTime;
+
+    public PendingUploads(int count, @Nullable DateTime oldestTime) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count must not be negative");
+        }
+        if ((count == 0) != (oldestTime == null)) {
+            throw new IllegalArgumentException("oldestTime must be null if and only if count is 0");
+        }
+        mCount = count;
+        mOldestTime = oldestTime;
+    }
+
+    /**
+     * @return the number of observations that have not been uploaded
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return the time of the oldest observation that has not been uploaded, or null if there
+     * are none
+     */
+    @Nullable
+    public DateTime getOldestTime() {
+        return mOldestTime;
+    }
+
+    /**
+     * Returns the time when the oldest waiting observation becomes old enough to be uploaded
+     * without forcing an upload
+     *
+     * @return the time, or null if no observations are waiting
+     */
+    @Nullable
+    public DateTime getNextEligibleTime() {
+        return mOldestTime != null ? mOldestTime.plus(UploadEngine.UPLOAD_AGE) : null;
+    }
+
+    /**
+     * Determines if one or more waiting observations are old enough to be uploaded
+     *
+     * @param now the current time
+     * @return true if at least one observation should be uploaded now
+     */
+    public boolean hasEligible(@NonNull ReadableInstant now) {
+        final DateTime eligibleTime = getNextEligibleTime();
+        return eligibleTime != null && !eligibleTime.isAfter(now);
+    }
+
+    /**
+     * Returns a summary that also includes one more waiting observation
+     *
+     * @param time the time of the added observation
+     * @return the new summary
+     */
+    @NonNull
+    public PendingUploads withAdded(@NonNull DateTime time) {
+        final DateTime oldestTime = mOldestTime == null || time.isBefore(mOldestTime)
+                ? time : mOldestTime;
+        return new PendingUploads(mCount + 1, oldestTime);
+    }
+
+    /**
+     * Returns a summary that no longer includes one waiting observation, if it can be calculated
+     * without the database
+     *
+     * @param time the time of the removed observation
+     * @return the new summary, or null if the oldest observation was removed and the new oldest
+     * time is not known
+     */
+    @Nullable
+    public PendingUploads withRemoved(@NonNull DateTime time) {
+        if (mCount == 1 && mOldestTime.isEqual(time)) {
+            return NONE;
+        }
+        if (mCount > 1 && time.isAfter(mOldestTime)) {
+            return new PendingUploads(mCount - 1, mOldestTime);
+        }
+        return null;
+    }
+
+    /**
+     * Describes the waiting observations, for example "3 pending, next eligible in 4 min"
+     *
+     * @param resources the resources used to load strings
+     * @param now       the current time
+     * @return a description to display
+     */
+    @NonNull
+    public String describe(@NonNull Resources resources, @NonNull ReadableInstant now) {
+        if (mCount == 0) {
+            return resources.getString(R.string.pending_uploads_none);
+        }
+        final String pending = resources.getQuantityString(R.plurals.pending_uploads, mCount,
+                mCount);
+        final DateTime eligibleTime = getNextEligibleTime();
+        if (hasEligible(now)) {
+            return pending;
+        }
+        // Round up, so that "0 min" is never shown before the observation is eligible
+        final long waitMillis = eligibleTime.getMillis() - now.getMillis();
+        final long waitMinutes = (waitMillis + 59999) / 60000;
+        return resources.getString(R.string.pending_uploads_next_eligible, pending, waitMinutes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final PendingUploads that = (PendingUploads) o;
+        return mCount == that.mCount && Objects.equals(mOldestTime, that.mOldestTime);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mCount, mOldestTime);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "PendingUploads{" +
+                "mCount=" + mCount +
+                ", mOldestTime=" + mOldestTime +
+                '}';
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * A row of the route start events table
+ * <p>
+ * This is the storage form of a {@link RouteState}. {@link StartRouteDatabase} converts between
+ * the two.
+ */
+@Entity(tableName = StartRouteDatabase.TABLE_NAME, indices = {@Index("time")})
+public class RouteStartEvent {
+
+    @PrimaryKey(autoGenerate = true)
+    private final int id;
+    /**
+     * Time started, milliseconds since 1970-01-01T00:00:00Z
+     */
+    private final long time;
+    /**
+     * Offset from UTC of the time zone where the route was started, milliseconds
+     */
+    @ColumnInfo(name = "time_offset")
+    private final int timeOffset;
+    @NonNull
+    private final String surveyor;
+    @NonNull
+    private final String tablet;
+    @NonNull
+    private final String sensor;
+    @NonNull
+    private final String route;
+
+    public RouteStartEvent(int id, long time, int timeOffset, @NonNull String surveyor,
+                           @NonNull String tablet, @NonNull String sensor, @NonNull String route) {
+        this.id = id;
+        this.time = time;
+        this.timeOffset = timeOffset;
+        this.surveyor = surveyor;
+        this.tablet = tablet;
+        this.sensor = sensor;
+        this.route = route;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public int getTimeOffset() {
+        return timeOffset;
+    }
+
+    @NonNull
+    public String getSurveyor() {
+        return surveyor;
+    }
+
+    @NonNull
+    public String getTablet() {
+        return tablet;
+    }
+
+    @NonNull
+    public String getSensor() {
+        return sensor;
+    }
+
+    @NonNull
+    public String getRoute() {
+        return route;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Encodes the fields of upload rows into a reusable buffer
+ * <p>
+ * Rows use the same spreadsheet column names over and over, so each key is encoded once and
+ * cached. After the buffer has grown to the size of the largest request and every key has been
+ * seen, encoding does not allocate any memory.
+ * <p>
+ * This class does not depend on Android, so that it can be benchmarked on a desktop JVM.
+ * A RowEncoder is not thread-safe.
+ */
+abstract class RowEncoder {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Encoded keys, by key
+     */
+    @NonNull
+    private final Map<String, byte[]> mEncodedKeys = new HashMap<>();
+
+    /**
+     * The encoded data
+     */
+    @NonNull
+    private byte[] mBuffer = new byte[INITIAL_CAPACITY];
+    /**
+     * The number of bytes of encoded data in mBuffer
+     */
+    private int mLength;
+
+    /**
+     * Removes all encoded data, keeping the buffer and cached keys
+     */
+    void reset() {
+        mLength = 0;
+    }
+
+    /**
+     * Encodes one field of the current row
+     *
+     * @param key   the column name
+     * @param value the value
+     */
+    abstract void add(@NonNull String key, @Nullable String value);
+
+    /**
+     * Encodes a key as it appears before each value
+     * <p>
+     * This is called once for each key. The result is cached.
+     */
+    abstract void encodeKey(@NonNull String key);
+
+    /**
+     * Returns the buffer that holds the encoded data. Only the first {@link #getLength()} bytes
+     * are valid. The buffer is reused after {@link #reset()}.
+     */
+    @NonNull
+    final byte[] getBuffer() {
+        return mBuffer;
+    }
+
+    /**
+     * @return the number of bytes of encoded data
+     */
+    final int getLength() {
+        return mLength;
+    }
+
+    /**
+     * Appends an encoded key, encoding it with {@link #encodeKey(String)} if it has not been
+     * seen before
+     */
+    final void putKey(@NonNull String key) {
+        final byte[] encodedKey = mEncodedKeys.get(key);
+        if (encodedKey == null) {
+            final int start = mLength;
+            encodeKey(key);
+            mEncodedKeys.put(key, Arrays.copyOfRange(mBuffer, start, mLength));
+        } else {
+            ensureCapacity(encodedKey.length);
+            System.arraycopy(encodedKey, 0, mBuffer, mLength, encodedKey.length);
+            mLength += encodedKey.length;
+        }
+    }
+
+    /**
+     * Appends one byte
+     */
+    final void putByte(int value) {
+        ensureCapacity(1);
+        mBuffer[mLength++] = (byte) value;
+    }
+
+    /**
+     * Appends the low bytes of the characters of an ASCII string
+     */
+    final void putAscii(@NonNull String text) {
+        final int length = text.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            mBuffer[mLength++] = (byte) text.charAt(i);
+        }
+    }
+
+    private void ensureCapacity(int additional) {
+        if (mLength + additional > mBuffer.length) {
+            mBuffer = Arrays.copyOf(mBuffer, Math.max(mBuffer.length * 2, mLength + additional));
+        }
+    }
+}
@@ -18,30 +18,49 @@
 package org.samcrow.ridgesurvey.data;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 
 import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
-@Entity
+@Entity(indices = {@Index("time")})
 public class SimpleTimedEvent {
 
     @PrimaryKey(autoGenerate = true)
     private int id;
     @NonNull
     private final String name;
-    @NonNull
-    private final DateTime time;
+    /**
+     * Time of the event, milliseconds since 1970-01-01T00:00:00Z
+     */
+    @ColumnInfo(name = "time")
+    private final long timeMillis;
+    /**
+     * Offset from UTC of the time zone where the event was recorded, milliseconds
+     */
+    @ColumnInfo(name = "time_offset")
+    private final int timeOffset;
     @NonNull
     private final String route;
 
-    public SimpleTimedEvent(@NonNull DateTime time, @NonNull String name, @NonNull String route) {
-        this.id = 0;
+    public SimpleTimedEvent(int id, @NonNull String name, long timeMillis, int timeOffset,
+                            @NonNull String route) {
+        this.id = id;
         this.name = name;
-        this.time = time;
+        this.timeMillis = timeMillis;
+        this.timeOffset = timeOffset;
         this.route = route;
     }
 
+    @Ignore
+    public SimpleTimedEvent(@NonNull DateTime time, @NonNull String name, @NonNull String route) {
+        this(0, name, time.getMillis(), time.getZone().getOffset(time.getMillis()), route);
+    }
+
     public int getId() {
         return id;
     }
@@ -54,9 +73,20 @@ public class SimpleTimedEvent {
         return name;
     }
 
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public int getTimeOffset() {
+        return timeOffset;
+    }
+
+    /**
+     * @return the time of the event, in the time zone where it was recorded
+     */
     @NonNull
     public DateTime getTime() {
-        return time;
+        return new DateTime(timeMillis, DateTimeZone.forOffsetMillis(timeOffset));
     }
 
     @NonNull
@@ -69,7 +99,7 @@ public class SimpleTimedEvent {
         return "SimpleTimedEvent{" +
                 "id=" + id +
                 ", name='" + name + '\'' +
-                ", time=" + time +
+                ", time=" + getTime() +
                 ", route='" + route + '\'' +
                 '}';
     }
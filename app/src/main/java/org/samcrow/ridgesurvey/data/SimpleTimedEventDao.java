@@ -27,14 +27,14 @@ import androidx.room.Query;
 @Dao
 public interface SimpleTimedEventDao {
     @Insert
-    void insert(SimpleTimedEvent event);
+    long insert(SimpleTimedEvent event);
 
-    @Query("SELECT * FROM simpletimedevent ORDER BY time ASC LIMIT 1")
-    SimpleTimedEvent getOldest();
+    @Query("SELECT * FROM simpletimedevent WHERE id IN (:ids)")
+    List<SimpleTimedEvent> getByIds(List<Integer> ids);
 
     @Query("SELECT * FROM simpletimedevent")
     List<SimpleTimedEvent> getAll();
 
     @Delete
-    void delete(SimpleTimedEvent event);
+    void delete(List<SimpleTimedEvent> events);
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A versioned, append-only list of species column names
+ * <p>
+ * Stored observations record species as bits, where bit i refers to the species column at
+ * index i in this catalog. Existing entries must never be reordered or removed, because that
+ * would change the meaning of stored observations. To add a species, append its column name to
+ * {@link #COLUMNS}, increment {@link #CURRENT_VERSION}, and add the new size to
+ * {@link #VERSION_SIZES}.
+ */
+public final class SpeciesCatalog {
+
+    /**
+     * The catalog version used for new observations
+     */
+    public static final int CURRENT_VERSION = 1;
+
+    /**
+     * The maximum number of species a catalog can contain (one bit each in a 64-bit mask)
+     */
+    public static final int MAX_SPECIES = Long.SIZE;
+
+    /**
+     * Species column names, in bit order
+     * <p>
+     * These match the "column" values in res/raw/species.json.
+     */
+    private static final String[] COLUMNS = {
+            // Version 1
+            "Linepithema humile",
+            "Tapinoma sessile",
+            "Liometopum occidentale",
+            "Crematogaster coarctata",
+            "Messor andrei",
+            "Temnothorax sp.",
+            "Aphaenogaster occidentalis",
+            "Pheidole californica",
+            "Cardiocondyla mauritanica",
+            "Pseudomyremex apache",
+            "Prenolepis imparis",
+            "Formica sp.",
+            "Formica moki",
+            "Formica subpolita",
+            "Camponotus sp.",
+            "Solenopsis molesta",
+            "Stenamma sp.",
+            "Neivamyrmex",
+            "Hypoponera",
+            "Unknown Species",
+    };
+
+    /**
+     * The number of species in each catalog version, indexed by version
+     */
+    private static final int[] VERSION_SIZES = {0, 20};
+
+    /**
+     * Map from column name to bit index
+     */
+    private static final Map<String, Integer> INDICES;
+
+    static {
+        if (VERSION_SIZES.length != CURRENT_VERSION + 1
+                || VERSION_SIZES[CURRENT_VERSION] != COLUMNS.length
+                || COLUMNS.length > MAX_SPECIES) {
+            throw new IllegalStateException("Inconsistent species catalog");
+        }
+        INDICES = new HashMap<>(COLUMNS.length * 2);
+        for (int i = 0; i < COLUMNS.length; i++) {
+            INDICES.put(COLUMNS[i], i);
+        }
+    }
+
+    private SpeciesCatalog() {
+    }
+
+    /**
+     * Returns the bit index of a species column
+     *
+     * @param column the species column name
+     * @return the index, or -1 if the column is not in the current catalog
+     */
+    public static int indexOf(@NonNull String column) {
+        final Integer index = INDICES.get(column);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Returns the species column name at a bit index
+     *
+     * @param index the index, which must be less than {@link #size(int)} for the current version
+     * @return the column name
+     */
+    @NonNull
+    public static String columnAt(int index) {
+        return COLUMNS[index];
+    }
+
+    /**
+     * Returns the number of species in a catalog version
+     *
+     * @param version the catalog version
+     * @return the number of species
+     * @throws IllegalArgumentException if the version is not known
+     */
+    public static int size(int version) {
+        if (version < 0 || version >= VERSION_SIZES.length) {
+            throw new IllegalArgumentException("Unknown species catalog version " + version);
+        }
+        return VERSION_SIZES[version];
+    }
+}
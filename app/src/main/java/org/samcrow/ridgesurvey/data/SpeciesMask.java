@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A compact, immutable record of which species were seen in an observation
+ * <p>
+ * Each species in the {@link SpeciesCatalog} has one bit in a known mask, which is set if the
+ * observation recorded a value for the species, and one bit in a present mask, which is set if
+ * the species was seen. Species columns that are not in the catalog (which can come from data
+ * recorded with a different species list) are kept in a separate map.
+ */
+public final class SpeciesMask {
+
+    /**
+     * A mask with no species recorded
+     */
+    public static final SpeciesMask EMPTY = new SpeciesMask(0, 0, null);
+
+    /**
+     * Bits for species that were present
+     */
+    private final long mPresent;
+
+    /**
+     * Bits for species that have a recorded value
+     */
+    private final long mKnown;
+
+    /**
+     * Species that are not in the catalog, or null if there are none
+     */
+    @Nullable
+    private final Map<String, Boolean> mExtra;
+
+    /**
+     * Creates a species mask
+     *
+     * @param present bits for species that were present. Every present bit must also be known.
+     * @param known   bits for species that have a recorded value
+     * @param extra   values for species that are not in the catalog, or null if there are none
+     */
+    public SpeciesMask(long present, long known, @Nullable Map<String, Boolean> extra) {
+        if ((present & ~known) != 0) {
+            throw new IllegalArgumentException("Present species must be known");
+        }
+        mPresent = present;
+        mKnown = known;
+        mExtra = extra == null || extra.isEmpty() ? null
+                : Collections.unmodifiableMap(new HashMap<>(extra));
+    }
+
+    /**
+     * Encodes a map from species column name to present/not present
+     *
+     * @param species the species map. Values must not be null.
+     * @return an equivalent species mask
+     */
+    @NonNull
+    public static SpeciesMask fromMap(@NonNull Map<String, Boolean> species) {
+        long present = 0;
+        long known = 0;
+        Map<String, Boolean> extra = null;
+        for (Map.Entry<String, Boolean> entry : species.entrySet()) {
+            final boolean value = Objects.requireNonNull(entry.getValue());
+            final int index = SpeciesCatalog.indexOf(entry.getKey());
+            if (index >= 0) {
+                final long bit = 1L << index;
+                known |= bit;
+                if (value) {
+                    present |= bit;
+                }
+            } else {
+                if (extra == null) {
+                    extra = new HashMap<>();
+                }
+                extra.put(entry.getKey(), value);
+            }
+        }
+        return new SpeciesMask(present, known, extra);
+    }
+
+    /**
+     * Returns a new map from species column name to present/not present
+     *
+     * @return a mutable map containing every recorded species
+     */
+    @NonNull
+    public Map<String, Boolean> toMap() {
+        final Map<String, Boolean> species = new HashMap<>();
+        long remaining = mKnown;
+        while (remaining != 0) {
+            final int index = Long.numberOfTrailingZeros(remaining);
+            species.put(SpeciesCatalog.columnAt(index), (mPresent & (1L << index)) != 0);
+            remaining &= remaining - 1;
+        }
+        if (mExtra != null) {
+            species.putAll(mExtra);
+        }
+        return species;
+    }
+
+    public long getPresent() {
+        return mPresent;
+    }
+
+    public long getKnown() {
+        return mKnown;
+    }
+
+    /**
+     * Returns the values for species that are not in the catalog
+     *
+     * @return an unmodifiable map, or null if there are no such species
+     */
+    @Nullable
+    public Map<String, Boolean> getExtra() {
+        return mExtra;
+    }
+
+    /**
+     * Returns the recorded value for a species
+     *
+     * @param column the species column name
+     * @return true if present, false if not present, or null if no value was recorded
+     */
+    @Nullable
+    public Boolean get(@NonNull String column) {
+        final int index = SpeciesCatalog.indexOf(column);
+        if (index >= 0) {
+            final long bit = 1L << index;
+            return (mKnown & bit) != 0 ? (mPresent & bit) != 0 : null;
+        } else {
+            return mExtra != null ? mExtra.get(column) : null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final SpeciesMask other = (SpeciesMask) o;
+        return mPresent == other.mPresent && mKnown == other.mKnown
+                && Objects.equals(mExtra, other.mExtra);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mPresent, mKnown, mExtra);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "SpeciesMask{" +
+                "mPresent=" + Long.toBinaryString(mPresent) +
+                ", mKnown=" + Long.toBinaryString(mKnown) +
+                ", mExtra=" + mExtra +
+                '}';
+    }
+}
@@ -17,40 +17,39 @@
 
 package org.samcrow.ridgesurvey.data;
 
-import android.content.ContentValues;
 import android.content.Context;
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteOpenHelper;
+import android.util.SparseArray;
 import androidx.annotation.NonNull;
 
 import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormatter;
-import org.joda.time.format.ISODateTimeFormat;
+import org.joda.time.DateTimeZone;
+import org.joda.time.ReadableDateTime;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 /**
  * Stores route-start events in a database
+ * <p>
+ * Events are stored in the route_start_events table of {@link Database}. See
+ * {@link RouteStartEvent} for the columns.
  */
 public class StartRouteDatabase {
-    /*
-     * Schema:
-     * id: event ID, INTEGER PRIMARY KEY
-     * time: Time started, ISO 8601 date+time format with milliseconds, TEXT
-     * surveyor: Surveyor name, TEXT
-     * tablet: Tablet ID, TEXT
-     * sensor: Sensor ID, TEXT
-     * route: Route name, TEXT
-     */
 
-    private static final String TABLE_NAME = "route_start_events";
+    static final String TABLE_NAME = "route_start_events";
+
+    /**
+     * The shared database
+     */
+    @NonNull
+    private final Database mDatabase;
 
     /**
-     * The open helper used to access the database
+     * The route start DAO of the shared database
      */
     @NonNull
-    private final SQLiteOpenHelper mOpenHelper;
+    private final RouteStartDao mDao;
 
     /**
      * Creates a database accessor
@@ -59,51 +58,65 @@ public class StartRouteDatabase {
      */
     public StartRouteDatabase(@NonNull Context context) {
         Objects.requireNonNull(context);
-        mOpenHelper = new StartRouteOpenHelper(context);
+        mDatabase = Database.getInstance(context);
+        mDao = mDatabase.routeStartDao();
     }
 
+    /**
+     * Stores a route state and adds it to the upload queue
+     *
+     * @param routeState the route state to store
+     */
     public void saveRouteState(@NonNull RouteState routeState) {
-        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
-
-        db.insert(TABLE_NAME, null, createContentValues(routeState));
+        mDatabase.runInTransaction(() -> {
+            final int id = (int) mDao.insert(createEvent(routeState));
+            mDatabase.outboxDao().insert(OutboxEntry.create(OutboxEntry.KIND_ROUTE_START, id, 0));
+        });
+        mDatabase.getOutboxChanges().notifyChange();
     }
 
     /**
-     * @return the oldest route state in the database, or null if the database is empty
+     * @param ids    the IDs of the route states to return. At most
+     *               {@link ObservationDatabase#MAX_BATCH_SIZE} may be passed.
+     * @param errors receives the problem with each row that contains invalid data, by ID
+     * @return the valid route states with the provided IDs that exist, in no particular order
      */
-    public IdentifiedRouteState getOldestRouteState() {
-        final SQLiteDatabase db = mOpenHelper.getReadableDatabase();
-        final Cursor cursor = db.query(TABLE_NAME, null, null, null, null, null, "time ASC", "1");
-        try {
-            if (cursor.moveToNext()) {
-                return new IdentifiedRouteState(cursor);
-            } else {
-                // No rows in the table
-                return null;
+    @NonNull
+    public List<IdentifiedRouteState> getRouteStates(@NonNull List<Integer> ids,
+                                                     @NonNull SparseArray<String> errors) {
+        final List<RouteStartEvent> events = mDao.getByIds(ids);
+        final List<IdentifiedRouteState> states = new ArrayList<>(events.size());
+        for (RouteStartEvent event : events) {
+            try {
+                states.add(new IdentifiedRouteState(event));
+            } catch (IllegalArgumentException e) {
+                errors.put(event.getId(), "Invalid time offset " + event.getTimeOffset());
             }
-        } finally {
-            cursor.close();
-            db.close();
         }
+        return states;
     }
 
-    public void deleteRouteState(int id) {
-        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
-        db.delete(TABLE_NAME, "ID = ?", new String[]{Integer.toString(id)});
+    /**
+     * Deletes route states
+     *
+     * @param ids the IDs of the route states to delete. At most
+     *            {@link ObservationDatabase#MAX_BATCH_SIZE} may be passed.
+     */
+    public void deleteRouteStates(@NonNull List<Integer> ids) {
+        if (!ids.isEmpty()) {
+            mDao.deleteByIds(ids);
+        }
     }
 
-    private static ContentValues createContentValues(@NonNull RouteState routeState) {
-        final ContentValues values = new ContentValues();
-
-        final DateTimeFormatter formatter = ISODateTimeFormat.dateTime();
-        values.put("time", formatter.print(routeState.getStartTime()));
-
-        values.put("surveyor", routeState.getSurveyorName());
-        values.put("tablet", routeState.getTabletId());
-        values.put("sensor", routeState.getSensorId());
-        values.put("route", routeState.getRouteName());
-
-        return values;
+    private static RouteStartEvent createEvent(@NonNull RouteState routeState) {
+        final ReadableDateTime startTime = routeState.getStartTime();
+        return new RouteStartEvent(0,
+                startTime.getMillis(),
+                startTime.getZone().getOffset(startTime.getMillis()),
+                routeState.getSurveyorName(),
+                routeState.getTabletId(),
+                routeState.getSensorId(),
+                routeState.getRouteName());
     }
 
     public static class IdentifiedRouteState {
@@ -116,18 +129,12 @@ public class StartRouteDatabase {
             this.mId = id;
         }
 
-        private IdentifiedRouteState(Cursor cursor) {
-            final DateTimeFormatter formatter = ISODateTimeFormat.dateTime();
-
-            final int id = cursor.getInt(cursor.getColumnIndexOrThrow("id"));
-            final DateTime time = formatter.parseDateTime(cursor.getString(cursor.getColumnIndexOrThrow("time")));
-            final String surveyorName = cursor.getString(cursor.getColumnIndexOrThrow("surveyor"));
-            final String tabletId = cursor.getString(cursor.getColumnIndexOrThrow("tablet"));
-            final String sensorId = cursor.getString(cursor.getColumnIndexOrThrow("sensor"));
-            final String routeName = cursor.getString(cursor.getColumnIndexOrThrow("route"));
-
-            mRouteState = new RouteState(time, surveyorName, routeName, tabletId, sensorId);
-            mId = id;
+        private IdentifiedRouteState(@NonNull RouteStartEvent event) {
+            final DateTime time = new DateTime(event.getTime(),
+                    DateTimeZone.forOffsetMillis(event.getTimeOffset()));
+            mRouteState = new RouteState(time, event.getSurveyor(), event.getRoute(),
+                    event.getTablet(), event.getSensor());
+            mId = event.getId();
         }
 
         @NonNull
@@ -139,29 +146,4 @@ public class StartRouteDatabase {
                     '}';
         }
     }
-
-    private static class StartRouteOpenHelper extends SQLiteOpenHelper {
-
-        private static final int VERSION = 1;
-
-        public StartRouteOpenHelper(Context context) {
-            super(context, TABLE_NAME, null, VERSION);
-        }
-
-        @Override
-        public void onCreate(SQLiteDatabase db) {
-            db.execSQL("CREATE TABLE " + TABLE_NAME + "(" +
-                    "id INTEGER NOT NULL PRIMARY KEY, " +
-                    "time TEXT NOT NULL," +
-                    "surveyor TEXT NOT NULL," +
-                    "tablet TEXT NOT NULL," +
-                    "sensor TEXT NOT NULL," +
-                    "route TEXT NOT NULL)");
-        }
-
-        @Override
-        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-            throw new RuntimeException("Only one version exists");
-        }
-    }
 }
@@ -0,0 +1,396 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.URL;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Sends rows to the spreadsheet upload script (google/insert.gs)
+ * <p>
+ * Each row is a set of spreadsheet column names and values, which a {@link RowSource} writes
+ * directly into the request body. Current versions of the script
+ * accept many rows in one request, as a JSON object with a "rows" array. Older versions accept
+ * one row per request, as form data. The client asks the server which mode it supports the
+ * first time it uploads rows, and uses single-row mode if the server does not support batches.
+ * <p>
+ * All requests from one client go through one {@link UploadTransport}, so they share kept-alive
+ * connections and any permanent redirect of the endpoint.
+ * <p>
+ * An UploadClient is not thread-safe.
+ */
+class UploadClient {
+    private static final String TAG = UploadClient.class.getSimpleName();
+
+    /**
+     * The key in each row for its idempotency key
+     * <p>
+     * The upload script does not add a row with an idempotency key that it has already added.
+     * Older scripts ignore this value because no spreadsheet column has this name.
+     */
+    static final String IDEMPOTENCY_KEY = "_key";
+
+    /**
+     * The transport that sends requests to the upload script
+     */
+    @NonNull
+    private final UploadTransport mTransport;
+
+    /**
+     * Encodes rows in single-row mode, reusing its buffer for each row
+     */
+    @NonNull
+    private final FormEncoder mFormEncoder = new FormEncoder();
+
+    /**
+     * Encodes rows in batch mode, reusing its buffer for each batch
+     */
+    @NonNull
+    private final JsonBatchEncoder mJsonEncoder = new JsonBatchEncoder();
+
+    /**
+     * If the server accepts batches, or null if the server has not been checked
+     */
+    @Nullable
+    private Boolean mBatchSupported;
+
+    /**
+     * If the server accepts gzip-compressed batches
+     */
+    private boolean mGzipSupported;
+
+    /**
+     * Creates a client
+     *
+     * @param url the URL of the upload script
+     */
+    UploadClient(@NonNull URL url) {
+        mTransport = new UploadTransport(Objects.requireNonNull(url));
+    }
+
+    /**
+     * Creates another client for the same server, which can send requests at the same time as
+     * this one
+     * <p>
+     * The new client has its own transport, and uses the server capabilities that this client
+     * found instead of checking them again.
+     *
+     * @return a new client
+     * @throws IOException     if the server capabilities could not be checked
+     * @throws UploadException if the server capabilities could not be checked
+     */
+    @NonNull
+    UploadClient fork() throws IOException, UploadException {
+        isBatchSupported();
+        final UploadClient client = new UploadClient(mTransport.getUrl());
+        client.mBatchSupported = mBatchSupported;
+        client.mGzipSupported = mGzipSupported;
+        return client;
+    }
+
+    /**
+     * Uploads rows
+     * <p>
+     * If the server supports batches, all rows are sent in one request and the server reports a
+     * result for each row. Otherwise, rows are sent one at a time and no more rows are sent after
+     * the first one that fails.
+     *
+     * @param rows the rows to upload
+     * @return a result for each row, in the same order as the rows
+     * @throws IOException     if the request, the first single-row request, or the batch
+     *                         support check failed
+     * @throws ParseException  if the server response to a batch request or the first single-row
+     *                         request was not valid
+     * @throws UploadException if the server rejected the whole batch or the first row
+     */
+    @NonNull
+    List<RowResult> upload(@NonNull RowSource rows)
+            throws IOException, ParseException, UploadException {
+        if (rows.size() == 0) {
+            return Collections.emptyList();
+        }
+        if (isBatchSupported()) {
+            return uploadBatch(rows);
+        } else {
+            return uploadSingly(rows);
+        }
+    }
+
+    /**
+     * Checks if the server supports batches, if it has not already been checked
+     * <p>
+     * The current script responds to a GET request with a JSON object that has "batch" set to
+     * true. Older scripts do not handle GET requests, so the response is not JSON. A server
+     * that can read gzip-compressed request bodies also sets "gzip" to true.
+     */
+    private boolean isBatchSupported() throws IOException, UploadException {
+        if (mBatchSupported == null) {
+            final UploadTransport.Response response = mTransport.get();
+            try {
+                final JSONObject json = new JSONObject(response.mBody);
+                mBatchSupported = response.mStatus == 200 && json.optBoolean("batch", false);
+                mGzipSupported = mBatchSupported && json.optBoolean("gzip", false);
+            } catch (JSONException e) {
+                mBatchSupported = false;
+            }
+            Log.d(TAG, "Server batch support: " + mBatchSupported + ", gzip: " + mGzipSupported);
+        }
+        return mBatchSupported;
+    }
+
+    /**
+     * Uploads rows one at a time
+     * <p>
+     * The server does not report why a single request failed, so a failed row may not be the
+     * row's fault. If the first row fails, the exception is thrown as if the whole request had
+     * failed. If a later row fails, that row and the remaining rows are reported as not sent,
+     * so they are sent again later without counting as failed attempts.
+     *
+     * @throws IOException     if the first row could not be sent because of a network error
+     * @throws ParseException  if the server response to the first row was not valid
+     * @throws UploadException if the server did not accept the first row
+     */
+    @NonNull
+    private List<RowResult> uploadSingly(@NonNull RowSource rows)
+            throws IOException, ParseException, UploadException {
+        final List<RowResult> results = new ArrayList<>(rows.size());
+        String error = null;
+        for (int i = 0; i < rows.size(); i++) {
+            if (error != null) {
+                results.add(RowResult.notSent(error));
+                continue;
+            }
+            try {
+                uploadForm(rows, i);
+                results.add(RowResult.SUCCESS);
+            } catch (IOException | ParseException | UploadException e) {
+                if (i == 0) {
+                    throw e;
+                }
+                Log.w(TAG, "Failed to upload row, not sending the remaining rows", e);
+                error = e.toString();
+                results.add(RowResult.notSent(error));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Uploads rows in one request as a JSON object
+     */
+    @NonNull
+    private List<RowResult> uploadBatch(@NonNull RowSource rows)
+            throws IOException, ParseException, UploadException {
+        mJsonEncoder.reset();
+        for (int i = 0; i < rows.size(); i++) {
+            mJsonEncoder.startRow();
+            rows.writeRow(i, mJsonEncoder);
+            mJsonEncoder.endRow();
+        }
+        mJsonEncoder.finish();
+        try {
+            Log.v(TAG, "Upload batch of " + rows.size() + " rows");
+            final UploadTransport.Response response = mTransport.post(mJsonEncoder.getBuffer(),
+                    mJsonEncoder.getLength(), "application/json; charset=utf-8", mGzipSupported);
+            checkStatus(response);
+            final JSONObject json = new JSONObject(response.mBody);
+            checkResult(json);
+            final JSONArray jsonResults = json.getJSONArray("results");
+            if (jsonResults.length() != rows.size()) {
+                throw new ParseException("Expected " + rows.size() + " results, got "
+                        + jsonResults.length(), 0);
+            }
+            final List<RowResult> results = new ArrayList<>(rows.size());
+            for (int i = 0; i < jsonResults.length(); i++) {
+                final JSONObject rowResult = jsonResults.getJSONObject(i);
+                if (rowResult.optString("result", "").equals("success")) {
+                    results.add(RowResult.SUCCESS);
+                } else {
+                    results.add(RowResult.rejected(
+                            rowResult.optString("message", "Unknown server error")));
+                }
+            }
+            return results;
+        } catch (JSONException e) {
+            final ParseException e1 = new ParseException("Failed to parse response JSON", 0);
+            e1.initCause(e);
+            throw e1;
+        }
+    }
+
+    /**
+     * Uploads one row as form data
+     *
+     * @param rows  the rows
+     * @param index the index of the row to upload
+     */
+    private void uploadForm(@NonNull RowSource rows, int index)
+            throws IOException, ParseException, UploadException {
+        mFormEncoder.reset();
+        rows.writeRow(index, mFormEncoder);
+        final UploadTransport.Response response = mTransport.post(mFormEncoder.getBuffer(),
+                mFormEncoder.getLength(), "application/x-www-form-urlencoded", false);
+        checkStatus(response);
+        try {
+            // Check for valid JSON
+            checkResult(new JSONObject(response.mBody));
+        } catch (JSONException e) {
+            final ParseException e1 = new ParseException("Failed to parse response JSON", 0);
+            e1.initCause(e);
+            throw e1;
+        }
+    }
+
+    /**
+     * @return a description of the requests this client has sent, for logging
+     */
+    @NonNull
+    String describeStats() {
+        return mTransport.describeStats();
+    }
+
+    /**
+     * Throws an exception if a response does not have status 200
+     */
+    private static void checkStatus(@NonNull UploadTransport.Response response)
+            throws UploadException {
+        if (response.mStatus != 200) {
+            throw new UploadException("Unexpected HTTP status " + response.mStatus);
+        }
+    }
+
+    /**
+     * Throws an exception if a server response does not have a "result" value of "success"
+     */
+    private static void checkResult(@NonNull JSONObject response) throws UploadException {
+        final String result = response.optString("result", "");
+        if (!result.equals("success")) {
+            final String message = response.optString("message", null);
+            if (message != null) {
+                throw new UploadException(message);
+            } else {
+                throw new UploadException("Unknown server error");
+            }
+        }
+    }
+
+    /**
+     * Rows to upload, which are written field by field into the request body
+     */
+    interface RowSource {
+        /**
+         * @return the number of rows
+         */
+        int size();
+
+        /**
+         * Writes the fields of one row
+         * <p>
+         * This is called on the thread that is uploading.
+         *
+         * @param index   the index of the row
+         * @param encoder the encoder to add the fields to
+         */
+        void writeRow(int index, @NonNull RowEncoder encoder);
+    }
+
+    /**
+     * The result of uploading one row
+     */
+    static final class RowResult {
+        /**
+         * What happened to a row
+         */
+        enum Kind {
+            /**
+             * The server added the row
+             */
+            ACCEPTED,
+            /**
+             * The server received the row and reported an error for it
+             */
+            REJECTED,
+            /**
+             * The row was not sent, or the request that sent it failed before the server
+             * reported a result. The row should be sent again later.
+             */
+            NOT_SENT,
+        }
+
+        static final RowResult SUCCESS = new RowResult(Kind.ACCEPTED, null);
+
+        @NonNull
+        private final Kind mKind;
+
+        /**
+         * The error message, or null if the row was added
+         */
+        @Nullable
+        private final String mError;
+
+        private RowResult(@NonNull Kind kind, @Nullable String error) {
+            mKind = kind;
+            mError = error;
+        }
+
+        @NonNull
+        static RowResult rejected(@NonNull String error) {
+            return new RowResult(Kind.REJECTED, error);
+        }
+
+        @NonNull
+        static RowResult notSent(@NonNull String error) {
+            return new RowResult(Kind.NOT_SENT, error);
+        }
+
+        @NonNull
+        Kind getKind() {
+            return mKind;
+        }
+
+        boolean isSuccess() {
+            return mKind == Kind.ACCEPTED;
+        }
+
+        @Nullable
+        String getError() {
+            return mError;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return isSuccess() ? "RowResult{success}"
+                    : "RowResult{" + mKind + ", error=" + mError + '}';
+        }
+    }
+}
@@ -0,0 +1,709 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.database.SQLException;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+
+import android.util.Log;
+
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.joda.time.format.ISODateTimeFormat;
+import org.samcrow.ridgesurvey.BuildConfig;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uploads records from the outbox to a server and deletes observations that have been uploaded
+ * <p>
+ * Uploads run on a background thread in this process, one pass at a time. Requests are
+ * coalesced: if uploads are requested while a pass is running, exactly one more pass runs after
+ * it. A running pass can be cancelled between requests.
+ * <p>
+ * Within a pass, up to {@link #UPLOAD_CONCURRENCY} batches are sent at the same time on worker
+ * threads. All database access stays on the pass thread.
+ * <p>
+ * The progress of each pass is sent as {@link UploadStatusTracker} broadcasts.
+ */
+public final class UploadEngine {
+
+    private static final String TAG = UploadEngine.class.getSimpleName();
+    /**
+     * The URL to upload to, which is set in the build configuration
+     */
+    private static final URL UPLOAD_URL;
+    /**
+     * The minimum age of an observation before it should be uploaded
+     */
+    static final Duration UPLOAD_AGE = Duration.standardMinutes(10);
+    /**
+     * The minimum age of an uploaded observation before it is deleted
+     */
+    private static final Duration DELETE_AGE = Duration.standardDays(2);
+    /**
+     * The maximum number of rows to upload in one request
+     * <p>
+     * Uploaded records are removed from the outbox after each request. If the app stops before
+     * that, the records in that request are sent again and the server ignores the duplicates.
+     */
+    private static final int UPLOAD_BATCH_SIZE = 25;
+    /**
+     * The maximum number of requests in flight at the same time
+     * <p>
+     * Records are read from the outbox this many batches at a time. The next group is read
+     * only after the results of all requests in the current group have been committed, so at
+     * most this many batches are held in memory.
+     */
+    private static final int UPLOAD_CONCURRENCY = 4;
+    /**
+     * The number of requests that can fail in a row before an upload stops
+     */
+    private static final int MAX_CONSECUTIVE_FAILURES = 3;
+
+    /**
+     * The tablet ID for the current upload, or null if it was not set up
+     */
+    @Nullable
+    private String mTabletId;
+    /**
+     * The number of records that failed in the current upload
+     */
+    private int mFailedCount;
+    /**
+     * The number of requests that have failed in a row in the current upload
+     */
+    private int mConsecutiveFailures;
+
+    static {
+        try {
+            UPLOAD_URL = new URL(BuildConfig.UPLOAD_URL);
+        } catch (MalformedURLException e) {
+            throw new RuntimeException("Invalid upload URL in build configuration", e);
+        }
+    }
+
+    /**
+     * The one instance in this process
+     */
+    private static UploadEngine sInstance;
+
+    /**
+     * The application context
+     */
+    @NonNull
+    private final Context mContext;
+
+    /**
+     * Runs upload passes. This has one thread, and its queue can hold one pass although no more
+     * than one is ever submitted at a time.
+     */
+    @NonNull
+    private final ThreadPoolExecutor mExecutor;
+    /**
+     * Sends requests for the current pass, up to {@link #UPLOAD_CONCURRENCY} at a time
+     */
+    @NonNull
+    private final ThreadPoolExecutor mWorkers;
+
+    /**
+     * Guards mRunning, mPending and mPendingForce
+     */
+    private final Object mLock = new Object();
+    /**
+     * If a pass has been submitted and has not finished
+     */
+    private boolean mRunning;
+    /**
+     * If another pass should run after the current one
+     */
+    private boolean mPending;
+    /**
+     * If the pending pass should ignore the upload age
+     */
+    private boolean mPendingForce;
+    /**
+     * If the current pass should stop
+     */
+    private volatile boolean mCancelled;
+
+    private UploadEngine(@NonNull Context context) {
+        mContext = context.getApplicationContext();
+        mExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(1), runnable -> new Thread(runnable, "Upload"));
+        mExecutor.allowCoreThreadTimeOut(true);
+        mWorkers = new ThreadPoolExecutor(UPLOAD_CONCURRENCY, UPLOAD_CONCURRENCY, 30,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> new Thread(runnable, "Upload worker"));
+        mWorkers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the upload engine for this process, creating it if necessary
+     *
+     * @param context a context, whose application context will be used
+     * @return the engine
+     */
+    @NonNull
+    public static synchronized UploadEngine getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new UploadEngine(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Requests an upload
+     * <p>
+     * If no upload is running, one starts. Otherwise, another pass runs when the current one
+     * finishes. Any number of requests made while a pass is running are combined into that one
+     * additional pass.
+     *
+     * @param force if true, also upload observations that are newer than {@link #UPLOAD_AGE},
+     *              and retry records that failed
+     */
+    public void requestUpload(boolean force) {
+        synchronized (mLock) {
+            if (mRunning) {
+                mPending = true;
+                mPendingForce |= force;
+                return;
+            }
+            mRunning = true;
+            mCancelled = false;
+        }
+        mExecutor.execute(() -> runPasses(force));
+    }
+
+    /**
+     * Stops the running upload after its current request and discards any pending pass
+     * <p>
+     * Records that were not uploaded stay in the outbox.
+     */
+    public void cancel() {
+        synchronized (mLock) {
+            mPending = false;
+            mPendingForce = false;
+            if (mRunning) {
+                mCancelled = true;
+            }
+        }
+    }
+
+    /**
+     * Runs a pass, and then more passes while more have been requested
+     */
+    private void runPasses(boolean force) {
+        boolean nextForce = force;
+        while (true) {
+            runPass(nextForce);
+            synchronized (mLock) {
+                if (!mPending) {
+                    mRunning = false;
+                    return;
+                }
+                mPending = false;
+                nextForce = mPendingForce;
+                mPendingForce = false;
+                mCancelled = false;
+            }
+        }
+    }
+
+    /**
+     * Throws an exception if the current pass has been cancelled
+     */
+    private void checkCancelled() {
+        if (mCancelled) {
+            throw new CancellationException("Upload cancelled");
+        }
+    }
+
+    /**
+     * Determines if this observation should be uploaded
+     *
+     * @param observation the observation
+     * @return if the observation should be uploaded
+     */
+    public static boolean needsUpload(Observation observation) {
+        final DateTime uploadThreshold = DateTime.now().minus(UPLOAD_AGE);
+        return !observation.isUploaded() && observation.getTime().isBefore(uploadThreshold);
+    }
+
+    /**
+     * Uploads records and deletes old uploaded observations. This runs on the upload thread.
+     *
+     * @param ignoreAge if true, upload observations that are newer than {@link #UPLOAD_AGE}
+     */
+    private void runPass(boolean ignoreAge) {
+        LocalBroadcastManager.getInstance(mContext)
+                .sendBroadcast(new Intent(UploadStatusTracker.ACTION_UPLOAD_STARTED));
+
+        final ObservationDatabase db = new ObservationDatabase(mContext);
+        final Outbox outbox = new Outbox(mContext);
+        // One client for each request in flight. Clients are created for each pass, so that
+        // the requests in a pass share connections and redirects.
+        final List<UploadClient> clients = new ArrayList<>(UPLOAD_CONCURRENCY);
+        clients.add(new UploadClient(UPLOAD_URL));
+        mFailedCount = 0;
+        mConsecutiveFailures = 0;
+        mTabletId = loadTabletId();
+        try {
+            if (ignoreAge) {
+                // The user asked to upload everything, so also retry records that failed
+                final int reset = outbox.resetFailures();
+                if (reset != 0) {
+                    Log.i(TAG, "Retrying " + reset + " records that failed");
+                }
+            }
+            // Upload queued records, route starts first and then timed events and observations.
+            // Observations are only ready when they are old enough, unless forced.
+            // Each group of batches is committed before the next one is read, so an interrupted
+            // run continues where it stopped. Records that fail are skipped until their retry
+            // time.
+            while (true) {
+                checkCancelled();
+                final List<Outbox.Item> items = outbox.getReady(DateTime.now(), ignoreAge,
+                        UPLOAD_BATCH_SIZE * UPLOAD_CONCURRENCY);
+                if (items.isEmpty()) {
+                    break;
+                }
+                uploadGroup(clients, outbox, items);
+            }
+
+            // Delete uploaded observations that are old enough
+            final DateTime deleteThreshold = DateTime.now().minus(DELETE_AGE);
+            final int deleted = db.deleteUploadedBefore(deleteThreshold);
+            if (deleted != 0) {
+                Log.d(TAG, "Deleted " + deleted + " uploaded observations");
+            }
+
+            if (mFailedCount == 0) {
+                LocalBroadcastManager.getInstance(mContext)
+                        .sendBroadcast(new Intent(UploadStatusTracker.ACTION_UPLOAD_SUCCESS));
+            } else {
+                Log.w(TAG, mFailedCount + " records failed to upload, "
+                        + outbox.countQuarantined() + " quarantined");
+                LocalBroadcastManager.getInstance(mContext)
+                        .sendBroadcast(new Intent(UploadStatusTracker.ACTION_UPLOAD_FAILED));
+            }
+        } catch (CancellationException e) {
+            Log.i(TAG, "Upload cancelled");
+            LocalBroadcastManager.getInstance(mContext)
+                    .sendBroadcast(new Intent(UploadStatusTracker.ACTION_UPLOAD_FAILED));
+        } catch (SQLException e) {
+            Log.e(TAG, "Failed to load an observation", e);
+            LocalBroadcastManager.getInstance(mContext)
+                    .sendBroadcast(new Intent(UploadStatusTracker.ACTION_UPLOAD_FAILED));
+        } catch (MalformedURLException e) {
+            Log.e(TAG, "Invalid form URL", e);
+            LocalBroadcastManager.getInstance(mContext)
+                    .sendBroadcast(new Intent(UploadStatusTracker.ACTION_UPLOAD_FAILED));
+        } catch (IOException e) {
+            Log.e(TAG, "Upload IO exception", e);
+            LocalBroadcastManager.getInstance(mContext)
+                    .sendBroadcast(new Intent(UploadStatusTracker.ACTION_UPLOAD_FAILED));
+        } catch (SecurityException e) {
+            Log.e(TAG, "Do not have permission to upload", e);
+            LocalBroadcastManager.getInstance(mContext)
+                    .sendBroadcast(new Intent(UploadStatusTracker.ACTION_UPLOAD_FAILED));
+        } catch (ParseException e) {
+            Log.e(TAG, "Failed to parse page", e);
+            LocalBroadcastManager.getInstance(mContext)
+                    .sendBroadcast(new Intent(UploadStatusTracker.ACTION_UPLOAD_FAILED));
+        } catch (UploadException e) {
+            Log.e(TAG, "Upload server error", e);
+            LocalBroadcastManager.getInstance(mContext)
+                    .sendBroadcast(new Intent(UploadStatusTracker.ACTION_UPLOAD_FAILED));
+        } catch (Exception e) {
+            Log.e(TAG, "Unknown upload error", e);
+            LocalBroadcastManager.getInstance(mContext)
+                    .sendBroadcast(new Intent(UploadStatusTracker.ACTION_UPLOAD_FAILED));
+        } finally {
+            for (int i = 0; i < clients.size(); i++) {
+                Log.d(TAG, "Upload pass, client " + i + ": " + clients.get(i).describeStats());
+            }
+        }
+    }
+
+    /**
+     * Uploads records in batches, sending several batches at the same time
+     * <p>
+     * The records must be in priority order. A batch is only sent after all batches with
+     * records of a higher priority (a lower priority number) have been committed, so a route
+     * start reaches the server before any observation made on that route. If a route start
+     * fails, the remaining records are not sent, and the next group is read from the outbox,
+     * which holds back the observations on that route until the route start is retried.
+     * Results are committed to the outbox in the same order as the records.
+     *
+     * @param clients the clients to use. The first client is used for the first batch of each
+     *                priority. More clients are added as needed, up to one for each batch.
+     * @throws IOException     if a network error occurred. Network errors are not specific to a
+     *                         record, so the upload should stop.
+     * @throws ParseException  if {@link #MAX_CONSECUTIVE_FAILURES} requests failed in a row
+     * @throws UploadException if {@link #MAX_CONSECUTIVE_FAILURES} requests failed in a row
+     */
+    private void uploadGroup(@NonNull List<UploadClient> clients, @NonNull Outbox outbox,
+                             @NonNull List<Outbox.Item> items)
+            throws IOException, ParseException, UploadException {
+        int start = 0;
+        while (start < items.size()) {
+            checkCancelled();
+            final int priority = items.get(start).getEntry().getPriority();
+            int end = start + 1;
+            while (end < items.size() && items.get(end).getEntry().getPriority() == priority) {
+                end++;
+            }
+            final List<List<Outbox.Item>> batches = new ArrayList<>();
+            for (int i = start; i < end; i += UPLOAD_BATCH_SIZE) {
+                batches.add(items.subList(i, Math.min(end, i + UPLOAD_BATCH_SIZE)));
+            }
+            while (clients.size() < batches.size()) {
+                clients.add(clients.get(0).fork());
+            }
+            final boolean routeStarts =
+                    items.get(start).getEntry().getKind() == OutboxEntry.KIND_ROUTE_START;
+            final int failedBefore = mFailedCount;
+            uploadBatches(clients, outbox, batches);
+            start = end;
+            if (routeStarts && mFailedCount != failedBefore && start < items.size()) {
+                // Read the outbox again, so that it holds back the observations on the routes
+                // of the failed route starts
+                Log.d(TAG, "Route starts failed, reading the outbox again");
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sends batches at the same time and commits their results in order
+     * <p>
+     * If a batch fails in a way that stops the upload, the batches that are already in flight
+     * are still committed before the exception is thrown.
+     */
+    private void uploadBatches(@NonNull List<UploadClient> clients, @NonNull Outbox outbox,
+                               @NonNull List<List<Outbox.Item>> batches)
+            throws IOException, ParseException, UploadException {
+        Log.d(TAG, "Trying to upload " + batches.size() + " batches");
+        final List<Future<List<UploadClient.RowResult>>> futures = new ArrayList<>(batches.size());
+        for (int i = 0; i < batches.size(); i++) {
+            final UploadClient client = clients.get(i);
+            final ItemRows rows = new ItemRows(batches.get(i), mTabletId);
+            futures.add(mWorkers.submit(() -> client.upload(rows)));
+        }
+        for (int i = 0; i < batches.size(); i++) {
+            final List<Outbox.Item> items = batches.get(i);
+            try {
+                final List<UploadClient.RowResult> results;
+                try {
+                    results = getResults(futures.get(i));
+                } catch (ParseException | UploadException e) {
+                    // The earlier requests are finished, so the first client is not in use
+                    handleRequestFailure(clients.get(0), outbox, items, e);
+                    continue;
+                }
+                commitResults(outbox, items, results);
+            } catch (IOException | ParseException | UploadException e) {
+                commitRemaining(outbox, batches, futures, i + 1);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Commits the results of the batches that succeeded, starting at an index, and ignores the
+     * batches that failed
+     * <p>
+     * This is used when the upload is stopping. Records in the failed batches stay in the outbox
+     * and are sent again in the next upload.
+     */
+    private void commitRemaining(@NonNull Outbox outbox, @NonNull List<List<Outbox.Item>> batches,
+                                 @NonNull List<Future<List<UploadClient.RowResult>>> futures,
+                                 int start) {
+        for (int i = start; i < batches.size(); i++) {
+            try {
+                commitResults(outbox, batches.get(i), getResults(futures.get(i)));
+            } catch (IOException | ParseException | UploadException e) {
+                Log.d(TAG, "Batch failed while stopping the upload", e);
+            }
+        }
+    }
+
+    /**
+     * Waits for a request to finish
+     *
+     * @return the results of the request
+     */
+    @NonNull
+    private static List<UploadClient.RowResult> getResults(
+            @NonNull Future<List<UploadClient.RowResult>> future)
+            throws IOException, ParseException, UploadException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            final CancellationException e1 = new CancellationException("Interrupted");
+            e1.initCause(e);
+            throw e1;
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof ParseException) {
+                throw (ParseException) cause;
+            } else if (cause instanceof UploadException) {
+                throw (UploadException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+    /**
+     * Uploads records in one request on the current thread and commits the results
+     *
+     * @throws IOException     if a network error occurred
+     * @throws ParseException  if {@link #MAX_CONSECUTIVE_FAILURES} requests failed in a row
+     * @throws UploadException if {@link #MAX_CONSECUTIVE_FAILURES} requests failed in a row
+     */
+    private void uploadItems(@NonNull UploadClient client, @NonNull Outbox outbox,
+                             @NonNull List<Outbox.Item> items)
+            throws IOException, ParseException, UploadException {
+        final List<UploadClient.RowResult> results;
+        try {
+            results = client.upload(new ItemRows(items, mTabletId));
+        } catch (ParseException | UploadException e) {
+            handleRequestFailure(client, outbox, items, e);
+            return;
+        }
+        commitResults(outbox, items, results);
+    }
+
+    /**
+     * Handles a request that the server did not accept
+     * <p>
+     * If the request had more than one record, each record is sent again alone on the current
+     * thread. Otherwise the record is recorded as failed.
+     *
+     * @param client a client that is not being used by another thread
+     * @param e      the reason the request failed
+     * @throws IOException     if a network error occurred
+     * @throws ParseException  if {@link #MAX_CONSECUTIVE_FAILURES} requests failed in a row
+     * @throws UploadException if {@link #MAX_CONSECUTIVE_FAILURES} requests failed in a row
+     */
+    private void handleRequestFailure(@NonNull UploadClient client, @NonNull Outbox outbox,
+                                      @NonNull List<Outbox.Item> items, @NonNull Exception e)
+            throws IOException, ParseException, UploadException {
+        if (items.size() > 1) {
+            // One record may have caused the whole request to fail. Send each record alone
+            // so that the others are not held back.
+            Log.w(TAG, "Batch upload failed, sending records one at a time", e);
+            for (Outbox.Item item : items) {
+                checkCancelled();
+                uploadItems(client, outbox, Collections.singletonList(item));
+            }
+            return;
+        }
+        Log.w(TAG, "Failed to upload " + items.get(0).getEntry(), e);
+        outbox.recordFailure(items.get(0), e.toString(), false, DateTime.now());
+        mFailedCount++;
+        mConsecutiveFailures++;
+        if (mConsecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
+            // The server is probably failing every request
+            if (e instanceof ParseException) {
+                throw (ParseException) e;
+            } else if (e instanceof UploadException) {
+                throw (UploadException) e;
+            } else {
+                throw new UploadException("Too many failed requests", e);
+            }
+        }
+    }
+
+    /**
+     * Removes the records that the server accepted from the outbox and records the rejected ones
+     * as failed
+     * <p>
+     * Records that were not sent stay in the outbox unchanged, without an attempt or a retry
+     * delay, and are sent again with the next group.
+     */
+    private void commitResults(@NonNull Outbox outbox, @NonNull List<Outbox.Item> items,
+                               @NonNull List<UploadClient.RowResult> results) {
+        mConsecutiveFailures = 0;
+        final List<Outbox.Item> uploaded = new ArrayList<>(items.size());
+        for (int i = 0; i < results.size(); i++) {
+            final UploadClient.RowResult result = results.get(i);
+            switch (result.getKind()) {
+                case ACCEPTED:
+                    uploaded.add(items.get(i));
+                    break;
+                case REJECTED:
+                    Log.w(TAG, "Server rejected " + items.get(i).getEntry() + ": "
+                            + result.getError());
+                    outbox.recordFailure(items.get(i), Objects.requireNonNull(result.getError()),
+                            true, DateTime.now());
+                    mFailedCount++;
+                    break;
+                case NOT_SENT:
+                    Log.d(TAG, "Not sent: " + items.get(i).getEntry());
+                    break;
+            }
+        }
+        outbox.complete(uploaded);
+    }
+
+    /**
+     * Reads the tablet ID from the preferences
+     *
+     * @return the tablet ID, or null if it was not set up
+     */
+    @Nullable
+    private String loadTabletId() {
+        final SharedPreferences prefs = mContext.getSharedPreferences("tablet_properties",
+                Context.MODE_PRIVATE);
+        return prefs.getString("tablet_id", null);
+    }
+
+    /**
+     * Records formatted as rows with their idempotency keys
+     * <p>
+     * The fields of each record are written straight into the request body, without building
+     * a map for each row.
+     */
+    private static final class ItemRows implements UploadClient.RowSource {
+        @NonNull
+        private final List<Outbox.Item> mItems;
+        /**
+         * The tablet ID to add to observations and timed events, or null if it was not set up
+         */
+        @Nullable
+        private final String mTabletId;
+
+        ItemRows(@NonNull List<Outbox.Item> items, @Nullable String tabletId) {
+            mItems = Objects.requireNonNull(items);
+            mTabletId = tabletId;
+        }
+
+        @Override
+        public int size() {
+            return mItems.size();
+        }
+
+        @Override
+        public void writeRow(int index, @NonNull RowEncoder encoder) {
+            final Outbox.Item item = mItems.get(index);
+            if (item.getRouteState() != null) {
+                writeStartRoute(item.getRouteState(), encoder);
+            } else if (item.getTimedEvent() != null) {
+                writeSimpleTimedEvent(item.getTimedEvent(), encoder);
+                writeTabletId(encoder);
+            } else {
+                writeObservation(Objects.requireNonNull(item.getObservation()), encoder);
+                writeTabletId(encoder);
+            }
+            encoder.add(UploadClient.IDEMPOTENCY_KEY, item.getEntry().getIdempotencyKey());
+        }
+
+        /**
+         * Adds the tablet ID for the current upload to a row, if it was set up
+         */
+        private void writeTabletId(@NonNull RowEncoder encoder) {
+            if (mTabletId != null) {
+                encoder.add("Tablet ID", mTabletId);
+            }
+        }
+
+        /**
+         * Writes the columns for an observation
+         */
+        private static void writeObservation(@NonNull Observation observation,
+                                             @NonNull RowEncoder encoder) {
+            encoder.add("Time", ISODateTimeFormat.dateTime().print(observation.getTime()));
+            encoder.add("Event", "Observation");
+            encoder.add("Test mode", observation.isTest() ? "1" : "0");
+            encoder.add("Observed", observation.isObserved() ? "1" : "0");
+            encoder.add("ROUTE", observation.getRouteName());
+            encoder.add("SURVEY LOCATION", Integer.toString(observation.getSiteId()));
+
+            // Species (each species key is already a column name)
+            final SpeciesMask species = observation.getSpeciesMask();
+            long remaining = species.getKnown();
+            while (remaining != 0) {
+                final int index = Long.numberOfTrailingZeros(remaining);
+                encoder.add(SpeciesCatalog.columnAt(index),
+                        (species.getPresent() & (1L << index)) != 0 ? "1" : "0");
+                remaining &= remaining - 1;
+            }
+            final Map<String, Boolean> extra = species.getExtra();
+            if (extra != null) {
+                for (Map.Entry<String, Boolean> entry : extra.entrySet()) {
+                    encoder.add(entry.getKey(), entry.getValue() ? "1" : "0");
+                }
+            }
+
+            encoder.add("NOTES", observation.getNotes());
+        }
+
+        /**
+         * Writes the columns for a simple timed event
+         */
+        private static void writeSimpleTimedEvent(@NonNull SimpleTimedEvent event,
+                                                  @NonNull RowEncoder encoder) {
+            encoder.add("Time", ISODateTimeFormat.dateTime().print(event.getTime()));
+            encoder.add("Event", event.getName());
+            encoder.add("ROUTE", event.getRoute());
+        }
+
+        /**
+         * Writes the columns for a route start
+         */
+        private static void writeStartRoute(@NonNull RouteState routeState,
+                                            @NonNull RowEncoder encoder) {
+            encoder.add("Time", ISODateTimeFormat.dateTime().print(routeState.getStartTime()));
+            encoder.add("Event", "Route start");
+            encoder.add("SURVEYOR", routeState.getSurveyorName());
+            encoder.add("Tablet ID", routeState.getTabletId());
+            encoder.add("Sensor ID", routeState.getSensorId());
+            encoder.add("ROUTE", routeState.getRouteName());
+        }
+    }
+}
@@ -22,6 +22,9 @@ import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
 import android.view.MenuItem;
 
+import androidx.core.view.MenuItemCompat;
+
+import org.joda.time.DateTime;
 import org.samcrow.ridgesurvey.R;
 
 import java.util.Objects;
@@ -54,7 +57,14 @@ public class UploadMenuItemController implements UploadStatusListener {
     @DrawableRes
     private static final int ICON_IN_PROGRESS = R.drawable.ic_cloud_queue_white_24dp;
 
-    public UploadMenuItemController(@NonNull MenuItem item) {
+    /**
+     * A context used to load strings
+     */
+    @NonNull
+    private final Context mContext;
+
+    public UploadMenuItemController(@NonNull Context context, @NonNull MenuItem item) {
+        mContext = Objects.requireNonNull(context);
         mItem = Objects.requireNonNull(item);
 
         // Set up
@@ -79,4 +89,11 @@ public class UploadMenuItemController implements UploadStatusListener {
                 break;
         }
     }
+
+    @Override
+    public void setPendingUploads(@NonNull PendingUploads pending) {
+        final String description = pending.describe(mContext.getResources(), DateTime.now());
+        MenuItemCompat.setContentDescription(mItem, description);
+        MenuItemCompat.setTooltipText(mItem, description);
+    }
 }
@@ -22,6 +22,10 @@ import androidx.annotation.ColorInt;
 import android.util.AttributeSet;
 import android.view.View;
 
+import androidx.annotation.NonNull;
+import androidx.core.view.ViewCompat;
+
+import org.joda.time.DateTime;
 import org.samcrow.ridgesurvey.R;
 
 import java.util.Objects;
@@ -72,4 +76,12 @@ public class UploadStatusBar extends View implements UploadStatusListener {
                 break;
         }
     }
+
+    @Override
+    public void setPendingUploads(@NonNull PendingUploads pending) {
+        // Shown when the bar is long-pressed
+        final String description = pending.describe(getResources(), DateTime.now());
+        setContentDescription(description);
+        ViewCompat.setTooltipText(this, description);
+    }
 }
@@ -17,6 +17,8 @@
 
 package org.samcrow.ridgesurvey.data;
 
+import androidx.annotation.NonNull;
+
 /**
  * An interface for objects that can respond to changes in the upload state
  */
@@ -45,4 +47,14 @@ public interface UploadStatusListener {
      * @param state the status, which must not be null
      */
     void setState(UploadState state);
+
+    /**
+     * Sets the observations that are waiting to be uploaded
+     * <p>
+     * The default implementation does nothing.
+     *
+     * @param pending the waiting observations
+     */
+    default void setPendingUploads(@NonNull PendingUploads pending) {
+    }
 }
@@ -20,20 +20,27 @@ package org.samcrow.ridgesurvey.data;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.database.SQLException;
+import android.util.Log;
+
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
+import org.joda.time.DateTime;
 import org.samcrow.ridgesurvey.data.UploadStatusListener.UploadState;
 
 import java.util.LinkedHashSet;
-import java.util.List;
 import java.util.Set;
 import java.util.Objects;
 
 /**
  * Keeps track of the status of uploads and updates user interface elements
+ * <p>
+ * The tracker receives upload broadcasts from {@link UploadEngine}. It must also be registered
+ * with {@link ObservationDatabase#addChangeListener(ObservationChangeListener)}, so that it can
+ * keep the number of waiting observations up to date.
  */
-public class UploadStatusTracker extends BroadcastReceiver {
+public class UploadStatusTracker extends BroadcastReceiver implements ObservationChangeListener {
+    private static final String TAG = UploadStatusTracker.class.getSimpleName();
 
     /**
      * An action sent to an instance of this class when an upload begins
@@ -47,10 +54,6 @@ public class UploadStatusTracker extends BroadcastReceiver {
      * An action sent to an instance of this class when an upload fails
      */
     public static final String ACTION_UPLOAD_FAILED = UploadStatusTracker.class.getName() + ".ACTION_UPLOAD_FAILED";
-    /**
-     * An action sent to an instance of this class when an observation is recorded
-     */
-    public static final String ACTION_OBSERVATION_MADE = UploadStatusTracker.class.getName() + ".ACTION_OBSERVATION_MADE";
 
     /**
      * The context
@@ -64,6 +67,23 @@ public class UploadStatusTracker extends BroadcastReceiver {
     @NonNull
     private final Set<UploadStatusListener> mListeners;
 
+    /**
+     * The observations waiting for upload, or null if they are being counted
+     */
+    @Nullable
+    private PendingUploads mPending;
+
+    /**
+     * The number of background counts that have been started and have not finished
+     */
+    private int mCountsInProgress;
+
+    /**
+     * If an upload finished while the observations were being counted, so the upload state
+     * must be set when the count finishes
+     */
+    private boolean mUploadStateNeeded;
+
     /**
      * Creates a new tracker
      * @param context a context
@@ -77,21 +97,81 @@ public class UploadStatusTracker extends BroadcastReceiver {
     @Override
     public void onReceive(Context context, Intent intent) {
         final String action = intent.getAction();
-        if (action.equals(ACTION_OBSERVATION_MADE)) {
-            setListenerStates(UploadState.NeedsUpload);
-        } else if (action.equals(ACTION_UPLOAD_STARTED)) {
+        if (action.equals(ACTION_UPLOAD_STARTED)) {
             setListenerStates(UploadState.Uploading);
         } else if (action.equals(ACTION_UPLOAD_SUCCESS)) {
-            if (hasObservationWaiting()) {
-                setListenerStates(UploadState.NeedsUpload);
+            if (mPending != null) {
+                setUploadFinishedState(mPending);
             } else {
-                setListenerStates(UploadState.Ok);
+                mUploadStateNeeded = true;
+                if (mCountsInProgress == 0) {
+                    countPendingUploads();
+                }
             }
         } else if (action.equals(ACTION_UPLOAD_FAILED)) {
             setListenerStates(UploadState.NeedsUpload);
         }
     }
 
+    @Override
+    public void onObservationChanged(@NonNull ObservationChange change) {
+        final ObservationSummary observation = change.getObservation();
+        switch (change.getType()) {
+            case INSERTED:
+                if (!observation.isUploaded()) {
+                    if (mPending != null) {
+                        setPendingUploads(mPending.withAdded(observation.getTime()));
+                    } else {
+                        countPendingUploads();
+                    }
+                }
+                setListenerStates(UploadState.NeedsUpload);
+                break;
+            case UPLOADED:
+                removePending(observation);
+                break;
+            case DELETED:
+                if (!observation.isUploaded()) {
+                    removePending(observation);
+                }
+                break;
+            case UPDATED:
+                // An edit marks the observation as not uploaded and changes its time, but the
+                // previous values are not known
+                countPendingUploads();
+                break;
+        }
+    }
+
+    /**
+     * Sets the listener states after a successful upload
+     *
+     * @param pending the observations that are still waiting
+     */
+    private void setUploadFinishedState(@NonNull PendingUploads pending) {
+        if (pending.hasEligible(DateTime.now())) {
+            setListenerStates(UploadState.NeedsUpload);
+        } else {
+            setListenerStates(UploadState.Ok);
+        }
+    }
+
+    /**
+     * Updates the waiting observations after one was uploaded or deleted
+     *
+     * @param observation the observation that is no longer waiting
+     */
+    private void removePending(@NonNull ObservationSummary observation) {
+        final PendingUploads pending = mPending != null
+                ? mPending.withRemoved(observation.getTime()) : null;
+        if (pending != null) {
+            setPendingUploads(pending);
+        } else {
+            // The oldest waiting observation was removed, so the next one must be found
+            countPendingUploads();
+        }
+    }
+
     private void setListenerStates(UploadState state) {
         for (UploadStatusListener listener : mListeners) {
             listener.setState(state);
@@ -104,21 +184,47 @@ public class UploadStatusTracker extends BroadcastReceiver {
     }
 
     /**
-     * Determines if there are one or more observations waiting to be uploaded
-     * @return true if one or more observations still needs to be uploaded
+     * Counts the observations waiting to be uploaded in the background, and then sends the result
+     * to the listeners
+     * <p>
+     * Changes reported while counting cannot be applied to the old count, so they start another
+     * count. Only the result of the last count is used.
      */
-    private boolean hasObservationWaiting() {
+    private void countPendingUploads() {
+        mPending = null;
+        mCountsInProgress++;
         final ObservationDatabase db = new ObservationDatabase(mContext);
-        try {
-            final List<IdentifiedObservation> observations = db.getObservationsByTime();
-            for (IdentifiedObservation observation : observations) {
-                if (UploadService.needsUpload(observation)) {
-                    return true;
-                }
+        DatabaseExecutor.submit(db::getPendingUploads, new DatabaseExecutor.Callback<PendingUploads>() {
+            @Override
+            public void onSuccess(PendingUploads pending) {
+                countFinished(pending);
+            }
+
+            @Override
+            public void onFailure(@NonNull Exception e) {
+                Log.w(TAG, "Failed to count pending uploads", e);
+                countFinished(PendingUploads.NONE);
             }
-            return false;
-        } catch (SQLException e) {
-            return false;
+        });
+    }
+
+    private void countFinished(@NonNull PendingUploads pending) {
+        mCountsInProgress--;
+        if (mCountsInProgress != 0) {
+            // A newer count will replace this one
+            return;
+        }
+        setPendingUploads(pending);
+        if (mUploadStateNeeded) {
+            mUploadStateNeeded = false;
+            setUploadFinishedState(pending);
+        }
+    }
+
+    private void setPendingUploads(@NonNull PendingUploads pending) {
+        mPending = pending;
+        for (UploadStatusListener listener : mListeners) {
+            listener.setPendingUploads(pending);
         }
     }
 }
@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Sends HTTP requests to the upload server
+ * <p>
+ * Connections are kept alive between requests: every response is read completely and closed
+ * without disconnecting, so the connection pool can reuse the socket and its TLS session for
+ * the next request to the same host.
+ * <p>
+ * Redirects are followed here instead of by HttpURLConnection so that they can be handled by
+ * type. A 302 or 303 response to a POST is followed with a GET, which is how the Apps Script
+ * endpoint returns its result. A 301 or 308 response means that the endpoint has moved, so the
+ * new location is used for all later requests from this transport. A 307 response is followed
+ * with the same request.
+ * <p>
+ * The transport records the number and duration of its requests. An UploadTransport is not
+ * thread-safe.
+ */
+class UploadTransport {
+    private static final String TAG = UploadTransport.class.getSimpleName();
+
+    /**
+     * The maximum number of redirects to follow for one request
+     */
+    private static final int MAX_REDIRECTS = 5;
+    private static final int CONNECT_TIMEOUT_MS = 15_000;
+    private static final int READ_TIMEOUT_MS = 60_000;
+
+    /**
+     * The URL to send requests to, which changes if the server permanently redirects
+     */
+    @NonNull
+    private URL mUrl;
+
+    /**
+     * The number of requests sent, not including redirects
+     */
+    private int mRequestCount;
+    /**
+     * The number of redirects followed
+     */
+    private int mRedirectCount;
+    /**
+     * The total time spent on requests, including redirects, milliseconds
+     */
+    private long mTotalTime;
+    /**
+     * The longest time spent on one request, milliseconds
+     */
+    private long mMaxTime;
+    /**
+     * The total number of request body bytes sent
+     */
+    private long mBytesSent;
+
+    /**
+     * Creates a transport
+     *
+     * @param url the URL to send requests to
+     */
+    UploadTransport(@NonNull URL url) {
+        mUrl = Objects.requireNonNull(url);
+    }
+
+    /**
+     * @return the URL that requests are sent to, after any permanent redirects
+     */
+    @NonNull
+    URL getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * Sends a GET request
+     *
+     * @return the response after following redirects
+     * @throws IOException     if a network error occurs
+     * @throws UploadException if a redirect is invalid or there are too many redirects
+     */
+    @NonNull
+    Response get() throws IOException, UploadException {
+        return execute(null, 0, null, false);
+    }
+
+    /**
+     * Sends a POST request
+     *
+     * @param body        the request body
+     * @param contentType the content type of the body
+     * @param gzip        if true, compress the body and send it with Content-Encoding gzip.
+     *                    Only use this if the server is known to accept compressed requests.
+     * @return the response after following redirects
+     * @throws IOException     if a network error occurs
+     * @throws UploadException if a redirect is invalid or there are too many redirects
+     */
+    @NonNull
+    Response post(@NonNull byte[] body, @NonNull String contentType, boolean gzip)
+            throws IOException, UploadException {
+        return post(body, body.length, contentType, gzip);
+    }
+
+    /**
+     * Sends a POST request with a body that is the start of an array
+     *
+     * @param body        an array that starts with the request body
+     * @param length      the number of bytes of the body
+     * @param contentType the content type of the body
+     * @param gzip        if true, compress the body and send it with Content-Encoding gzip
+     * @return the response after following redirects
+     * @throws IOException     if a network error occurs
+     * @throws UploadException if a redirect is invalid or there are too many redirects
+     */
+    @NonNull
+    Response post(@NonNull byte[] body, int length, @NonNull String contentType, boolean gzip)
+            throws IOException, UploadException {
+        if (gzip) {
+            final byte[] compressed = compress(body, length);
+            return execute(compressed, compressed.length, contentType, true);
+        }
+        return execute(body, length, contentType, false);
+    }
+
+    /**
+     * Sends a request and follows redirects
+     *
+     * @param body        an array that starts with the request body, or null to send a GET
+     *                    request
+     * @param length      the number of bytes of the body
+     * @param contentType the content type of the body
+     * @param gzip        if the body has been compressed
+     */
+    @NonNull
+    private Response execute(@Nullable byte[] body, int length, @Nullable String contentType,
+                             boolean gzip)
+            throws IOException, UploadException {
+        final String method = body != null ? "POST" : "GET";
+        final long start = SystemClock.elapsedRealtime();
+        URL url = mUrl;
+        int redirects = 0;
+        while (true) {
+            final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setInstanceFollowRedirects(false);
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            connection.setUseCaches(false);
+            // Disable response compression, which might be causing problems
+            connection.setRequestProperty("Accept-Encoding", "identity");
+            if (body != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", contentType);
+                if (gzip) {
+                    connection.setRequestProperty("Content-Encoding", "gzip");
+                }
+                connection.setFixedLengthStreamingMode(length);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body, 0, length);
+                }
+                mBytesSent += length;
+            }
+
+            final int status = connection.getResponseCode();
+            if (isRedirect(status)) {
+                final String location = connection.getHeaderField("Location");
+                // Read the rest of the response so that the connection can be reused
+                readResponse(connection, status);
+                if (location == null) {
+                    throw new UploadException("Got a " + status + " response with no Location header");
+                }
+                if (++redirects > MAX_REDIRECTS) {
+                    throw new UploadException("Too many redirects");
+                }
+                final URL redirectUrl = new URL(url, location);
+                // URL.equals resolves host names, so compare the text instead
+                if ((status == 301 || status == 308)
+                        && url.toExternalForm().equals(mUrl.toExternalForm())) {
+                    Log.i(TAG, "Endpoint moved to " + redirectUrl);
+                    mUrl = redirectUrl;
+                }
+                if (status == 302 || status == 303) {
+                    // Get the result with a GET request
+                    body = null;
+                }
+                Log.v(TAG, "Following " + status + " redirect to " + redirectUrl.getHost());
+                url = redirectUrl;
+                continue;
+            }
+
+            final String responseBody = readResponse(connection, status);
+            final long elapsed = SystemClock.elapsedRealtime() - start;
+            mRequestCount++;
+            mRedirectCount += redirects;
+            mTotalTime += elapsed;
+            mMaxTime = Math.max(mMaxTime, elapsed);
+            Log.v(TAG, method + " -> " + status + " in " + elapsed + " ms, " + redirects + " redirects");
+            return new Response(status, responseBody);
+        }
+    }
+
+    private static boolean isRedirect(int status) {
+        return status == 301 || status == 302 || status == 303 || status == 307 || status == 308;
+    }
+
+    /**
+     * Reads and closes a response body, from the error stream if the status is an error
+     */
+    @NonNull
+    private static String readResponse(@NonNull HttpURLConnection connection, int status)
+            throws IOException {
+        final InputStream in = status >= 400 ? connection.getErrorStream()
+                : connection.getInputStream();
+        if (in == null) {
+            return "";
+        }
+        try {
+            return IOUtils.toString(in, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    @NonNull
+    private static byte[] compress(@NonNull byte[] body, int length) throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(body, 0, length);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * @return a description of the requests sent so far, for logging
+     */
+    @NonNull
+    String describeStats() {
+        final long average = mRequestCount != 0 ? mTotalTime / mRequestCount : 0;
+        return mRequestCount + " requests, " + mRedirectCount + " redirects, " + mBytesSent
+                + " bytes sent, " + average + " ms average, " + mMaxTime + " ms max";
+    }
+
+    /**
+     * An HTTP response
+     */
+    static final class Response {
+        final int mStatus;
+        @NonNull
+        final String mBody;
+
+        Response(int status, @NonNull String body) {
+            mStatus = status;
+            mBody = body;
+        }
+    }
+}
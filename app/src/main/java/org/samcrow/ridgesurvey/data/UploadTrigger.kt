@@ -25,22 +25,64 @@ import android.net.ConnectivityManager
 import android.net.Network
 import android.net.NetworkCapabilities
 import android.net.NetworkRequest
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
 import android.util.Log
+import androidx.localbroadcastmanager.content.LocalBroadcastManager
+import org.joda.time.DateTime
+import kotlin.random.Random
 
 private const val TAG = "UploadTrigger"
 
+/** The delay before retrying after the first failed upload, milliseconds */
+private const val BACKOFF_BASE_MS = 30_000L
+
+/** The maximum delay before retrying after failed uploads, milliseconds */
+private const val BACKOFF_MAX_MS = 30 * 60_000L
+
 /**
- * This class listens for broadcasts and connectivity events and uses them to start the upload
- * service.
+ * This class starts an upload when records in the outbox become ready to upload.
+ *
+ * It finds the time when the next record will be ready ([Outbox.getNextReadyTime]) and waits
+ * until then. Nothing runs while the outbox is empty. After an upload fails, it waits for an
+ * exponentially increasing delay with random jitter before trying again. A record of any kind
+ * added to or changed in the outbox, or a newly validated network connection, makes it check
+ * the outbox again immediately. Records are uploaded automatically only through this class, so
+ * that every upload respects the backoff.
  */
-class UploadTrigger(private val context: Context) {
+class UploadTrigger(private val context: Context) : OutboxChangeListener {
+
+    private val handler = Handler(Looper.getMainLooper())
+    private val outbox = Outbox(context)
+
+    /** The number of uploads in a row that have failed */
+    private var failures = 0
+
+    /** The elapsed realtime before which an upload should not start because of failures */
+    private var backoffUntil = 0L
+
+    /** Incremented when the schedule is recalculated, so that only the latest result is used */
+    private var generation = 0
 
-    private val timeTickReceiver = object : BroadcastReceiver() {
+    private var closed = false
+
+    private val uploadRunnable = Runnable { UploadEngine.getInstance(context).requestUpload(false) }
+
+    private val statusReceiver = object : BroadcastReceiver() {
         override fun onReceive(context: Context?, intent: Intent?) {
-            if (intent?.action != Intent.ACTION_TIME_TICK) {
-                return
+            when (intent?.action) {
+                UploadStatusTracker.ACTION_UPLOAD_SUCCESS -> {
+                    failures = 0
+                    backoffUntil = 0
+                    schedule()
+                }
+                UploadStatusTracker.ACTION_UPLOAD_FAILED -> {
+                    failures++
+                    backoffUntil = SystemClock.elapsedRealtime() + backoffDelay(failures)
+                    schedule()
+                }
             }
-            startUploadService()
         }
     }
 
@@ -50,7 +92,21 @@ class UploadTrigger(private val context: Context) {
             networkCapabilities: NetworkCapabilities
         ) {
             if (networkCapabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED)) {
-                startUploadService()
+                // This runs on a connectivity thread
+                handler.post {
+                    // Failures were probably caused by the missing network, so retry now
+                    backoffUntil = 0
+                    schedule()
+                }
+            }
+        }
+
+        override fun onLost(network: Network) {
+            // Another network may still carry the upload, for example when Wi-Fi drops and
+            // mobile data takes over. Only if none is left would requests time out, so then
+            // stop the running upload. It will be scheduled again when a network is validated.
+            if (!hasValidatedNetwork(network)) {
+                UploadEngine.getInstance(context).cancel()
             }
         }
     }
@@ -58,27 +114,84 @@ class UploadTrigger(private val context: Context) {
     private val connectivity = context.getSystemService(ConnectivityManager::class.java)
 
     init {
-        val timeTickFilter = IntentFilter(Intent.ACTION_TIME_TICK)
-        context.registerReceiver(timeTickReceiver, timeTickFilter)
+        val statusFilter = IntentFilter()
+        statusFilter.addAction(UploadStatusTracker.ACTION_UPLOAD_SUCCESS)
+        statusFilter.addAction(UploadStatusTracker.ACTION_UPLOAD_FAILED)
+        LocalBroadcastManager.getInstance(context).registerReceiver(statusReceiver, statusFilter)
+        outbox.addChangeListener(this)
 
         val networkRequest = NetworkRequest.Builder()
             .addCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED)
             .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
             .build()
         connectivity.registerNetworkCallback(networkRequest, networkCallback)
+
+        schedule()
+    }
+
+    /**
+     * Returns true if the default network is validated and is not [lost], which has just been
+     * lost but may still be reported as the default
+     */
+    private fun hasValidatedNetwork(lost: Network): Boolean {
+        val active = connectivity.activeNetwork ?: return false
+        if (active == lost) {
+            return false
+        }
+        val capabilities = connectivity.getNetworkCapabilities(active) ?: return false
+        return capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED)
     }
 
     /** Unregisters callbacks and associated resources */
     fun close() {
-        context.unregisterReceiver(timeTickReceiver)
+        closed = true
+        handler.removeCallbacks(uploadRunnable)
+        LocalBroadcastManager.getInstance(context).unregisterReceiver(statusReceiver)
+        outbox.removeChangeListener(this)
         connectivity.unregisterNetworkCallback(networkCallback)
     }
 
-    private fun startUploadService() {
-        try {
-            context.startService(Intent(context, UploadService::class.java))
-        } catch (e: IllegalStateException) {
-            Log.w(TAG, "Unable to start upload service", e)
-        }
+    override fun onOutboxChanged() {
+        // The new record may be ready before the currently scheduled time
+        schedule()
+    }
+
+    /**
+     * Finds the time when the next record will be ready and schedules an upload then, or
+     * cancels the scheduled upload if nothing is waiting. Must be called on the main thread.
+     */
+    fun schedule() {
+        val thisGeneration = ++generation
+        val task = DatabaseExecutor.Task<DateTime?> { outbox.nextReadyTime }
+        DatabaseExecutor.submit(task, object : DatabaseExecutor.Callback<DateTime?> {
+            override fun onSuccess(result: DateTime?) {
+                if (closed || thisGeneration != generation) {
+                    return
+                }
+                handler.removeCallbacks(uploadRunnable)
+                if (result == null) {
+                    Log.d(TAG, "Nothing to upload")
+                    return
+                }
+                val untilReady = result.millis - System.currentTimeMillis()
+                val untilBackoffEnds = backoffUntil - SystemClock.elapsedRealtime()
+                val delay = maxOf(untilReady, untilBackoffEnds, 0L)
+                Log.d(TAG, "Next upload in $delay ms")
+                handler.postDelayed(uploadRunnable, delay)
+            }
+        })
     }
-}
\ No newline at end of file
+
+}
+
+/**
+ * Returns the delay before retrying after some number of failed uploads in a row
+ *
+ * The delay doubles with each failure, up to a limit. It is then scaled by a random factor
+ * between 0.5 and 1 so that tablets that lost the network together do not retry together.
+ */
+private fun backoffDelay(failures: Int): Long {
+    val doublings = (failures - 1).coerceIn(0, 20)
+    val delay = minOf(BACKOFF_BASE_MS shl doublings, BACKOFF_MAX_MS)
+    return delay / 2 + Random.nextLong(delay / 2 + 1)
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import android.database.SQLException;
+import android.util.SparseIntArray;
+
+import androidx.annotation.NonNull;
+
+/**
+ * An in-memory index of the sites that have at least one stored observation
+ * <p>
+ * The index is loaded from the database with one query the first time it is used. After that,
+ * {@link ObservationDatabase} updates it whenever it inserts or deletes an observation, so
+ * checking whether a site has been visited never touches the database.
+ */
+public final class VisitedSiteIndex {
+
+    /**
+     * Map from site ID to the number of stored observations of that site
+     * <p>
+     * Sites with no observations are not in the map.
+     */
+    @NonNull
+    private final SparseIntArray mObservationCounts;
+
+    /**
+     * If the counts have been loaded from the database
+     */
+    private boolean mLoaded;
+
+    VisitedSiteIndex() {
+        mObservationCounts = new SparseIntArray();
+        mLoaded = false;
+    }
+
+    /**
+     * Returns whether a site has one or more stored observations
+     *
+     * @param siteId the site ID
+     * @return true if at least one observation of the site is stored
+     */
+    public synchronized boolean isVisited(int siteId) {
+        return mObservationCounts.get(siteId) > 0;
+    }
+
+    /**
+     * Loads the observation counts from a database, if they have not already been loaded
+     *
+     * @param dao the observation DAO to read from
+     * @throws SQLException if an error occurs
+     */
+    synchronized void loadIfNeeded(@NonNull ObservationDao dao) throws SQLException {
+        if (mLoaded) {
+            return;
+        }
+        for (ObservationDao.SiteCount siteCount : dao.getSiteCounts()) {
+            mObservationCounts.put(siteCount.site, siteCount.count);
+        }
+        mLoaded = true;
+    }
+
+    /**
+     * Records that an observation of a site was inserted
+     *
+     * @param siteId the site ID
+     */
+    synchronized void observationInserted(int siteId) {
+        if (mLoaded) {
+            mObservationCounts.put(siteId, mObservationCounts.get(siteId) + 1);
+        }
+    }
+
+    /**
+     * Records that an observation of a site was deleted
+     *
+     * @param siteId the site ID
+     */
+    synchronized void observationDeleted(int siteId) {
+        if (mLoaded) {
+            final int remaining = mObservationCounts.get(siteId) - 1;
+            if (remaining > 0) {
+                mObservationCounts.put(siteId, remaining);
+            } else {
+                mObservationCounts.delete(siteId);
+            }
+        }
+    }
+}
@@ -28,6 +28,7 @@ import org.maplibre.android.geometry.LatLng
 import org.maplibre.android.style.expressions.Expression
 import org.maplibre.android.style.expressions.Expression.color
 import org.maplibre.android.style.expressions.Expression.eq
+import org.maplibre.android.style.expressions.Expression.geometryType
 import org.maplibre.android.style.expressions.Expression.get
 import org.maplibre.android.style.expressions.Expression.literal
 import org.maplibre.android.style.expressions.Expression.match
@@ -126,12 +127,7 @@ internal fun createRouteLayers(context: Context): List<Layer> {
 }
 
 private fun createSelectionLayer(resources: Resources): Layer {
-    return CircleLayer("route_selected_circle", RouteLayer.SOURCE_NAME).withFilter(
-        eq(
-            get("selected"),
-            true
-        )
-    ).withProperties(
+    return CircleLayer("route_selected_circle", RouteLayer.SELECTION_SOURCE_NAME).withProperties(
         circleRadius(resources.getDimension(R.dimen.map_site_selected_circle_diameter)),
         circleColor(resources.getColor(R.color.selected_circle, null))
     )
@@ -163,23 +159,23 @@ private fun createLineAndCircleLayers(context: Context): List<Layer> {
     )
     val circleRadius = context.resources.getDimension(R.dimen.map_site_circle_diameter)
 
-    val circlesNonVisited = CircleLayer("per_route_circles", RouteLayer.SOURCE_NAME).withFilter(
-        eq(
-            get("visited"),
-            false
-        )
+    // The source also contains the route lines, which would otherwise get a circle at each
+    // vertex
+    val circles = CircleLayer("per_route_circles", RouteLayer.SOURCE_NAME).withFilter(
+        eq(geometryType(), "Point")
     ).withProperties(
         circleRadius(circleRadius),
         circleColor(color)
     )
+    // Visited sites are drawn again over the route circles
     val circlesVisited = CircleLayer(
         "per_route_circles_visited",
-        RouteLayer.SOURCE_NAME
-    ).withFilter(eq(get("visited"), true)).withProperties(
+        RouteLayer.VISITED_SOURCE_NAME
+    ).withProperties(
         circleRadius(circleRadius),
         circleColor(context.resources.getColor(R.color.visited_site, null))
     )
-    return listOf(lines, circlesNonVisited, circlesVisited)
+    return listOf(lines, circles, circlesVisited)
 }
 
 private fun createRouteColor(context: Context): Expression {
@@ -18,12 +18,14 @@
 package org.samcrow.ridgesurvey.map;
 
 import android.util.Log;
+import android.util.SparseArray;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import org.maplibre.android.geometry.LatLng;
 import org.maplibre.android.style.sources.GeoJsonSource;
+import org.maplibre.android.style.sources.Source;
 import org.maplibre.geojson.Feature;
 import org.maplibre.geojson.FeatureCollection;
 import org.maplibre.geojson.LineString;
@@ -31,8 +33,11 @@ import org.maplibre.geojson.Point;
 import org.samcrow.ridgesurvey.Route;
 import org.samcrow.ridgesurvey.SelectionManager;
 import org.samcrow.ridgesurvey.Site;
-import org.samcrow.ridgesurvey.data.IdentifiedObservation;
+import org.samcrow.ridgesurvey.data.DatabaseExecutor;
+import org.samcrow.ridgesurvey.data.ObservationChange;
+import org.samcrow.ridgesurvey.data.ObservationChangeListener;
 import org.samcrow.ridgesurvey.data.ObservationDatabase;
+import org.samcrow.ridgesurvey.data.VisitedSiteIndex;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -41,26 +46,33 @@ import java.util.TreeMap;
 import java.util.Objects;
 
 /**
- * A dynamic data source for routes and sites
+ * Data sources for routes and sites
  * <p>
- * This manages a dynamic {@link org.maplibre.android.style.sources.GeoJsonSource} that contains
- * a feature collection with a point feature for each site and a line string for a route connecting
- * the sites on each route.
+ * The route source ({@link #SOURCE_NAME}) contains a point feature for each site and a line
+ * string for a route connecting the sites on each route. It is built once and does not change.
  * <p>
  * Each site point has these properties:
  * <ul>
  *     <li>name, string: The site name (usually a number)</li>
  *     <li>route, string: The name of the route that contains the site</li>
- *     <li>selected, boolean (optional): If the user has selected this site</li>
- *     <li>visited, boolean (optional): If the user has recently visited this site and recorded an
- *     observation</li>
  * </ul>
  * Each route has these properties:
  * <ul><li>route, string: The route name</li></ul>
+ * <p>
+ * The selection and visited states are in two small overlay sources with the same site point
+ * features: {@link #SELECTION_SOURCE_NAME} contains the selected site, if any, and
+ * {@link #VISITED_SOURCE_NAME} contains the sites that the user has recently visited and
+ * recorded an observation at. A change in selection only replaces the one feature in the
+ * selection source, and the route source is never sent to the renderer again.
+ * <p>
+ * To keep the visited sites up to date, register the layer with
+ * {@link ObservationDatabase#addChangeListener(ObservationChangeListener)}.
  */
-public class RouteLayer implements SelectionManager.SelectionListener {
+public class RouteLayer implements SelectionManager.SelectionListener, ObservationChangeListener {
     private static final String TAG = "RouteLayer";
-    public static final String SOURCE_NAME = "sites_routes_dynamic";
+    public static final String SOURCE_NAME = "sites_routes";
+    public static final String SELECTION_SOURCE_NAME = "selected_site";
+    public static final String VISITED_SOURCE_NAME = "visited_sites";
 
     /**
      * The observation database
@@ -75,10 +87,32 @@ public class RouteLayer implements SelectionManager.SelectionListener {
      */
     @NonNull
     private final Map<String, List<VisitedSite>> mRoutes;
+    /**
+     * The visited site index, or null if it has not been loaded yet
+     */
+    @Nullable
+    private VisitedSiteIndex mVisitedSites;
+
+    /**
+     * Map from site ID to the site, for every site on every route
+     */
+    @NonNull
+    private final SparseArray<VisitedSite> mSitesById;
     /** The current selected site */
     private @Nullable Site mSelectedSite;
 
+    /**
+     * The source of routes and sites, which does not change
+     */
     private final @NonNull GeoJsonSource mSource;
+    /**
+     * The source of the selected site
+     */
+    private final @NonNull GeoJsonSource mSelectionSource;
+    /**
+     * The source of the visited sites
+     */
+    private final @NonNull GeoJsonSource mVisitedSource;
 
     /**
      * Creates a new route layer
@@ -95,43 +129,114 @@ public class RouteLayer implements SelectionManager.SelectionListener {
 
         // Copy sites in, initially not visited
         mRoutes = new TreeMap<>();
+        mSitesById = new SparseArray<>();
         for (Route route : routes) {
             final List<VisitedSite> sites = new ArrayList<>(route.getSites().size());
             for (Site site : route.getSites()) {
-                sites.add(new VisitedSite(site, false));
+                final VisitedSite visitedSite = new VisitedSite(site, route.getName());
+                sites.add(visitedSite);
+                mSitesById.put(site.getId(), visitedSite);
             }
             mRoutes.put(route.getName(), sites);
         }
         mSelectedSite = null;
         mSource = new GeoJsonSource(SOURCE_NAME);
+        mSource.setGeoJson(makeFeatures(mRoutes));
+        mSelectionSource = new GeoJsonSource(SELECTION_SOURCE_NAME);
+        mSelectionSource.setGeoJson(FeatureCollection.fromFeatures(new Feature[0]));
+        mVisitedSource = new GeoJsonSource(VISITED_SOURCE_NAME);
+        mVisitedSource.setGeoJson(FeatureCollection.fromFeatures(new Feature[0]));
         updateVisitedSites();
     }
 
     /**
-     * Updates the visited state of each site from the database
+     * Updates the visited state of each site from the database's visited site index
+     * <p>
+     * The index is loaded once in the background and then kept up to date as observations are
+     * saved, so this does not query the database after the first call.
      */
     public void updateVisitedSites() {
         Log.d(TAG, "updateVisitedSites()");
-        for (List<VisitedSite> sites : mRoutes.values()) {
-            for (VisitedSite site : sites) {
-                final IdentifiedObservation observation = mDatabase.getObservationForSite(site.getSite().getId());
-                site.setVisited(observation != null);
-                if (observation != null) {
-                    Log.d(TAG, "Site " + site.mSite.getId() + " visited");
-                }
+        DatabaseExecutor.submit(mDatabase::getVisitedSites,
+                new DatabaseExecutor.Callback<VisitedSiteIndex>() {
+                    @Override
+                    public void onSuccess(VisitedSiteIndex visitedSites) {
+                        mVisitedSites = visitedSites;
+                        applyVisitedSites(visitedSites);
+                    }
+                });
+    }
+
+    private void applyVisitedSites(@NonNull VisitedSiteIndex visitedSites) {
+        for (int i = 0; i < mSitesById.size(); i++) {
+            final VisitedSite site = mSitesById.valueAt(i);
+            site.setVisited(visitedSites.isVisited(site.getSite().getId()));
+        }
+        updateVisitedSource();
+    }
+
+    /**
+     * Updates the visited state of the one site that an observation change affects
+     * <p>
+     * The visited source is only updated if the visited state of the site changed.
+     */
+    @Override
+    public void onObservationChanged(@NonNull ObservationChange change) {
+        final ObservationChange.Type type = change.getType();
+        if (type != ObservationChange.Type.INSERTED && type != ObservationChange.Type.DELETED) {
+            // Edits and uploads do not change the site
+            return;
+        }
+        final int siteId = change.getObservation().getSiteId();
+        final VisitedSite site = mSitesById.get(siteId);
+        if (site == null || mVisitedSites == null) {
+            // If the index is still loading, it will include this change
+            return;
+        }
+        final boolean visited = mVisitedSites.isVisited(siteId);
+        if (visited != site.isVisited()) {
+            site.setVisited(visited);
+            updateVisitedSource();
+        }
+    }
+
+    /**
+     * Replaces the features in the visited source with the sites that are currently visited
+     */
+    private void updateVisitedSource() {
+        final List<Feature> visited = new ArrayList<>();
+        for (int i = 0; i < mSitesById.size(); i++) {
+            final VisitedSite site = mSitesById.valueAt(i);
+            if (site.isVisited()) {
+                visited.add(site.getFeature());
             }
         }
-        mSource.setGeoJson(makeFeatures(mRoutes, mSelectedSite));
+        mVisitedSource.setGeoJson(FeatureCollection.fromFeatures(visited));
     }
 
-    public GeoJsonSource getSource() {
-        return mSource;
+    /**
+     * Returns the sources to add to the map style
+     *
+     * @return the route source, the selection source, and the visited source
+     */
+    @NonNull
+    public Source[] getSources() {
+        return new Source[] { mSource, mSelectionSource, mVisitedSource };
     }
 
     @Override
     public void selectionChanged(@Nullable Site newSelection, @Nullable Route siteRoute) {
+        if (Objects.equals(newSelection, mSelectedSite)) {
+            return;
+        }
         mSelectedSite = newSelection;
-        mSource.setGeoJson(makeFeatures(mRoutes, mSelectedSite));
+        if (newSelection == null) {
+            mSelectionSource.setGeoJson(FeatureCollection.fromFeatures(new Feature[0]));
+        } else {
+            final VisitedSite site = mSitesById.get(newSelection.getId());
+            final Feature feature = site != null ? site.getFeature() : newSelection.asGeoJson();
+            mSelectionSource.setGeoJson(feature);
+        }
     }
 
     /**
@@ -144,20 +249,27 @@ public class RouteLayer implements SelectionManager.SelectionListener {
         @NonNull
         private final Site mSite;
 
+        /**
+         * The point feature for the site, which is shared by all sources
+         */
+        @NonNull
+        private final Feature mFeature;
+
         /**
          * If the site has been visited
          */
         private boolean mVisited;
 
         /**
-         * Creates a VisitedSite
+         * Creates a VisitedSite that has not been visited
          *
-         * @param site    the site
-         * @param visited if the site is visited
+         * @param site      the site
+         * @param routeName the name of the route that contains the site
          */
-        VisitedSite(@NonNull Site site, boolean visited) {
+        VisitedSite(@NonNull Site site, @NonNull String routeName) {
             mSite = site;
-            mVisited = visited;
+            mFeature = site.asGeoJson();
+            mFeature.addStringProperty("route", routeName);
         }
 
         /**
@@ -170,6 +282,16 @@ public class RouteLayer implements SelectionManager.SelectionListener {
             return mSite;
         }
 
+        /**
+         * Returns the point feature for the site
+         *
+         * @return the feature
+         */
+        @NonNull
+        Feature getFeature() {
+            return mFeature;
+        }
+
         /**
          * Returns whether the site has been visited
          *
@@ -189,23 +311,17 @@ public class RouteLayer implements SelectionManager.SelectionListener {
         }
     }
 
-    private static @NonNull FeatureCollection makeFeatures(@NonNull Map<String, List<VisitedSite>> routes, @Nullable Site selectedSite) {
-        final List<Feature> geometry = makeRoutePoints(routes, selectedSite);
+    private static @NonNull FeatureCollection makeFeatures(@NonNull Map<String, List<VisitedSite>> routes) {
+        final List<Feature> geometry = makeRoutePoints(routes);
         geometry.addAll(makeRouteLines(routes));
         return FeatureCollection.fromFeatures(geometry);
     }
 
-    private static @NonNull List<Feature> makeRoutePoints(@NonNull Map<String, List<VisitedSite>> routes, @Nullable Site selectedSite) {
+    private static @NonNull List<Feature> makeRoutePoints(@NonNull Map<String, List<VisitedSite>> routes) {
         final List<Feature> points = new ArrayList<>();
-        for (Map.Entry<String, List<VisitedSite>> entry : routes.entrySet()) {
-            final String routeName = entry.getKey();
-            for (VisitedSite site : entry.getValue()) {
-                final Feature siteFeature = site.getSite().asGeoJson();
-                siteFeature.addStringProperty("route", routeName);
-                siteFeature.addBooleanProperty("visited", site.isVisited());
-                siteFeature.addBooleanProperty("selected",
-                        selectedSite != null && selectedSite.getId() == site.getSite().getId());
-                points.add(siteFeature);
+        for (List<VisitedSite> sites : routes.values()) {
+            for (VisitedSite site : sites) {
+                points.add(site.getFeature());
             }
         }
         return points;
@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.maplibre.android.geometry.LatLng;
+import org.maplibre.android.geometry.LatLngBounds;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * An index of items at points on the map, for finding the items near a location
+ * <p>
+ * The points are projected onto a plane in meters, centered on the middle of the points, and
+ * stored in a uniform grid of square cells. A query only checks the cells that overlap its
+ * area, so the time it takes depends on the number of items near the query location and not
+ * on the total number of items. Queries do not allocate memory.
+ * <p>
+ * Over an area the size of the preserve, distances in the projection differ from great-circle
+ * distances by much less than a meter.
+ * <p>
+ * An index cannot be changed after it is created, so it can be used from any thread.
+ *
+ * @param <T> the type of the items
+ */
+public final class SpatialIndex<T> {
+    /**
+     * The radius of the earth, the same as in {@link LatLng#distanceTo(LatLng)}
+     */
+    private static final double EARTH_RADIUS_M = 6378137.0;
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS_M * Math.PI / 180.0;
+    /**
+     * The maximum number of grid cells for each item. If the requested cell size would create
+     * more cells than this, larger cells are used.
+     */
+    private static final int MAX_CELLS_PER_ITEM = 4;
+
+    /**
+     * Receives items found by a distance query
+     *
+     * @param <T> the type of the items
+     */
+    public interface Visitor<T> {
+        /**
+         * Called for each item found
+         *
+         * @param item      the item
+         * @param distanceM the distance from the query location to the item, in meters
+         */
+        void visit(@NonNull T item, double distanceM);
+    }
+
+    /**
+     * The items, sorted by cell
+     */
+    @NonNull
+    private final Object[] mItems;
+    /**
+     * The projected position of each item in mItems, meters east of the center
+     */
+    @NonNull
+    private final double[] mX;
+    /**
+     * The projected position of each item in mItems, meters north of the center
+     */
+    @NonNull
+    private final double[] mY;
+    /**
+     * For each cell, the index in mItems of its first item. The last element is the number of
+     * items, so the items in cell i are at indices mCellStart[i] until mCellStart[i + 1].
+     * Cells are in row-major order, starting at the south-west corner.
+     */
+    @NonNull
+    private final int[] mCellStart;
+
+    private final double mCenterLatitude;
+    private final double mCenterLongitude;
+    /**
+     * The length of one degree of longitude at the center latitude, meters
+     */
+    private final double mMetersPerDegreeLongitude;
+
+    /**
+     * The projected coordinates of the south-west corner of the grid
+     */
+    private final double mMinX;
+    private final double mMinY;
+    /**
+     * The width and height of each cell, meters
+     */
+    private final double mCellSize;
+    private final int mColumns;
+    private final int mRows;
+
+    /**
+     * Creates an index
+     *
+     * @param items      the items to index
+     * @param position   a function that returns the position of an item
+     * @param cellSizeM  the preferred cell size in meters. Queries are fastest when this is
+     *                   close to the typical query radius.
+     */
+    public SpatialIndex(@NonNull Collection<? extends T> items,
+                        @NonNull Function<? super T, LatLng> position, double cellSizeM) {
+        if (!(cellSizeM > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive");
+        }
+        final int count = items.size();
+        final Object[] inputItems = items.toArray();
+        final double[] latitudes = new double[count];
+        final double[] longitudes = new double[count];
+        double minLatitude = Double.POSITIVE_INFINITY;
+        double maxLatitude = Double.NEGATIVE_INFINITY;
+        double minLongitude = Double.POSITIVE_INFINITY;
+        double maxLongitude = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            @SuppressWarnings("unchecked")
+            final LatLng point = position.apply((T) inputItems[i]);
+            latitudes[i] = point.getLatitude();
+            longitudes[i] = point.getLongitude();
+            minLatitude = Math.min(minLatitude, latitudes[i]);
+            maxLatitude = Math.max(maxLatitude, latitudes[i]);
+            minLongitude = Math.min(minLongitude, longitudes[i]);
+            maxLongitude = Math.max(maxLongitude, longitudes[i]);
+        }
+        if (count == 0) {
+            minLatitude = maxLatitude = minLongitude = maxLongitude = 0;
+        }
+        mCenterLatitude = (minLatitude + maxLatitude) / 2;
+        mCenterLongitude = (minLongitude + maxLongitude) / 2;
+        mMetersPerDegreeLongitude = METERS_PER_DEGREE * Math.cos(Math.toRadians(mCenterLatitude));
+
+        final double[] x = new double[count];
+        final double[] y = new double[count];
+        for (int i = 0; i < count; i++) {
+            x[i] = projectX(longitudes[i]);
+            y[i] = projectY(latitudes[i]);
+        }
+        mMinX = projectX(minLongitude);
+        mMinY = projectY(minLatitude);
+        final double width = projectX(maxLongitude) - mMinX;
+        final double height = projectY(maxLatitude) - mMinY;
+
+        // Use larger cells if the points are spread out, to limit the memory used
+        double cellSize = cellSizeM;
+        while ((Math.floor(width / cellSize) + 1) * (Math.floor(height / cellSize) + 1)
+                > (double) MAX_CELLS_PER_ITEM * count + 1) {
+            cellSize *= 2;
+        }
+        mCellSize = cellSize;
+        mColumns = (int) Math.floor(width / cellSize) + 1;
+        mRows = (int) Math.floor(height / cellSize) + 1;
+
+        // Sort the items by cell with a counting sort, which keeps items in the same cell in
+        // their original order
+        final int[] cells = new int[count];
+        mCellStart = new int[mColumns * mRows + 1];
+        for (int i = 0; i < count; i++) {
+            cells[i] = row(y[i]) * mColumns + column(x[i]);
+            mCellStart[cells[i] + 1]++;
+        }
+        for (int cell = 0; cell < mColumns * mRows; cell++) {
+            mCellStart[cell + 1] += mCellStart[cell];
+        }
+        final int[] next = mCellStart.clone();
+        mItems = new Object[count];
+        mX = new double[count];
+        mY = new double[count];
+        for (int i = 0; i < count; i++) {
+            final int sorted = next[cells[i]]++;
+            mItems[sorted] = inputItems[i];
+            mX[sorted] = x[i];
+            mY[sorted] = y[i];
+        }
+    }
+
+    /**
+     * @return the number of items in this index
+     */
+    public int size() {
+        return mItems.length;
+    }
+
+    /**
+     * Finds the item closest to a location
+     *
+     * @param location     the location
+     * @param maxDistanceM the maximum distance from the location to the item, in meters
+     * @return the closest item that is no more than maxDistanceM from the location, or null if
+     * no item is that close
+     */
+    @Nullable
+    public T nearest(@NonNull LatLng location, double maxDistanceM) {
+        final double x = projectX(location.getLongitude());
+        final double y = projectY(location.getLatitude());
+        final int minColumn = column(x - maxDistanceM);
+        final int maxColumn = column(x + maxDistanceM);
+        final int minRow = row(y - maxDistanceM);
+        final int maxRow = row(y + maxDistanceM);
+        int best = -1;
+        double bestDistanceSquared = maxDistanceM * maxDistanceM;
+        for (int row = minRow; row <= maxRow; row++) {
+            final int end = mCellStart[row * mColumns + maxColumn + 1];
+            for (int i = mCellStart[row * mColumns + minColumn]; i < end; i++) {
+                final double dx = mX[i] - x;
+                final double dy = mY[i] - y;
+                final double distanceSquared = dx * dx + dy * dy;
+                if (distanceSquared < bestDistanceSquared
+                        || (best == -1 && distanceSquared == bestDistanceSquared)) {
+                    best = i;
+                    bestDistanceSquared = distanceSquared;
+                }
+            }
+        }
+        return best != -1 ? item(best) : null;
+    }
+
+    /**
+     * Calls a visitor for each item within a distance of a location, in no particular order
+     *
+     * @param location the location
+     * @param radiusM  the maximum distance from the location, in meters
+     * @param visitor  the visitor to call
+     */
+    public void forEachWithin(@NonNull LatLng location, double radiusM,
+                              @NonNull Visitor<? super T> visitor) {
+        final double x = projectX(location.getLongitude());
+        final double y = projectY(location.getLatitude());
+        final int minColumn = column(x - radiusM);
+        final int maxColumn = column(x + radiusM);
+        final int minRow = row(y - radiusM);
+        final int maxRow = row(y + radiusM);
+        final double radiusSquared = radiusM * radiusM;
+        for (int row = minRow; row <= maxRow; row++) {
+            final int end = mCellStart[row * mColumns + maxColumn + 1];
+            for (int i = mCellStart[row * mColumns + minColumn]; i < end; i++) {
+                final double dx = mX[i] - x;
+                final double dy = mY[i] - y;
+                final double distanceSquared = dx * dx + dy * dy;
+                if (distanceSquared <= radiusSquared) {
+                    visitor.visit(item(i), Math.sqrt(distanceSquared));
+                }
+            }
+        }
+    }
+
+    /**
+     * Calls an action for each item inside an area, in no particular order
+     *
+     * @param bounds the area, which must not cross the antimeridian
+     * @param action the action to call
+     */
+    public void forEachInBounds(@NonNull LatLngBounds bounds, @NonNull Consumer<? super T> action) {
+        final double minX = projectX(bounds.getLonWest());
+        final double maxX = projectX(bounds.getLonEast());
+        final double minY = projectY(bounds.getLatSouth());
+        final double maxY = projectY(bounds.getLatNorth());
+        final int minColumn = column(minX);
+        final int maxColumn = column(maxX);
+        final int maxRow = row(maxY);
+        for (int row = row(minY); row <= maxRow; row++) {
+            final int end = mCellStart[row * mColumns + maxColumn + 1];
+            for (int i = mCellStart[row * mColumns + minColumn]; i < end; i++) {
+                if (mX[i] >= minX && mX[i] <= maxX && mY[i] >= minY && mY[i] <= maxY) {
+                    action.accept(item(i));
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @NonNull
+    private T item(int index) {
+        return (T) mItems[index];
+    }
+
+    private double projectX(double longitude) {
+        return (longitude - mCenterLongitude) * mMetersPerDegreeLongitude;
+    }
+
+    private double projectY(double latitude) {
+        return (latitude - mCenterLatitude) * METERS_PER_DEGREE;
+    }
+
+    /**
+     * Returns the grid column that contains a projected x coordinate, clamped to the grid
+     */
+    private int column(double x) {
+        final double column = Math.floor((x - mMinX) / mCellSize);
+        return (int) Math.max(0, Math.min(mColumns - 1, column));
+    }
+
+    /**
+     * Returns the grid row that contains a projected y coordinate, clamped to the grid
+     */
+    private int row(double y) {
+        final double row = Math.floor((y - mMinY) / mCellSize);
+        return (int) Math.max(0, Math.min(mRows - 1, row));
+    }
+}
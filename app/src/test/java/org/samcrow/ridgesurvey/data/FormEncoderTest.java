@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import org.junit.Test;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that {@link FormEncoder} produces the same bytes as encoding with
+ * {@link android.net.Uri#encode(String)}, which is simulated with URLEncoder
+ */
+public class FormEncoderTest {
+
+    @Test
+    public void observationRow() {
+        final Map<String, String> row = new LinkedHashMap<>();
+        row.put("Time", "2025-06-14T09:41:27.352-07:00");
+        row.put("Event", "Observation");
+        row.put("Test mode", "0");
+        row.put("ROUTE", "Route 7");
+        row.put("SURVEY LOCATION", "143");
+        row.put("Linepithema humile", "1");
+        row.put("NOTES", "Nest near trail & rock, ~2 m from marker (photo taken)!*'");
+        row.put("_key", "3f2a9c1e-7b4d-4e8f-a1c2-5d6e7f8a9b0c");
+        final FormEncoder encoder = new FormEncoder();
+        encoder.addAll(row);
+        assertEquals(expected(row), encoded(encoder));
+    }
+
+    @Test
+    public void nonAsciiCharacters() {
+        final FormEncoder encoder = new FormEncoder();
+        // Two-, three-, and four-byte UTF-8 sequences
+        final String text = "café 木 🐜";
+        encoder.add("k", text);
+        assertEquals("k=" + uriEncode(text), encoded(encoder));
+    }
+
+    @Test
+    public void unpairedSurrogates() {
+        final FormEncoder encoder = new FormEncoder();
+        final String text = "a\ud83d b\udc1c c\udc1c\ud83d";
+        encoder.add("k", text);
+        // Each unpaired surrogate is replaced, like in String.getBytes()
+        assertEquals("k=" + uriEncode(text), encoded(encoder));
+        assertEquals("k=a%3F%20b%3F%20c%3F%3F", encoded(encoder));
+    }
+
+    @Test
+    public void nullValue() {
+        final FormEncoder encoder = new FormEncoder();
+        encoder.add("a", null);
+        encoder.add("b", "");
+        assertEquals("a=&b=", encoded(encoder));
+    }
+
+    @Test
+    public void resetKeepsBuffer() {
+        final FormEncoder encoder = new FormEncoder();
+        final Map<String, String> row = new LinkedHashMap<>();
+        final StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            longValue.append("é&");
+        }
+        row.put("Notes é", longValue.toString());
+        row.put("Event", "Route start");
+        encoder.addAll(row);
+        final byte[] buffer = encoder.getBuffer();
+        final String first = encoded(encoder);
+        assertEquals(expected(row), first);
+
+        // The buffer has grown to fit the row, and cached keys are encoded the same way
+        encoder.reset();
+        assertEquals(0, encoder.getLength());
+        encoder.addAll(row);
+        assertSame(buffer, encoder.getBuffer());
+        assertEquals(first, encoded(encoder));
+    }
+
+    @Test
+    public void randomText() {
+        final Random random = new Random(7);
+        final FormEncoder encoder = new FormEncoder();
+        for (int trial = 0; trial < 1000; trial++) {
+            final Map<String, String> row = new LinkedHashMap<>();
+            final int fields = 1 + random.nextInt(5);
+            for (int i = 0; i < fields; i++) {
+                row.put(randomText(random, 1 + random.nextInt(8)),
+                        randomText(random, random.nextInt(40)));
+            }
+            encoder.reset();
+            encoder.addAll(row);
+            assertEquals(expected(row), encoded(encoder));
+        }
+    }
+
+    @Test
+    public void jsonBatch() {
+        final JsonBatchEncoder encoder = new JsonBatchEncoder();
+        encoder.finish();
+        assertEquals("{\"rows\":[]}", encoded(encoder));
+
+        encoder.reset();
+        encoder.startRow();
+        encoder.add("Event", "Route start");
+        encoder.add("Tablet ID", null);
+        encoder.add("NOTES", "\"quoted\" \\ line\nbreak\u0001 café 🐜 \ud83d");
+        encoder.endRow();
+        encoder.startRow();
+        encoder.add("Tablet ID", null);
+        encoder.endRow();
+        encoder.startRow();
+        encoder.add("Event", "Observation");
+        encoder.endRow();
+        encoder.finish();
+        assertEquals("{\"rows\":[{\"Event\":\"Route start\",\"NOTES\":\"\\\"quoted\\\" \\\\ "
+                        + "line\\nbreak\\u0001 café 🐜 ?\"},{},"
+                        + "{\"Event\":\"Observation\"}]}",
+                new String(encoder.getBuffer(), 0, encoder.getLength(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns text with ASCII, other BMP, and supplementary characters, and occasionally an
+     * unpaired surrogate
+     */
+    private static String randomText(Random random, int length) {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            final int kind = random.nextInt(10);
+            if (kind < 6) {
+                text.append((char) (0x20 + random.nextInt(0x5F)));
+            } else if (kind < 8) {
+                text.append((char) (0x80 + random.nextInt(0xD800 - 0x80)));
+            } else if (kind < 9) {
+                text.appendCodePoint(0x10000 + random.nextInt(0x10FFFF - 0x10000));
+            } else {
+                text.append((char) (0xD800 + random.nextInt(0x800)));
+            }
+        }
+        return text.toString();
+    }
+
+    private static String expected(Map<String, String> row) {
+        final StringBuilder expected = new StringBuilder();
+        for (Map.Entry<String, String> entry : row.entrySet()) {
+            if (expected.length() != 0) {
+                expected.append('&');
+            }
+            expected.append(uriEncode(entry.getKey())).append('=')
+                    .append(uriEncode(entry.getValue()));
+        }
+        return expected.toString();
+    }
+
+    private static String encoded(RowEncoder encoder) {
+        return new String(encoder.getBuffer(), 0, encoder.getLength(), StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Encodes like android.net.Uri.encode, which leaves !'()*-._~ and alphanumerics unencoded
+     */
+    private static String uriEncode(String text) {
+        return URLEncoder.encode(text, StandardCharsets.UTF_8)
+                .replace("+", "%20")
+                .replace("%21", "!")
+                .replace("%27", "'")
+                .replace("%28", "(")
+                .replace("%29", ")")
+                .replace("%7E", "~");
+    }
+}
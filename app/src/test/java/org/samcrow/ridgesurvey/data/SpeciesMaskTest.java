@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+/**
+ * Checks that {@link SpeciesMask} keeps every species value through the conversions that
+ * storing an observation uses
+ */
+public class SpeciesMaskTest {
+
+    @Test
+    public void emptyMap() {
+        final SpeciesMask mask = SpeciesMask.fromMap(new HashMap<>());
+        assertEquals(SpeciesMask.EMPTY, mask);
+        assertEquals(0, mask.getPresent());
+        assertEquals(0, mask.getKnown());
+        assertNull(mask.getExtra());
+        assertEquals(new HashMap<String, Boolean>(), mask.toMap());
+    }
+
+    @Test
+    public void everyCatalogSpecies() {
+        final int size = SpeciesCatalog.size(SpeciesCatalog.CURRENT_VERSION);
+        for (int i = 0; i < size; i++) {
+            final String column = SpeciesCatalog.columnAt(i);
+            assertEquals(i, SpeciesCatalog.indexOf(column));
+            for (boolean present : new boolean[]{false, true}) {
+                final Map<String, Boolean> species = new HashMap<>();
+                species.put(column, present);
+                final SpeciesMask mask = SpeciesMask.fromMap(species);
+                assertEquals(1L << i, mask.getKnown());
+                assertEquals(present ? 1L << i : 0, mask.getPresent());
+                assertNull(mask.getExtra());
+                assertEquals(present, mask.get(column));
+                assertEquals(species, mask.toMap());
+                assertEquals(mask, storeAndLoad(mask));
+            }
+        }
+    }
+
+    @Test
+    public void randomSpecies() {
+        final Random random = new Random(42);
+        final int size = SpeciesCatalog.size(SpeciesCatalog.CURRENT_VERSION);
+        for (int trial = 0; trial < 1000; trial++) {
+            final Map<String, Boolean> species = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                // Each species is absent, not present, or present
+                final int value = random.nextInt(3);
+                if (value != 0) {
+                    species.put(SpeciesCatalog.columnAt(i), value == 2);
+                }
+            }
+            // Species from a different species list
+            final int extraCount = random.nextInt(3);
+            for (int i = 0; i < extraCount; i++) {
+                species.put("Other species " + random.nextInt(10), random.nextBoolean());
+            }
+
+            final SpeciesMask mask = SpeciesMask.fromMap(species);
+            assertEquals(species, mask.toMap());
+            for (int i = 0; i < size; i++) {
+                final String column = SpeciesCatalog.columnAt(i);
+                assertEquals(species.get(column), mask.get(column));
+            }
+            for (Map.Entry<String, Boolean> entry : species.entrySet()) {
+                assertEquals(entry.getValue(), mask.get(entry.getKey()));
+            }
+            final SpeciesMask loaded = storeAndLoad(mask);
+            assertEquals(mask, loaded);
+            assertEquals(mask.hashCode(), loaded.hashCode());
+            assertEquals(species, loaded.toMap());
+        }
+    }
+
+    @Test
+    public void extraSpecies() {
+        final Map<String, Boolean> species = new HashMap<>();
+        species.put("Other species", true);
+        species.put(SpeciesCatalog.columnAt(0), false);
+        final SpeciesMask mask = SpeciesMask.fromMap(species);
+        assertEquals(1, mask.getKnown());
+        assertEquals(0, mask.getPresent());
+        final Map<String, Boolean> extra = mask.getExtra();
+        assertEquals(1, extra.size());
+        assertEquals(Boolean.TRUE, extra.get("Other species"));
+        assertNull(mask.get("Unrecorded species"));
+        assertThrows(UnsupportedOperationException.class, () -> extra.put("Another", true));
+    }
+
+    @Test
+    public void presentMustBeKnown() {
+        assertThrows(IllegalArgumentException.class, () -> new SpeciesMask(0b11, 0b01, null));
+    }
+
+    /**
+     * Copies a mask through its stored fields, like ObservationDatabase
+     */
+    private static SpeciesMask storeAndLoad(SpeciesMask mask) {
+        final Map<String, Boolean> extra = mask.getExtra();
+        return new SpeciesMask(mask.getPresent(), mask.getKnown(),
+                extra != null ? new HashMap<>(extra) : null);
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.map;
+
+import org.junit.Test;
+import org.maplibre.android.geometry.LatLng;
+import org.maplibre.android.geometry.LatLngBounds;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares {@link SpatialIndex} queries with a linear scan of all points
+ * <p>
+ * The index measures distances in a flat projection, and the scan uses great-circle distances.
+ * Points whose distance from a query location is within {@link #tolerance(double)} of the query
+ * radius may be found by one and not the other, so they are not checked.
+ */
+public class SpatialIndexTest {
+    /**
+     * The radius of the earth used by the index
+     */
+    private static final double EARTH_RADIUS_M = 6378137.0;
+    /**
+     * A point near the middle of the preserve
+     */
+    private static final LatLng CENTER = new LatLng(37.4055, -122.2385);
+    private static final double CELL_SIZE_M = 20;
+
+    @Test
+    public void emptyIndex() {
+        final SpatialIndex<LatLng> index = new SpatialIndex<>(Collections.<LatLng>emptyList(),
+                point -> point, CELL_SIZE_M);
+        assertEquals(0, index.size());
+        assertNull(index.nearest(CENTER, 1000));
+        index.forEachWithin(CENTER, 1000, (item, distance) -> {
+            throw new AssertionError("Found " + item);
+        });
+        index.forEachInBounds(LatLngBounds.from(38, -122, 37, -123), item -> {
+            throw new AssertionError("Found " + item);
+        });
+    }
+
+    @Test
+    public void identicalPoints() {
+        // All points are in one cell, and the grid has no width or height
+        final List<LatLng> points = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            points.add(new LatLng(CENTER.getLatitude(), CENTER.getLongitude()));
+        }
+        final SpatialIndex<LatLng> index = new SpatialIndex<>(points, point -> point, CELL_SIZE_M);
+        assertEquals(points.size(), index.size());
+        // The first of equally close points is returned
+        assertSame(points.get(0), index.nearest(offset(CENTER, 3, -4), 10));
+        assertNull(index.nearest(offset(CENTER, 30, 40), 49));
+        checkQueries(index, points, offset(CENTER, 30, 40), 51);
+        checkQueries(index, points, CENTER, 0);
+    }
+
+    @Test
+    public void randomPoints() {
+        final Random random = new Random(1234);
+        final List<LatLng> points = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            points.add(offset(CENTER, (random.nextDouble() - 0.5) * 2000,
+                    (random.nextDouble() - 0.5) * 2000));
+        }
+        final SpatialIndex<LatLng> index = new SpatialIndex<>(points, point -> point, CELL_SIZE_M);
+        assertEquals(points.size(), index.size());
+        for (int i = 0; i < 500; i++) {
+            // Some queries are outside the points, where the grid is clamped
+            final LatLng location = offset(CENTER, (random.nextDouble() - 0.5) * 2400,
+                    (random.nextDouble() - 0.5) * 2400);
+            checkQueries(index, points, location, random.nextDouble() * 100);
+        }
+    }
+
+    @Test
+    public void edgeCells() {
+        final Random random = new Random(5678);
+        final List<LatLng> points = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            points.add(offset(CENTER, (random.nextDouble() - 0.5) * 600,
+                    (random.nextDouble() - 0.5) * 600));
+        }
+        final SpatialIndex<LatLng> index = new SpatialIndex<>(points, point -> point, CELL_SIZE_M);
+        // Query at the points that define the edges of the grid, and just outside them
+        final LatLng[] extremes = {
+                Collections.min(points, (a, b) -> Double.compare(a.getLatitude(), b.getLatitude())),
+                Collections.max(points, (a, b) -> Double.compare(a.getLatitude(), b.getLatitude())),
+                Collections.min(points, (a, b) -> Double.compare(a.getLongitude(), b.getLongitude())),
+                Collections.max(points, (a, b) -> Double.compare(a.getLongitude(), b.getLongitude())),
+        };
+        for (LatLng extreme : extremes) {
+            assertSame(extreme, index.nearest(extreme, 0));
+            for (double radius : new double[]{0, 1, CELL_SIZE_M, 3 * CELL_SIZE_M}) {
+                checkQueries(index, points, extreme, radius);
+                checkQueries(index, points, offset(extreme, radius, radius), radius);
+                checkQueries(index, points, offset(extreme, -radius, -radius), radius);
+            }
+        }
+        // Far away from all points
+        assertNull(index.nearest(offset(CENTER, 5000, 5000), 100));
+        checkQueries(index, points, offset(CENTER, -5000, 0), 4800);
+    }
+
+    @Test
+    public void emptyCells() {
+        // Two clusters with empty cells between them
+        final Random random = new Random(91011);
+        final List<LatLng> points = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            points.add(offset(CENTER, random.nextDouble() * 50, random.nextDouble() * 50));
+            points.add(offset(CENTER, 1000 + random.nextDouble() * 50,
+                    1000 + random.nextDouble() * 50));
+        }
+        final SpatialIndex<LatLng> index = new SpatialIndex<>(points, point -> point, CELL_SIZE_M);
+        final LatLng middle = offset(CENTER, 525, 525);
+        assertNull(index.nearest(middle, 100));
+        index.forEachWithin(middle, 100, (item, distance) -> {
+            throw new AssertionError("Found " + item);
+        });
+        for (double radius : new double[]{100, 600, 800}) {
+            checkQueries(index, points, middle, radius);
+        }
+        checkQueries(index, points, offset(CENTER, 0, 1000), 200);
+    }
+
+    /**
+     * Checks nearest, forEachWithin, and forEachInBounds at a location against a linear scan
+     */
+    private static void checkQueries(SpatialIndex<LatLng> index, List<LatLng> points,
+                                     LatLng location, double radiusM) {
+        // nearest
+        double closest = Double.POSITIVE_INFINITY;
+        for (LatLng point : points) {
+            closest = Math.min(closest, distance(location, point));
+        }
+        final LatLng nearest = index.nearest(location, radiusM);
+        if (nearest != null) {
+            final double nearestDistance = distance(location, nearest);
+            assertTrue(nearestDistance <= radiusM + tolerance(radiusM));
+            assertEquals(closest, nearestDistance, 2 * tolerance(nearestDistance));
+        } else {
+            assertTrue("Missed a point " + closest + " m away",
+                    closest >= radiusM - tolerance(radiusM));
+        }
+
+        // forEachWithin
+        final Set<LatLng> found = identitySet();
+        index.forEachWithin(location, radiusM, (item, distanceM) -> {
+            assertTrue("Found " + item + " twice", found.add(item));
+            assertEquals(distance(location, item), distanceM, tolerance(distanceM));
+            assertTrue(distanceM <= radiusM);
+        });
+        for (LatLng point : points) {
+            if (distance(location, point) < radiusM - tolerance(radiusM)) {
+                assertTrue("Missed " + point, found.contains(point));
+            }
+        }
+
+        // forEachInBounds, with bounds that fit around the circle
+        final LatLng southWest = offset(location, -radiusM, -radiusM);
+        final LatLng northEast = offset(location, radiusM, radiusM);
+        final LatLngBounds bounds = LatLngBounds.from(northEast.getLatitude(),
+                northEast.getLongitude(), southWest.getLatitude(), southWest.getLongitude());
+        final Set<LatLng> inBounds = identitySet();
+        index.forEachInBounds(bounds, item -> assertTrue(inBounds.add(item)));
+        final Set<LatLng> expected = identitySet();
+        for (LatLng point : points) {
+            if (point.getLatitude() >= bounds.getLatSouth()
+                    && point.getLatitude() <= bounds.getLatNorth()
+                    && point.getLongitude() >= bounds.getLonWest()
+                    && point.getLongitude() <= bounds.getLonEast()) {
+                expected.add(point);
+            }
+        }
+        assertEquals(expected, inBounds);
+    }
+
+    /**
+     * Returns the largest allowed difference between a distance from the index and the
+     * great-circle distance, meters
+     */
+    private static double tolerance(double distanceM) {
+        return 0.01 + distanceM * 1e-3;
+    }
+
+    /**
+     * Returns an empty set that compares points by identity, because some test points are equal
+     */
+    private static Set<LatLng> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * Returns a point a distance north and east of another point
+     */
+    private static LatLng offset(LatLng point, double northM, double eastM) {
+        final double latitude = point.getLatitude() + Math.toDegrees(northM / EARTH_RADIUS_M);
+        final double longitude = point.getLongitude() + Math.toDegrees(eastM
+                / (EARTH_RADIUS_M * Math.cos(Math.toRadians(point.getLatitude()))));
+        return new LatLng(latitude, longitude);
+    }
+
+    /**
+     * Returns the great-circle distance between two points, in meters
+     */
+    private static double distance(LatLng a, LatLng b) {
+        final double lat1 = Math.toRadians(a.getLatitude());
+        final double lat2 = Math.toRadians(b.getLatitude());
+        final double sinLat = Math.sin((lat2 - lat1) / 2);
+        final double sinLon = Math.sin(Math.toRadians(b.getLongitude() - a.getLongitude()) / 2);
+        final double h = sinLat * sinLat + Math.cos(lat1) * Math.cos(lat2) * sinLon * sinLon;
+        return 2 * EARTH_RADIUS_M * Math.asin(Math.min(1, Math.sqrt(h)));
+    }
+}
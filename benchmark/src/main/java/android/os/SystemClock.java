@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package android.os;
+
+/**
+ * Desktop stand-in for the Android clock, so that app classes that measure time can run in
+ * benchmarks
+ */
+public final class SystemClock {
+    private SystemClock() {
+    }
+
+    /**
+     * @return a monotonic time in milliseconds
+     */
+    public static long elapsedRealtime() {
+        return System.nanoTime() / 1_000_000;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Measures the time, output size, and memory allocated to form-encode one row
+ * <p>
+ * This compares {@link FormEncoder} with the previous encoding method, which wrote each
+ * key and value through a PrintStream into a new ByteArrayOutputStream. The old method used
+ * android.net.Uri.encode, which is not available on a desktop JVM, so URLEncoder is used
+ * instead. It allocates in a similar way.
+ * <p>
+ * Run with {@code ./gradlew :benchmark:formEncoderBenchmark}.
+ */
+public final class FormEncoderBenchmark {
+    private static final int WARMUP_ROWS = 200_000;
+    private static final int MEASURED_ROWS = 1_000_000;
+
+    private FormEncoderBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Map<String, String> row = makeObservationRow();
+        checkEncoding(row);
+
+        final FormEncoder encoder = new FormEncoder();
+        for (int i = 0; i < WARMUP_ROWS; i++) {
+            encodeOld(row);
+            encodeNew(encoder, row);
+        }
+
+        final Result oldResult = measure("PrintStream + URL encoding", () -> encodeOld(row));
+        final Result newResult = measure("FormEncoder", () -> encodeNew(encoder, row));
+        System.out.println(oldResult);
+        System.out.println(newResult);
+    }
+
+    /**
+     * Returns a row like one for an observation with typical species columns
+     */
+    private static Map<String, String> makeObservationRow() {
+        final Map<String, String> row = new LinkedHashMap<>();
+        row.put("Time", "2025-06-14T09:41:27.352-07:00");
+        row.put("Event", "Observation");
+        row.put("Test mode", "0");
+        row.put("Observed", "1");
+        row.put("ROUTE", "Route 7");
+        row.put("SURVEY LOCATION", "143");
+        for (int i = 0; i < 16; i++) {
+            row.put("Species " + (char) ('A' + i), i % 3 == 0 ? "1" : "0");
+        }
+        row.put("NOTES", "Nest near trail & rock, ~2 m from marker (photo taken)");
+        row.put("Tablet ID", "Tablet 3");
+        row.put("_key", UUID.randomUUID().toString());
+        return row;
+    }
+
+    /**
+     * Checks that FormEncoder produces the same bytes as Uri.encode, simulated with URLEncoder
+     */
+    private static void checkEncoding(Map<String, String> row) {
+        final StringBuilder expected = new StringBuilder();
+        for (Map.Entry<String, String> entry : row.entrySet()) {
+            if (expected.length() != 0) {
+                expected.append('&');
+            }
+            expected.append(uriEncode(entry.getKey())).append('=')
+                    .append(uriEncode(entry.getValue()));
+        }
+        final FormEncoder encoder = new FormEncoder();
+        encoder.addAll(row);
+        final String actual = new String(encoder.getBuffer(), 0, encoder.getLength(),
+                StandardCharsets.US_ASCII);
+        if (!actual.contentEquals(expected)) {
+            throw new AssertionError("Encoding differs:\n" + expected + "\n" + actual);
+        }
+        // Characters outside ASCII, including a surrogate pair
+        final String text = "caf\u00e9 \u6728 \ud83d\udc1c";
+        encoder.reset();
+        encoder.add("k", text);
+        final String encoded = new String(encoder.getBuffer(), 0, encoder.getLength(),
+                StandardCharsets.US_ASCII);
+        if (!encoded.equals("k=" + uriEncode(text))) {
+            throw new AssertionError("Encoding differs: " + encoded);
+        }
+    }
+
+    /**
+     * Encodes like android.net.Uri.encode, which leaves !'()*-._~ and alphanumerics unencoded
+     */
+    private static String uriEncode(String text) {
+        return URLEncoder.encode(text, StandardCharsets.UTF_8)
+                .replace("+", "%20")
+                .replace("%21", "!")
+                .replace("%27", "'")
+                .replace("%28", "(")
+                .replace("%29", ")")
+                .replace("%7E", "~");
+    }
+
+    private static int encodeOld(Map<String, String> row) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final PrintStream out = new PrintStream(bytes);
+        int i = 0;
+        for (Map.Entry<String, String> entry : row.entrySet()) {
+            out.print(URLEncoder.encode(entry.getKey(), StandardCharsets.UTF_8));
+            out.print("=");
+            out.print(URLEncoder.encode(entry.getValue(), StandardCharsets.UTF_8));
+            if (i < row.size() - 1) {
+                out.print("&");
+            }
+            i++;
+        }
+        out.flush();
+        return bytes.toByteArray().length;
+    }
+
+    private static int encodeNew(FormEncoder encoder, Map<String, String> row) {
+        encoder.reset();
+        encoder.addAll(row);
+        return encoder.getLength();
+    }
+
+    private static Result measure(String name, Encoding encoding) {
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final long[] nanos = new long[MEASURED_ROWS];
+        long bytes = 0;
+        final long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_ROWS; i++) {
+            final long start = System.nanoTime();
+            bytes += encoding.encode();
+            nanos[i] = System.nanoTime() - start;
+        }
+        final long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        Arrays.sort(nanos);
+        return new Result(name, bytes / MEASURED_ROWS, allocated / MEASURED_ROWS,
+                nanos[MEASURED_ROWS / 2], nanos[MEASURED_ROWS * 99 / 100]);
+    }
+
+    private interface Encoding {
+        int encode();
+    }
+
+    private static final class Result {
+        private final String mName;
+        private final long mBytesPerRow;
+        private final long mAllocatedPerRow;
+        private final long mMedianNanos;
+        private final long mP99Nanos;
+
+        Result(String name, long bytesPerRow, long allocatedPerRow, long medianNanos,
+               long p99Nanos) {
+            mName = name;
+            mBytesPerRow = bytesPerRow;
+            mAllocatedPerRow = allocatedPerRow;
+            mMedianNanos = medianNanos;
+            mP99Nanos = p99Nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-28s %5d bytes/row  %6d bytes allocated/row  p50 %6d ns  p99 %6d ns",
+                    mName, mBytesPerRow, mAllocatedPerRow, mMedianNanos, mP99Nanos);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.data;
+
+import org.samcrow.ridgesurvey.standin.Faults;
+import org.samcrow.ridgesurvey.standin.Options;
+import org.samcrow.ridgesurvey.standin.UploadStandInServer;
+
+import java.io.IOException;
+import java.net.URL;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Uploads a backlog of rows and reports throughput, request latency, and duplicates
+ * <p>
+ * The driver sends rows with the app's {@link UploadClient}, so requests are encoded, sent,
+ * redirected, and parsed by the same code as in the app. Like {@code UploadEngine}, it forks one
+ * client for each request in flight, and each row has an idempotency key. A batch whose request
+ * fails is sent again with the same keys after a short delay. Rows that the server rejects are
+ * sent again in a later batch, up to {@link #MAX_REJECTIONS} times. The upload engine
+ * itself needs an Android device, so the outbox and its retry schedule are not simulated.
+ * <p>
+ * By default the driver starts an {@link UploadStandInServer} in this process, with faults from
+ * the same options that the server accepts, and checks that every row was added exactly once.
+ * With {@code --url}, it uploads to another server instead.
+ * <p>
+ * Run with {@code ./gradlew :benchmark:uploadLoadTest}, with options in {@code --args}:
+ * <dl>
+ *     <dt>--rows</dt><dd>the number of rows in the backlog (10000)</dd>
+ *     <dt>--batch</dt><dd>the number of rows in each request (25)</dd>
+ *     <dt>--concurrency</dt><dd>the number of requests in flight (4)</dd>
+ *     <dt>--url</dt><dd>the server to upload to (an in-process stand-in server)</dd>
+ *     <dt>--gzip</dt><dd>if the stand-in server accepts gzip-compressed requests (false)</dd>
+ * </dl>
+ */
+public final class UploadLoadDriver {
+    /**
+     * The delay before a failed batch is sent again, multiplied by the number of attempts
+     */
+    private static final int RETRY_DELAY_MS = 50;
+    private static final int MAX_RETRY_DELAY_MS = 1_000;
+    /**
+     * The number of times a row can be rejected before it is given up on, the same as
+     * {@code Outbox.MAX_REJECTIONS}
+     */
+    private static final int MAX_REJECTIONS = 5;
+
+    /**
+     * Batches waiting to be sent
+     */
+    private final ConcurrentLinkedQueue<Batch> mQueue = new ConcurrentLinkedQueue<>();
+    /**
+     * The number of rows that have not been uploaded or given up on
+     */
+    private final AtomicInteger mRemainingRows = new AtomicInteger();
+
+    /**
+     * Request latencies in nanoseconds, guarded by itself
+     */
+    private final List<Long> mLatencies = new ArrayList<>();
+    private final AtomicInteger mRowsUploaded = new AtomicInteger();
+    private final AtomicInteger mRowsRejected = new AtomicInteger();
+    private final AtomicInteger mRowsGivenUp = new AtomicInteger();
+    private final AtomicInteger mServerErrors = new AtomicInteger();
+    private final AtomicInteger mMalformed = new AtomicInteger();
+    private final AtomicInteger mNetworkErrors = new AtomicInteger();
+
+    private UploadLoadDriver() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Options options = new Options(args);
+        final int rowCount = options.getInt("rows", 10_000);
+        final int batchSize = options.getInt("batch", 25);
+        final int concurrency = options.getInt("concurrency", 4);
+
+        UploadStandInServer server = null;
+        String url = options.getString("url", "");
+        if (url.isEmpty()) {
+            final Faults faults = Faults.fromOptions(options);
+            server = new UploadStandInServer(0, faults, options.getBoolean("gzip", false));
+            server.start();
+            url = server.getUrl();
+            System.out.println("Stand-in server: " + faults);
+        }
+        try {
+            new UploadLoadDriver().run(new URL(url), rowCount, batchSize, concurrency);
+            if (server != null) {
+                System.out.println("Server: " + server.describeStats());
+                final int lost = rowCount - server.getRowCount();
+                System.out.println("Rows lost: " + Math.max(lost, 0)
+                        + ", rows added more than once: " + Math.max(-lost, 0));
+            }
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    private void run(@NonNull URL url, int rowCount, int batchSize, int concurrency)
+            throws IOException, UploadException, InterruptedException {
+        final List<Row> backlog = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            backlog.add(new Row(i));
+        }
+        for (int start = 0; start < rowCount; start += batchSize) {
+            mQueue.add(new Batch(backlog.subList(start, Math.min(rowCount, start + batchSize))));
+        }
+        mRemainingRows.set(rowCount);
+        System.out.println("Uploading " + rowCount + " rows in " + mQueue.size()
+                + " batches of up to " + batchSize + ", " + concurrency + " in flight");
+
+        final long start = System.nanoTime();
+        // One client for each request in flight. Forking checks the server capabilities once.
+        final List<UploadClient> clients = new ArrayList<>(concurrency);
+        clients.add(new UploadClient(url));
+        while (clients.size() < concurrency) {
+            clients.add(clients.get(0).fork());
+        }
+        final List<Thread> workers = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            final UploadClient client = clients.get(i);
+            final Thread worker = new Thread(() -> work(client), "Upload worker " + i);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        final long[] latencies;
+        synchronized (mLatencies) {
+            latencies = mLatencies.stream().mapToLong(Long::longValue).toArray();
+        }
+        Arrays.sort(latencies);
+        final int failures = mServerErrors.get() + mMalformed.get() + mNetworkErrors.get();
+        System.out.printf("Elapsed %.2f s, %.0f rows/s%n", seconds, rowCount / seconds);
+        System.out.printf("%d upload calls, latency p50 %.1f ms, p99 %.1f ms%n", latencies.length,
+                percentile(latencies, 50) / 1e6, percentile(latencies, 99) / 1e6);
+        for (int i = 0; i < clients.size(); i++) {
+            System.out.println("Client " + i + ": " + clients.get(i).describeStats());
+        }
+        System.out.println(failures + " failed upload calls: " + mServerErrors.get()
+                + " server errors, " + mMalformed.get() + " malformed responses, "
+                + mNetworkErrors.get() + " network errors");
+        System.out.println(mRowsUploaded.get() + " rows uploaded, " + mRowsRejected.get()
+                + " row rejections, " + mRowsGivenUp.get() + " rows given up");
+    }
+
+    /**
+     * Sends batches with one client until all rows have been uploaded or given up on
+     */
+    private void work(@NonNull UploadClient client) {
+        while (mRemainingRows.get() > 0) {
+            final Batch batch = mQueue.poll();
+            if (batch == null) {
+                // Another worker may put a failed batch back in the queue
+                sleep(10);
+                continue;
+            }
+            if (!send(client, batch)) {
+                batch.mAttempts++;
+                sleep(Math.min(MAX_RETRY_DELAY_MS, RETRY_DELAY_MS * batch.mAttempts));
+                mQueue.add(batch);
+            }
+        }
+    }
+
+    /**
+     * Sends a batch and counts the results. Rejected rows and rows that were not sent are queued
+     * again in a new batch.
+     *
+     * @return true if the server returned results for the batch
+     */
+    private boolean send(@NonNull UploadClient client, @NonNull Batch batch) {
+        final long start = System.nanoTime();
+        final List<UploadClient.RowResult> results;
+        try {
+            results = client.upload(batch);
+        } catch (IOException e) {
+            mNetworkErrors.incrementAndGet();
+            return false;
+        } catch (ParseException e) {
+            mMalformed.incrementAndGet();
+            return false;
+        } catch (UploadException e) {
+            mServerErrors.incrementAndGet();
+            return false;
+        } finally {
+            recordLatency(System.nanoTime() - start);
+        }
+        final List<Row> rejected = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            final Row row = batch.mRows.get(i);
+            final UploadClient.RowResult.Kind kind = results.get(i).getKind();
+            if (kind == UploadClient.RowResult.Kind.ACCEPTED) {
+                mRowsUploaded.incrementAndGet();
+                mRemainingRows.decrementAndGet();
+            } else if (kind == UploadClient.RowResult.Kind.NOT_SENT) {
+                rejected.add(row);
+            } else {
+                mRowsRejected.incrementAndGet();
+                if (++row.mRejections >= MAX_REJECTIONS) {
+                    mRowsGivenUp.incrementAndGet();
+                    mRemainingRows.decrementAndGet();
+                } else {
+                    rejected.add(row);
+                }
+            }
+        }
+        if (!rejected.isEmpty()) {
+            mQueue.add(new Batch(rejected));
+        }
+        return true;
+    }
+
+    private void recordLatency(long nanos) {
+        synchronized (mLatencies) {
+            mLatencies.add(nanos);
+        }
+    }
+
+    private static double percentile(@NonNull long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * One row of the backlog, like an observation in the outbox
+     */
+    private static final class Row {
+        final int mIndex;
+        /**
+         * The idempotency key, which stays the same when the row is sent again
+         */
+        @NonNull
+        final String mKey = UUID.randomUUID().toString();
+        /**
+         * The number of times the server has rejected this row. Only the worker that is
+         * sending the row changes this.
+         */
+        int mRejections;
+
+        Row(int index) {
+            mIndex = index;
+        }
+
+        /**
+         * Writes the columns of an observation
+         */
+        void write(@NonNull RowEncoder encoder) {
+            encoder.add("Time", "2025-06-14T09:" + String.format("%02d:%02d",
+                    mIndex / 60 % 60, mIndex % 60) + ".000-07:00");
+            encoder.add("Event", "Observation");
+            encoder.add("Test mode", "1");
+            encoder.add("Observed", mIndex % 4 == 0 ? "0" : "1");
+            encoder.add("ROUTE", "Route " + (mIndex % 12 + 1));
+            encoder.add("SURVEY LOCATION", Integer.toString(mIndex % 300));
+            encoder.add("NOTES", "Load test row " + mIndex);
+            encoder.add("Tablet ID", "Load test");
+            encoder.add(UploadClient.IDEMPOTENCY_KEY, mKey);
+        }
+    }
+
+    /**
+     * Rows that are sent in one request
+     */
+    private static final class Batch implements UploadClient.RowSource {
+        @NonNull
+        final List<Row> mRows;
+        int mAttempts;
+
+        Batch(@NonNull List<Row> rows) {
+            mRows = rows;
+        }
+
+        @Override
+        public int size() {
+            return mRows.size();
+        }
+
+        @Override
+        public void writeRow(int index, @NonNull RowEncoder encoder) {
+            mRows.get(index).write(encoder);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.standin;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import androidx.annotation.NonNull;
+
+/**
+ * The faults that the stand-in server injects into POST requests
+ * <p>
+ * Each fault is chosen independently for each request with its rate as the probability.
+ */
+public final class Faults {
+    /**
+     * The time to wait before handling each POST request, milliseconds
+     */
+    final int mLatencyMs;
+    /**
+     * The maximum extra random time to wait, milliseconds
+     */
+    final int mJitterMs;
+    /**
+     * The fraction of requests that get a 500 response before any rows are added
+     */
+    final double mErrorRate;
+    /**
+     * The fraction of requests whose result is an HTML page instead of JSON, after the rows have
+     * been added. Apps Script returns an HTML page like this when a script times out.
+     */
+    final double mMalformedRate;
+    /**
+     * The fraction of requests whose connection is closed without a response, after the rows
+     * have been added
+     */
+    final double mDropRate;
+
+    Faults(int latencyMs, int jitterMs, double errorRate, double malformedRate, double dropRate) {
+        mLatencyMs = latencyMs;
+        mJitterMs = jitterMs;
+        mErrorRate = errorRate;
+        mMalformedRate = malformedRate;
+        mDropRate = dropRate;
+    }
+
+    /**
+     * Reads faults from the options --latency, --jitter, --error-rate, --malformed-rate and
+     * --drop-rate
+     */
+    @NonNull
+    public static Faults fromOptions(@NonNull Options options) {
+        return new Faults(options.getInt("latency", 0), options.getInt("jitter", 0),
+                options.getDouble("error-rate", 0), options.getDouble("malformed-rate", 0),
+                options.getDouble("drop-rate", 0));
+    }
+
+    /**
+     * Waits for the latency and a random part of the jitter
+     */
+    void delay() throws InterruptedException {
+        final int delay = mLatencyMs
+                + (mJitterMs > 0 ? ThreadLocalRandom.current().nextInt(mJitterMs + 1) : 0);
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+
+    /**
+     * Returns true with a probability
+     */
+    static boolean roll(double rate) {
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "latency " + mLatencyMs + " + " + mJitterMs + " ms, errors " + mErrorRate
+                + ", malformed " + mMalformedRate + ", drops " + mDropRate;
+    }
+}
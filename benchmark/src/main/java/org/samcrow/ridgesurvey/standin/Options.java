@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.standin;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Command-line options in the form --name=value
+ */
+public final class Options {
+    @NonNull
+    private final Map<String, String> mValues = new HashMap<>();
+
+    /**
+     * Parses options
+     *
+     * @param args the command-line arguments
+     * @throws IllegalArgumentException if an argument is not in the form --name=value
+     */
+    public Options(@NonNull String[] args) {
+        for (String arg : args) {
+            final int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals == -1) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            mValues.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+    }
+
+    @NonNull
+    public String getString(@NonNull String name, @NonNull String defaultValue) {
+        final String value = mValues.get(name);
+        return value != null ? value : defaultValue;
+    }
+
+    public int getInt(@NonNull String name, int defaultValue) {
+        final String value = mValues.get(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    public double getDouble(@NonNull String name, double defaultValue) {
+        final String value = mValues.get(name);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+
+    public boolean getBoolean(@NonNull String name, boolean defaultValue) {
+        final String value = mValues.get(name);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.standin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A local HTTP server that stands in for the spreadsheet upload script (google/insert.gs)
+ * <p>
+ * The server speaks the same protocol as the script:
+ * <ul>
+ *     <li>A GET request returns the capabilities, with "batch" set to true</li>
+ *     <li>A POST request with form data adds one row, and a POST request with a JSON "rows"
+ *     array adds a batch of rows with one result for each row</li>
+ *     <li>A row with an idempotency key ("_key") that was already added is not added again, and
+ *     its result has "duplicate" set to true</li>
+ *     <li>Like Apps Script, the response to a POST request is a 302 redirect to a URL that
+ *     returns the result once</li>
+ * </ul>
+ * Rows are counted instead of stored. Any value other than the key counts as a recognized
+ * column.
+ * <p>
+ * {@link Faults} can be injected into POST requests. Errors happen before rows are added.
+ * Malformed results and dropped connections happen after rows are added, so a client that
+ * retries will send duplicates.
+ * <p>
+ * To run the server on its own, use {@code ./gradlew :benchmark:uploadStandIn} with options in
+ * {@code --args}, for example {@code --args="--port=8080 --latency=500 --drop-rate=0.05"}.
+ */
+public final class UploadStandInServer {
+    private static final String SCRIPT_PATH = "/exec";
+    private static final String ECHO_PATH = "/echo";
+    private static final String KEY_PARAMETER = "_key";
+    private static final String ERROR_PAGE = "<!DOCTYPE html><html><head><title>Error</title>"
+            + "</head><body>Service unavailable. Please try again later.</body></html>";
+
+    @NonNull
+    private final HttpServer mServer;
+    @NonNull
+    private final ExecutorService mExecutor;
+    @NonNull
+    private final Faults mFaults;
+    /**
+     * If the server reports that it accepts gzip-compressed requests
+     */
+    private final boolean mGzip;
+
+    /**
+     * Held while adding rows, like the script lock in insert.gs
+     */
+    private final Object mSheetLock = new Object();
+    /**
+     * The idempotency keys of added rows, guarded by mSheetLock
+     */
+    private final Set<String> mKeys = new HashSet<>();
+    /**
+     * The number of rows added, guarded by mSheetLock
+     */
+    private int mRowCount;
+
+    /**
+     * Results that have not been fetched yet, by ID
+     */
+    private final Map<String, String> mResults = new ConcurrentHashMap<>();
+    private final AtomicLong mNextResultId = new AtomicLong();
+
+    private final AtomicInteger mPostCount = new AtomicInteger();
+    private final AtomicInteger mDuplicateCount = new AtomicInteger();
+    private final AtomicInteger mErrorCount = new AtomicInteger();
+    private final AtomicInteger mMalformedCount = new AtomicInteger();
+    private final AtomicInteger mDropCount = new AtomicInteger();
+
+    /**
+     * Creates a server. The server does not accept requests until it is started.
+     *
+     * @param port   the port to listen on, or 0 to choose a free port
+     * @param faults the faults to inject
+     * @param gzip   if the server should report that it accepts gzip-compressed requests
+     */
+    public UploadStandInServer(int port, @NonNull Faults faults, boolean gzip) throws IOException {
+        mFaults = faults;
+        mGzip = gzip;
+        // Without this, small responses can be delayed by about 40 ms, which hides the latency
+        // of the server itself
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        mServer = HttpServer.create(new InetSocketAddress(port), 0);
+        mServer.createContext(SCRIPT_PATH, this::handleScript);
+        mServer.createContext(ECHO_PATH, this::handleResult);
+        mExecutor = Executors.newCachedThreadPool();
+        mServer.setExecutor(mExecutor);
+    }
+
+    public void start() {
+        mServer.start();
+    }
+
+    public void stop() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * @return the URL to send requests to, on localhost
+     */
+    @NonNull
+    public String getUrl() {
+        return "http://localhost:" + mServer.getAddress().getPort() + SCRIPT_PATH;
+    }
+
+    /**
+     * @return the number of rows added
+     */
+    public int getRowCount() {
+        synchronized (mSheetLock) {
+            return mRowCount;
+        }
+    }
+
+    /**
+     * @return the number of rows that were not added because their keys were already added
+     */
+    public int getDuplicateCount() {
+        return mDuplicateCount.get();
+    }
+
+    @NonNull
+    public String describeStats() {
+        return mPostCount.get() + " POST requests, " + getRowCount() + " rows added, "
+                + mDuplicateCount.get() + " duplicates ignored, " + mErrorCount.get()
+                + " errors, " + mMalformedCount.get() + " malformed results, "
+                + mDropCount.get() + " dropped connections";
+    }
+
+    private void handleScript(@NonNull HttpExchange exchange) throws IOException {
+        try {
+            final String method = exchange.getRequestMethod();
+            if (method.equals("GET")) {
+                final JSONObject capabilities = new JSONObject();
+                capabilities.put("result", "success");
+                capabilities.put("batch", true);
+                capabilities.put("gzip", mGzip);
+                send(exchange, 200, "application/json", capabilities.toString());
+                return;
+            }
+            if (!method.equals("POST")) {
+                send(exchange, 405, "text/html", ERROR_PAGE);
+                return;
+            }
+            mPostCount.incrementAndGet();
+            mFaults.delay();
+            if (Faults.roll(mFaults.mErrorRate)) {
+                mErrorCount.incrementAndGet();
+                send(exchange, 500, "text/html", ERROR_PAGE);
+                return;
+            }
+
+            final String body = readBody(exchange);
+            final String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            // Match on the prefix, like doPost in insert.gs, because the type may have
+            // parameters
+            final JSONObject status = contentType != null
+                    && contentType.startsWith("application/json")
+                    ? insertBatch(body) : insertForm(body);
+
+            if (Faults.roll(mFaults.mDropRate)) {
+                mDropCount.incrementAndGet();
+                // Closing the exchange before sending headers closes the connection
+                exchange.close();
+                return;
+            }
+            final String result;
+            if (Faults.roll(mFaults.mMalformedRate)) {
+                mMalformedCount.incrementAndGet();
+                result = ERROR_PAGE;
+            } else {
+                result = status.toString();
+            }
+            final String id = Long.toString(mNextResultId.incrementAndGet());
+            mResults.put(id, result);
+            final String host = exchange.getRequestHeaders().getFirst("Host");
+            exchange.getResponseHeaders().set("Location",
+                    "http://" + host + ECHO_PATH + "?id=" + id);
+            exchange.sendResponseHeaders(302, -1);
+            exchange.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.close();
+        }
+    }
+
+    /**
+     * Returns a result that a POST request redirected to, and forgets it
+     */
+    private void handleResult(@NonNull HttpExchange exchange) throws IOException {
+        final String query = exchange.getRequestURI().getQuery();
+        final String id = query != null && query.startsWith("id=") ? query.substring(3) : "";
+        final String result = mResults.remove(id);
+        if (result == null) {
+            send(exchange, 404, "text/html", ERROR_PAGE);
+        } else if (result.startsWith("<")) {
+            send(exchange, 200, "text/html", result);
+        } else {
+            send(exchange, 200, "application/json", result);
+        }
+    }
+
+    /**
+     * Adds one row from form data
+     */
+    @NonNull
+    private JSONObject insertForm(@NonNull String body) {
+        final Map<String, String> input = new HashMap<>();
+        for (String pair : body.split("&")) {
+            final int equals = pair.indexOf('=');
+            if (equals != -1) {
+                input.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return insertRow(input.get(KEY_PARAMETER), isRecognized(input));
+    }
+
+    /**
+     * Adds rows from a JSON request body
+     */
+    @NonNull
+    private JSONObject insertBatch(@NonNull String body) {
+        final JSONArray rows;
+        try {
+            rows = new JSONObject(body).getJSONArray("rows");
+        } catch (JSONException e) {
+            return error("Invalid JSON: " + e);
+        }
+        final JSONArray results = new JSONArray();
+        int added = 0;
+        synchronized (mSheetLock) {
+            for (int i = 0; i < rows.length(); i++) {
+                JSONObject input = rows.optJSONObject(i);
+                if (input == null) {
+                    input = new JSONObject();
+                }
+                final Map<String, String> values = new HashMap<>();
+                for (String column : input.keySet()) {
+                    values.put(column, input.optString(column, ""));
+                }
+                final JSONObject result = insertRow(values.get(KEY_PARAMETER),
+                        isRecognized(values));
+                if (result.optString("result").equals("success") && !result.has("duplicate")) {
+                    added++;
+                }
+                results.put(result);
+            }
+        }
+        final JSONObject status = new JSONObject();
+        status.put("result", "success");
+        status.put("message", added + " of " + rows.length() + " rows added");
+        status.put("results", results);
+        return status;
+    }
+
+    /**
+     * Adds a row if its key has not been added
+     *
+     * @param key        the idempotency key, or null
+     * @param recognized if the row has any values to add
+     * @return the result for the row
+     */
+    @NonNull
+    private JSONObject insertRow(String key, boolean recognized) {
+        synchronized (mSheetLock) {
+            final JSONObject result = new JSONObject();
+            if (key != null && mKeys.contains(key)) {
+                mDuplicateCount.incrementAndGet();
+                result.put("result", "success");
+                result.put("duplicate", true);
+                result.put("message", "Row was already added");
+            } else if (recognized) {
+                mRowCount++;
+                if (key != null) {
+                    mKeys.add(key);
+                }
+                result.put("result", "success");
+                // Row 1 is the header row
+                result.put("message", "Row added at position " + (mRowCount + 1));
+            } else {
+                return error("No recognized values were entered");
+            }
+            return result;
+        }
+    }
+
+    private static boolean isRecognized(@NonNull Map<String, String> values) {
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            if (!entry.getKey().equals(KEY_PARAMETER) && !entry.getValue().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @NonNull
+    private static JSONObject error(@NonNull String message) {
+        final JSONObject status = new JSONObject();
+        status.put("result", "error");
+        status.put("message", message);
+        return status;
+    }
+
+    @NonNull
+    private static String readBody(@NonNull HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            in = new GZIPInputStream(in);
+        }
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        in.transferTo(body);
+        in.close();
+        return body.toString(StandardCharsets.UTF_8);
+    }
+
+    private static void send(@NonNull HttpExchange exchange, int status,
+                             @NonNull String contentType, @NonNull String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        final Options options = new Options(args);
+        final Faults faults = Faults.fromOptions(options);
+        final UploadStandInServer server = new UploadStandInServer(
+                options.getInt("port", 8080), faults, options.getBoolean("gzip", false));
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println(server.describeStats());
+            server.stop();
+        }));
+        System.out.println("Stand-in upload server at " + server.getUrl() + ", " + faults);
+        System.out.println("Build the app with -PuploadUrl=http://<this computer's address>:"
+                + options.getInt("port", 8080) + SCRIPT_PATH + " to upload here");
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.build;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Reduces the size of a directory of map tiles with the layout {zoom}/{x}/{y}.webp by
+ * re-encoding the tiles that are far from the survey routes at a lower quality
+ * <p>
+ * Tiles that are within the buffer distance of a route (see {@link RouteBuffer}) are copied
+ * unchanged. Other tiles are re-encoded with cwebp. The tiles are not removed, so the map has
+ * no holes where surveyors may still look around.
+ * <p>
+ * If cwebp is not installed, the task fails, because the app would silently become much
+ * larger. To build without cwebp anyway, set {@link #getAllowUncompressedTiles()}, and all tiles
+ * are copied unchanged with a warning.
+ * <p>
+ * The task also writes a report of the tile counts and sizes at each zoom level.
+ */
+public abstract class CullTilesTask extends DefaultTask {
+    private static final Pattern TILE_NAME = Pattern.compile("(\\d+)\\.webp");
+
+    /**
+     * @return the directory that contains the original tiles
+     */
+    @InputDirectory
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract DirectoryProperty getTileDirectory();
+
+    /**
+     * @return the route order file, which maps each route name to a list of site numbers
+     */
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getRouteOrderFile();
+
+    /**
+     * @return the GeoJSON file with the site locations
+     */
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getSitesFile();
+
+    /**
+     * @return the distance from the routes, in meters, within which tiles are kept unchanged
+     */
+    @Input
+    public abstract Property<Double> getBufferDistance();
+
+    /**
+     * @return the WebP quality (0-100) for tiles outside the buffer
+     */
+    @Input
+    public abstract Property<Integer> getQuality();
+
+    /**
+     * @return the cwebp executable to run
+     */
+    @Input
+    public abstract Property<String> getCwebp();
+
+    /**
+     * @return true to copy the tiles unchanged if cwebp is not installed, instead of failing
+     */
+    @Input
+    public abstract Property<Boolean> getAllowUncompressedTiles();
+
+    /**
+     * @return the directory to write the tiles to
+     */
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDirectory();
+
+    /**
+     * @return the file to write the report to
+     */
+    @OutputFile
+    public abstract RegularFileProperty getReportFile();
+
+    public CullTilesTask() {
+        getBufferDistance().convention(150.0);
+        getQuality().convention(50);
+        getCwebp().convention("cwebp");
+        getAllowUncompressedTiles().convention(false);
+    }
+
+    @TaskAction
+    public void cull() throws IOException, InterruptedException {
+        final int quality = getQuality().get();
+        if (quality < 0 || quality > 100) {
+            throw new IllegalArgumentException("Invalid WebP quality " + quality);
+        }
+        final RouteBuffer buffer = new RouteBuffer(getRouteOrderFile().get().getAsFile(),
+                getSitesFile().get().getAsFile(), getBufferDistance().get());
+        final File inputDirectory = getTileDirectory().get().getAsFile();
+        final File outputDirectory = getOutputDirectory().get().getAsFile();
+        deleteContents(outputDirectory);
+
+        final boolean reEncode = isCwebpAvailable();
+        if (!reEncode) {
+            if (!getAllowUncompressedTiles().get()) {
+                throw new GradleException(getCwebp().get() + " was not found, so map tiles"
+                        + " cannot be re-encoded. Install libwebp, or build with"
+                        + " -PallowUncompressedTiles to include the original tiles.");
+            }
+            getLogger().warn("{} was not found, so map tiles will not be re-encoded. Install"
+                    + " libwebp to make the app smaller.", getCwebp().get());
+        }
+
+        // Each tile is handled separately, and cwebp is slow enough to be worth running in
+        // parallel
+        final TreeMap<Integer, ZoomStats> stats = new TreeMap<>();
+        final List<Future<TileResult>> results = new ArrayList<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors());
+        try {
+            for (File zoomDir : listDirectories(inputDirectory)) {
+                final int zoom = Integer.parseInt(zoomDir.getName());
+                stats.computeIfAbsent(zoom, z -> new ZoomStats());
+                for (File xDir : listDirectories(zoomDir)) {
+                    final int x = Integer.parseInt(xDir.getName());
+                    final File[] files = xDir.listFiles();
+                    if (files == null) {
+                        throw new IOException("Failed to list " + xDir);
+                    }
+                    for (File file : files) {
+                        final Matcher matcher = TILE_NAME.matcher(file.getName());
+                        if (!file.isFile() || !matcher.matches()) {
+                            continue;
+                        }
+                        final int y = Integer.parseInt(matcher.group(1));
+                        final File output = new File(outputDirectory,
+                                zoom + File.separator + x + File.separator + file.getName());
+                        final boolean inBuffer = buffer.intersectsTile(zoom, x, y);
+                        results.add(executor.submit(() -> processTile(zoom, file, output,
+                                inBuffer, reEncode && !inBuffer, quality)));
+                    }
+                }
+            }
+            for (Future<TileResult> future : results) {
+                final TileResult result = future.get();
+                stats.get(result.mZoom).add(result);
+            }
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to process a tile", cause);
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        writeReport(stats, buffer.getDistance(), quality, reEncode);
+    }
+
+    private TileResult processTile(int zoom, File input, File output, boolean inBuffer,
+                                   boolean reEncode, int quality)
+            throws IOException, InterruptedException {
+        final File parent = output.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Failed to create " + parent);
+        }
+        final long originalSize = input.length();
+        boolean reEncoded = false;
+        if (reEncode) {
+            final Process process = new ProcessBuilder(getCwebp().get(), "-quiet",
+                    "-q", Integer.toString(quality), "-m", "6",
+                    input.getAbsolutePath(), "-o", output.getAbsolutePath())
+                    .redirectErrorStream(true)
+                    .start();
+            final byte[] messages = process.getInputStream().readAllBytes();
+            if (process.waitFor() != 0) {
+                throw new IOException("cwebp failed on " + input + ": "
+                        + new String(messages, StandardCharsets.UTF_8).trim());
+            }
+            // Already small tiles (for example, solid colors) can get larger, so those are kept
+            reEncoded = output.length() < originalSize;
+        }
+        if (!reEncoded) {
+            Files.copy(input.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return new TileResult(zoom, inBuffer, reEncoded, originalSize, output.length());
+    }
+
+    private boolean isCwebpAvailable() throws InterruptedException {
+        try {
+            final Process process = new ProcessBuilder(getCwebp().get(), "-version")
+                    .redirectErrorStream(true)
+                    .start();
+            process.getInputStream().readAllBytes();
+            return process.waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void writeReport(Map<Integer, ZoomStats> stats, double bufferDistance, int quality,
+                             boolean reEncoded) throws IOException {
+        final ZoomStats total = new ZoomStats();
+        final File reportFile = getReportFile().get().getAsFile();
+        try (PrintWriter out = new PrintWriter(reportFile, StandardCharsets.UTF_8)) {
+            out.printf(Locale.ROOT, "Map tiles within %.0f m of a route are unchanged.%n",
+                    bufferDistance);
+            if (reEncoded) {
+                out.printf(Locale.ROOT, "Other tiles are re-encoded at WebP quality %d.%n",
+                        quality);
+            } else {
+                out.println("cwebp was not available, so no tiles were re-encoded.");
+            }
+            out.println();
+            out.printf(Locale.ROOT, "%4s %7s %9s %9s %10s %12s %12s %7s%n", "Zoom", "Tiles",
+                    "In buffer", "Coverage", "Re-encoded", "Input bytes", "Output bytes",
+                    "Ratio");
+            for (Map.Entry<Integer, ZoomStats> entry : stats.entrySet()) {
+                printRow(out, Integer.toString(entry.getKey()), entry.getValue());
+                total.add(entry.getValue());
+            }
+            printRow(out, "All", total);
+        }
+        getLogger().lifecycle(String.format(Locale.ROOT,
+                "Map tiles: %d of %d within %.0f m of a route, %.1f MB reduced to %.1f MB"
+                        + " (report: %s)",
+                total.mInBuffer, total.mTiles, bufferDistance, total.mInputBytes / 1e6,
+                total.mOutputBytes / 1e6, reportFile));
+    }
+
+    private static void printRow(PrintWriter out, String zoom, ZoomStats stats) {
+        out.printf(Locale.ROOT, "%4s %7d %9d %8.1f%% %10d %12d %12d %6.1f%%%n", zoom,
+                stats.mTiles, stats.mInBuffer, percent(stats.mInBuffer, stats.mTiles),
+                stats.mReEncoded, stats.mInputBytes, stats.mOutputBytes,
+                percent(stats.mOutputBytes, stats.mInputBytes));
+    }
+
+    private static double percent(long part, long whole) {
+        return whole == 0 ? 0 : 100.0 * part / whole;
+    }
+
+    private static void deleteContents(File directory) throws IOException {
+        final File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            try (Stream<Path> paths = Files.walk(child.toPath())) {
+                for (Path path : paths.sorted(Comparator.reverseOrder())
+                        .toArray(Path[]::new)) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    private static File[] listDirectories(File directory) throws IOException {
+        final File[] children = directory.listFiles(file -> file.isDirectory()
+                && file.getName().matches("\\d+"));
+        if (children == null) {
+            throw new IOException("Failed to list " + directory);
+        }
+        return children;
+    }
+
+    /**
+     * The outcome for one tile
+     */
+    private static final class TileResult {
+        final int mZoom;
+        final boolean mInBuffer;
+        final boolean mReEncoded;
+        final long mInputBytes;
+        final long mOutputBytes;
+
+        TileResult(int zoom, boolean inBuffer, boolean reEncoded, long inputBytes,
+                   long outputBytes) {
+            mZoom = zoom;
+            mInBuffer = inBuffer;
+            mReEncoded = reEncoded;
+            mInputBytes = inputBytes;
+            mOutputBytes = outputBytes;
+        }
+    }
+
+    /**
+     * Totals for one zoom level, or for all levels
+     */
+    private static final class ZoomStats {
+        int mTiles;
+        int mInBuffer;
+        int mReEncoded;
+        long mInputBytes;
+        long mOutputBytes;
+
+        void add(TileResult result) {
+            mTiles++;
+            mInBuffer += result.mInBuffer ? 1 : 0;
+            mReEncoded += result.mReEncoded ? 1 : 0;
+            mInputBytes += result.mInputBytes;
+            mOutputBytes += result.mOutputBytes;
+        }
+
+        void add(ZoomStats other) {
+            mTiles += other.mTiles;
+            mInBuffer += other.mInBuffer;
+            mReEncoded += other.mReEncoded;
+            mInputBytes += other.mInputBytes;
+            mOutputBytes += other.mOutputBytes;
+        }
+    }
+}
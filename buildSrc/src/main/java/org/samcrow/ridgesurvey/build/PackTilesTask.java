@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.build;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Packs a directory of map tiles with the layout {zoom}/{x}/{y}.webp into a PMTiles archive
+ * <p>
+ * The archive is written to {@code <outputDirectory>/<packName>.pmtiles}, so the output
+ * directory can be added to the app's assets.
+ */
+public abstract class PackTilesTask extends DefaultTask {
+
+    /**
+     * @return the directory that contains the tiles
+     */
+    @InputDirectory
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract DirectoryProperty getTileDirectory();
+
+    /**
+     * @return the name of the archive, without the extension
+     */
+    @Input
+    public abstract Property<String> getPackName();
+
+    /**
+     * @return the directory to write the pack to
+     */
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDirectory();
+
+    @TaskAction
+    public void pack() throws IOException {
+        final File outputDirectory = getOutputDirectory().get().getAsFile();
+        // Remove packs from earlier builds that may have had another name
+        PmTilesWriter.deletePacks(outputDirectory);
+        final File output = new File(outputDirectory,
+                getPackName().get() + PmTilesWriter.EXTENSION);
+        final int count = new PmTilesWriter(PmTilesWriter.TYPE_WEBP)
+                .addDirectory(getTileDirectory().get().getAsFile())
+                .write(output);
+        getLogger().info("Packed {} tiles into {} ({} bytes)", count, output, output.length());
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.build;
+
+import groovy.json.JsonOutput;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts GeoJSON files into vector tiles and packs them into a PMTiles archive
+ * <p>
+ * Each file becomes a layer named after the file, without the .geojson extension. The archive
+ * is written to {@code <outputDirectory>/<packName>.pmtiles}, so the output directory can be
+ * added to the app's assets.
+ */
+public abstract class PackVectorTilesTask extends DefaultTask {
+    private static final String GEOJSON_EXTENSION = ".geojson";
+
+    /**
+     * @return the GeoJSON files to convert
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.NAME_ONLY)
+    public abstract ConfigurableFileCollection getSourceFiles();
+
+    /**
+     * @return the lowest zoom level to make tiles for
+     */
+    @Input
+    public abstract Property<Integer> getMinZoom();
+
+    /**
+     * @return the highest zoom level to make tiles for. MapLibre scales up these tiles at
+     * higher zoom levels, so lines are not simplified at this level.
+     */
+    @Input
+    public abstract Property<Integer> getMaxZoom();
+
+    /**
+     * @return the name of the archive, without the extension
+     */
+    @Input
+    public abstract Property<String> getPackName();
+
+    /**
+     * @return the directory to write the pack to
+     */
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDirectory();
+
+    @TaskAction
+    public void pack() throws IOException {
+        final VectorTiler tiler = new VectorTiler();
+        final List<Map<String, Object>> layers = new ArrayList<>();
+        long sourceSize = 0;
+        for (File file : getSourceFiles().getFiles()) {
+            final String name = file.getName();
+            if (!name.endsWith(GEOJSON_EXTENSION)) {
+                throw new IOException(file + " is not a GeoJSON file");
+            }
+            final String layerName = name.substring(0, name.length() - GEOJSON_EXTENSION.length());
+            tiler.addGeoJson(layerName, file);
+            sourceSize += file.length();
+            final Map<String, Object> layer = new LinkedHashMap<>();
+            layer.put("id", layerName);
+            layer.put("fields", new LinkedHashMap<>());
+            layers.add(layer);
+        }
+
+        // The pack writer reads tiles from files, so the tiles are written to the temporary
+        // directory first. Files left from earlier builds are not added to the pack.
+        final File tileDirectory = new File(getTemporaryDir(), "tiles");
+        final PmTilesWriter writer = new PmTilesWriter(PmTilesWriter.TYPE_MVT);
+        final int minZoom = getMinZoom().get();
+        final int maxZoom = getMaxZoom().get();
+        for (Map<String, Object> layer : layers) {
+            layer.put("minzoom", minZoom);
+            layer.put("maxzoom", maxZoom);
+        }
+        final Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("name", getPackName().get());
+        metadata.put("vector_layers", layers);
+        writer.setMetadata(JsonOutput.toJson(metadata));
+        for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+            final int tileZoom = zoom;
+            tiler.forEachTile(zoom, zoom != maxZoom, (x, y, tile) -> {
+                final File file = new File(tileDirectory,
+                        tileZoom + File.separator + x + File.separator + y + ".pbf");
+                final File parent = file.getParentFile();
+                if (!parent.isDirectory() && !parent.mkdirs()) {
+                    throw new IOException("Failed to create " + parent);
+                }
+                Files.write(file.toPath(), tile);
+                writer.addTile(tileZoom, x, y, file);
+            });
+        }
+
+        final File outputDirectory = getOutputDirectory().get().getAsFile();
+        // Remove packs from earlier builds that may have had another name
+        PmTilesWriter.deletePacks(outputDirectory);
+        final File output = new File(outputDirectory,
+                getPackName().get() + PmTilesWriter.EXTENSION);
+        final int count = writer.write(output);
+        getLogger().info("Packed {} vector tiles from {} bytes of GeoJSON into {} ({} bytes)",
+                count, sourceSize, output, output.length());
+    }
+}
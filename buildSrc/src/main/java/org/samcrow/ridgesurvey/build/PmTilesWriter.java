@@ -0,0 +1,395 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.samcrow.ridgesurvey.build;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes PMTiles (version 3) archives, which MapLibre reads from the app's assets with
+ * {@code pmtiles://asset://<name>.pmtiles} URLs
+ * <p>
+ * The tiles are written in tile ID order, so tiles close together on the map are close
+ * together in the file. Identical tiles are stored once. The directories and metadata are
+ * compressed with gzip, and the tiles are stored as they are.
+ *
+ * @see <a href="https://github.com/protomaps/PMTiles/blob/main/spec/v3/spec.md">PMTiles
+ * specification</a>
+ */
+public final class PmTilesWriter {
+    /**
+     * The file name extension of PMTiles archives
+     */
+    public static final String EXTENSION = ".pmtiles";
+    /**
+     * The tile type of Mapbox vector tiles
+     */
+    public static final int TYPE_MVT = 1;
+    /**
+     * The tile type of WebP images
+     */
+    public static final int TYPE_WEBP = 4;
+
+    private static final int HEADER_SIZE = 127;
+    /**
+     * The header and root directory must fit in this many bytes at the start of the file
+     */
+    private static final int ROOT_LIMIT = 16384;
+    private static final int COMPRESSION_NONE = 1;
+    private static final int COMPRESSION_GZIP = 2;
+    private static final Pattern TILE_NAME = Pattern.compile("(\\d+)\\.webp");
+
+    private final int mTileType;
+    /**
+     * The tiles to write, by tile ID
+     */
+    private final TreeMap<Long, File> mTiles = new TreeMap<>();
+    private String mMetadata = "{}";
+    private int mMinZoom = Integer.MAX_VALUE;
+    private int mMaxZoom = Integer.MIN_VALUE;
+    private double mMinLongitude = 180;
+    private double mMinLatitude = 90;
+    private double mMaxLongitude = -180;
+    private double mMaxLatitude = -90;
+
+    /**
+     * @param tileType the type of all the tiles, {@link #TYPE_MVT} or {@link #TYPE_WEBP}
+     */
+    public PmTilesWriter(int tileType) {
+        mTileType = tileType;
+    }
+
+    /**
+     * Adds all tiles in a directory with the layout {zoom}/{x}/{y}.webp
+     *
+     * @param directory the directory
+     * @return this writer
+     */
+    public PmTilesWriter addDirectory(File directory) throws IOException {
+        for (File zoomDir : listDirectories(directory)) {
+            final int zoom = Integer.parseInt(zoomDir.getName());
+            for (File xDir : listDirectories(zoomDir)) {
+                final int x = Integer.parseInt(xDir.getName());
+                final File[] files = xDir.listFiles();
+                if (files == null) {
+                    throw new IOException("Failed to list " + xDir);
+                }
+                for (File file : files) {
+                    final Matcher matcher = TILE_NAME.matcher(file.getName());
+                    if (file.isFile() && matcher.matches()) {
+                        addTile(zoom, x, Integer.parseInt(matcher.group(1)), file);
+                    }
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Adds one tile, replacing any tile already added at the same position
+     */
+    public PmTilesWriter addTile(int zoom, int x, int y, File file) {
+        mTiles.put(tileId(zoom, x, y), file);
+        mMinZoom = Math.min(mMinZoom, zoom);
+        mMaxZoom = Math.max(mMaxZoom, zoom);
+        final double tiles = 1 << zoom;
+        mMinLongitude = Math.min(mMinLongitude, x / tiles * 360.0 - 180.0);
+        mMaxLongitude = Math.max(mMaxLongitude, (x + 1) / tiles * 360.0 - 180.0);
+        mMinLatitude = Math.min(mMinLatitude, tileLatitude(y + 1, tiles));
+        mMaxLatitude = Math.max(mMaxLatitude, tileLatitude(y, tiles));
+        return this;
+    }
+
+    /**
+     * Sets the metadata, which MapLibre reads vector layer information from
+     *
+     * @param json a JSON object
+     * @return this writer
+     */
+    public PmTilesWriter setMetadata(String json) {
+        mMetadata = json;
+        return this;
+    }
+
+    /**
+     * Writes the archive
+     *
+     * @param output the file to write
+     * @return the number of tiles written
+     */
+    public int write(File output) throws IOException {
+        if (mTiles.isEmpty()) {
+            throw new IOException("No tiles to pack");
+        }
+
+        // Assign offsets in tile ID order. A tile with the same contents as an earlier one
+        // refers to the earlier data, and a run of identical tiles is one entry.
+        final List<Entry> entries = new ArrayList<>();
+        final List<File> contents = new ArrayList<>();
+        final Map<String, Entry> entriesByDigest = new HashMap<>();
+        long dataLength = 0;
+        String lastDigest = null;
+        for (Map.Entry<Long, File> tile : mTiles.entrySet()) {
+            final File file = tile.getValue();
+            final long length = file.length();
+            if (length == 0 || length > Integer.MAX_VALUE) {
+                throw new IOException("Tile " + file + " is empty or too large");
+            }
+            final String digest = digest(file);
+            final Entry last = entries.isEmpty() ? null : entries.get(entries.size() - 1);
+            final Entry same = entriesByDigest.get(digest);
+            if (digest.equals(lastDigest) && last.mTileId + last.mRunLength == tile.getKey()) {
+                last.mRunLength++;
+            } else if (same != null) {
+                entries.add(new Entry(tile.getKey(), same.mOffset, same.mLength, 1));
+            } else {
+                final Entry entry = new Entry(tile.getKey(), dataLength, (int) length, 1);
+                entries.add(entry);
+                entriesByDigest.put(digest, entry);
+                contents.add(file);
+                dataLength += length;
+            }
+            lastDigest = digest;
+        }
+
+        // Split the directory into leaves if the root would be too large
+        final byte[] metadata = gzip(mMetadata.getBytes(StandardCharsets.UTF_8));
+        byte[] root = gzip(encodeDirectory(entries));
+        final ByteArrayOutputStream leaves = new ByteArrayOutputStream();
+        for (int leafSize = 4096; HEADER_SIZE + root.length > ROOT_LIMIT; leafSize *= 2) {
+            leaves.reset();
+            final List<Entry> rootEntries = new ArrayList<>();
+            for (int start = 0; start < entries.size(); start += leafSize) {
+                final List<Entry> leafEntries =
+                        entries.subList(start, Math.min(entries.size(), start + leafSize));
+                final byte[] leaf = gzip(encodeDirectory(leafEntries));
+                rootEntries.add(new Entry(leafEntries.get(0).mTileId, leaves.size(),
+                        leaf.length, 0));
+                leaves.write(leaf);
+            }
+            root = gzip(encodeDirectory(rootEntries));
+        }
+
+        final long rootOffset = HEADER_SIZE;
+        final long metadataOffset = rootOffset + root.length;
+        final long leavesOffset = metadataOffset + metadata.length;
+        final long dataOffset = leavesOffset + leaves.size();
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("PMTiles".getBytes(StandardCharsets.US_ASCII));
+        header.put((byte) 3);
+        header.putLong(rootOffset);
+        header.putLong(root.length);
+        header.putLong(metadataOffset);
+        header.putLong(metadata.length);
+        header.putLong(leavesOffset);
+        header.putLong(leaves.size());
+        header.putLong(dataOffset);
+        header.putLong(dataLength);
+        header.putLong(mTiles.size());
+        header.putLong(entries.size());
+        header.putLong(contents.size());
+        // Clustered, because the tile data is in tile ID order
+        header.put((byte) 1);
+        header.put((byte) COMPRESSION_GZIP);
+        header.put((byte) COMPRESSION_NONE);
+        header.put((byte) mTileType);
+        header.put((byte) mMinZoom);
+        header.put((byte) mMaxZoom);
+        header.putInt(toE7(mMinLongitude));
+        header.putInt(toE7(mMinLatitude));
+        header.putInt(toE7(mMaxLongitude));
+        header.putInt(toE7(mMaxLatitude));
+        header.put((byte) mMinZoom);
+        header.putInt(toE7((mMinLongitude + mMaxLongitude) / 2));
+        header.putInt(toE7((mMinLatitude + mMaxLatitude) / 2));
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output), 1 << 16)) {
+            out.write(header.array());
+            out.write(root);
+            out.write(metadata);
+            leaves.writeTo(out);
+            for (File file : contents) {
+                out.write(Files.readAllBytes(file.toPath()));
+            }
+        }
+        if (output.length() != dataOffset + dataLength) {
+            throw new IOException("Tiles changed while packing");
+        }
+        return mTiles.size();
+    }
+
+    /**
+     * Deletes all PMTiles archives in a directory
+     *
+     * @param directory the directory
+     */
+    public static void deletePacks(File directory) throws IOException {
+        final File[] packs = directory.listFiles(file -> file.getName().endsWith(EXTENSION));
+        if (packs != null) {
+            for (File pack : packs) {
+                if (!pack.delete()) {
+                    throw new IOException("Failed to delete " + pack);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the tile ID of a tile, which is its position on a Hilbert curve at its zoom
+     * level, plus the number of tiles at all lower zoom levels
+     */
+    static long tileId(int zoom, int x, int y) {
+        long id = ((1L << (2 * zoom)) - 1) / 3;
+        long curveX = x;
+        long curveY = y;
+        for (long s = (1L << zoom) / 2; s > 0; s /= 2) {
+            final long rx = (curveX & s) != 0 ? 1 : 0;
+            final long ry = (curveY & s) != 0 ? 1 : 0;
+            id += s * s * ((3 * rx) ^ ry);
+            // Rotate the quadrant
+            if (ry == 0) {
+                if (rx == 1) {
+                    curveX = s - 1 - curveX;
+                    curveY = s - 1 - curveY;
+                }
+                final long swap = curveX;
+                curveX = curveY;
+                curveY = swap;
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Encodes a directory: the entry count, and then the tile IDs (as differences), run
+     * lengths, lengths, and offsets of all the entries. An offset of 0 means that the data
+     * follows the data of the previous entry.
+     */
+    private static byte[] encodeDirectory(List<Entry> entries) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, entries.size());
+        long lastId = 0;
+        for (Entry entry : entries) {
+            writeVarint(out, entry.mTileId - lastId);
+            lastId = entry.mTileId;
+        }
+        for (Entry entry : entries) {
+            writeVarint(out, entry.mRunLength);
+        }
+        for (Entry entry : entries) {
+            writeVarint(out, entry.mLength);
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            final Entry entry = entries.get(i);
+            final Entry previous = i > 0 ? entries.get(i - 1) : null;
+            if (previous != null && entry.mOffset == previous.mOffset + previous.mLength) {
+                writeVarint(out, 0);
+            } else {
+                writeVarint(out, entry.mOffset + 1);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static String digest(File file) throws IOException {
+        try {
+            final byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(Files.readAllBytes(file.toPath()));
+            final StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static int toE7(double degrees) {
+        return (int) Math.round(degrees * 1e7);
+    }
+
+    /**
+     * @return the latitude of the top edge of tiles in a row, in degrees
+     */
+    private static double tileLatitude(int y, double tiles) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y / tiles))));
+    }
+
+    private static File[] listDirectories(File directory) throws IOException {
+        final File[] children = directory.listFiles(file -> file.isDirectory()
+                && file.getName().matches("\\d+"));
+        if (children == null) {
+            throw new IOException("Failed to list " + directory);
+        }
+        return children;
+    }
+
+    /**
+     * One directory entry. For a leaf directory, the run length is 0 and the offset is in the
+     * leaf directory section instead of the tile data.
+     */
+    private static final class Entry {
+        final long mTileId;
+        final long mOffset;
+        final int mLength;
+        long mRunLength;
+
+        Entry(long tileId, long offset, int length, long runLength) {
+            mTileId = tileId;
+            mOffset = offset;
+            mLength = length;
+            mRunLength = runLength;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.build;
+
+import groovy.json.JsonSlurper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The area within some distance of the survey routes
+ * <p>
+ * Each route is the line through its sites in the order from route_order.json, like the route
+ * lines drawn in the app. Distances are measured on a plane tangent to the earth at the middle
+ * of the sites, which is accurate enough over a few kilometers.
+ */
+public final class RouteBuffer {
+    private static final double EARTH_RADIUS_M = 6378137;
+
+    /**
+     * The buffer distance, in meters
+     */
+    private final double mDistance;
+
+    /**
+     * The latitude of the plane's origin, in degrees
+     */
+    private final double mOriginLatitude;
+    /**
+     * The number of meters per degree of longitude on the plane
+     */
+    private final double mMetersPerLongitude;
+    /**
+     * The number of meters per degree of latitude on the plane
+     */
+    private final double mMetersPerLatitude;
+
+    /**
+     * The route segments, as (x1, y1, x2, y2) in meters on the plane. A site that is alone on
+     * its route is a segment with both ends at the site.
+     */
+    private final List<double[]> mSegments = new ArrayList<>();
+
+    /**
+     * Reads the routes
+     *
+     * @param routeOrderFile the route order file, which maps each route name to a list of site
+     *                       numbers
+     * @param sitesFile      a GeoJSON file with a point feature for each site. The name property
+     *                       of each feature is its site number.
+     * @param distance       the buffer distance, in meters
+     */
+    public RouteBuffer(File routeOrderFile, File sitesFile, double distance) throws IOException {
+        if (!(distance >= 0)) {
+            throw new IllegalArgumentException("Invalid buffer distance " + distance);
+        }
+        mDistance = distance;
+
+        final Map<Integer, double[]> sites = readSites(sitesFile);
+        double latitudeSum = 0;
+        for (double[] site : sites.values()) {
+            latitudeSum += site[1];
+        }
+        mOriginLatitude = latitudeSum / sites.size();
+        mMetersPerLatitude = Math.toRadians(EARTH_RADIUS_M);
+        mMetersPerLongitude = mMetersPerLatitude * Math.cos(Math.toRadians(mOriginLatitude));
+
+        final Map<?, ?> routes = (Map<?, ?>) new JsonSlurper().parse(routeOrderFile);
+        for (Map.Entry<?, ?> route : routes.entrySet()) {
+            final List<double[]> points = new ArrayList<>();
+            for (Object number : (List<?>) route.getValue()) {
+                final double[] site = sites.get(((Number) number).intValue());
+                if (site == null) {
+                    throw new IOException("Route " + route.getKey() + " contains site " + number
+                            + ", which is not in " + sitesFile);
+                }
+                points.add(new double[]{
+                        site[0] * mMetersPerLongitude,
+                        (site[1] - mOriginLatitude) * mMetersPerLatitude,
+                });
+            }
+            if (points.size() == 1) {
+                final double[] point = points.get(0);
+                mSegments.add(new double[]{point[0], point[1], point[0], point[1]});
+            }
+            for (int i = 1; i < points.size(); i++) {
+                final double[] start = points.get(i - 1);
+                final double[] end = points.get(i);
+                mSegments.add(new double[]{start[0], start[1], end[0], end[1]});
+            }
+        }
+        if (mSegments.isEmpty()) {
+            throw new IOException("No routes in " + routeOrderFile);
+        }
+    }
+
+    /**
+     * @return the buffer distance, in meters
+     */
+    public double getDistance() {
+        return mDistance;
+    }
+
+    /**
+     * Returns true if any part of a tile is within the buffer distance of a route
+     *
+     * @param zoom the zoom level of the tile
+     * @param x    the X coordinate of the tile
+     * @param y    the Y coordinate of the tile
+     * @return if the tile intersects the buffer
+     */
+    public boolean intersectsTile(int zoom, int x, int y) {
+        final double tiles = 1 << zoom;
+        // Web Mercator tiles are rectangles in longitude and latitude, so they are also
+        // rectangles on the plane
+        final double minX = (x / tiles * 360.0 - 180.0) * mMetersPerLongitude;
+        final double maxX = ((x + 1) / tiles * 360.0 - 180.0) * mMetersPerLongitude;
+        final double minY = (tileLatitude(y + 1, tiles) - mOriginLatitude) * mMetersPerLatitude;
+        final double maxY = (tileLatitude(y, tiles) - mOriginLatitude) * mMetersPerLatitude;
+        for (double[] segment : mSegments) {
+            if (distanceToRectangle(segment, minX, minY, maxX, maxY) <= mDistance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the site locations
+     *
+     * @return a map from site number to (longitude, latitude) in degrees
+     */
+    private static Map<Integer, double[]> readSites(File sitesFile) throws IOException {
+        final Map<?, ?> collection = (Map<?, ?>) new JsonSlurper().parse(sitesFile);
+        final Map<Integer, double[]> sites = new HashMap<>();
+        for (Object featureObject : (List<?>) collection.get("features")) {
+            final Map<?, ?> feature = (Map<?, ?>) featureObject;
+            final Map<?, ?> properties = (Map<?, ?>) feature.get("properties");
+            final Map<?, ?> geometry = (Map<?, ?>) feature.get("geometry");
+            final List<?> coordinates = (List<?>) geometry.get("coordinates");
+            final int number = Integer.parseInt(String.valueOf(properties.get("name")));
+            sites.put(number, new double[]{
+                    ((Number) coordinates.get(0)).doubleValue(),
+                    ((Number) coordinates.get(1)).doubleValue(),
+            });
+        }
+        if (sites.isEmpty()) {
+            throw new IOException("No sites in " + sitesFile);
+        }
+        return sites;
+    }
+
+    /**
+     * @return the latitude of the top edge of tiles in a row, in degrees
+     */
+    private static double tileLatitude(int y, double tiles) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y / tiles))));
+    }
+
+    /**
+     * Returns the distance between a line segment and an axis-aligned rectangle, which is zero
+     * if they intersect
+     */
+    private static double distanceToRectangle(double[] segment, double minX, double minY,
+                                              double maxX, double maxY) {
+        final double x1 = segment[0];
+        final double y1 = segment[1];
+        final double x2 = segment[2];
+        final double y2 = segment[3];
+        if (segmentIntersectsRectangle(x1, y1, x2, y2, minX, minY, maxX, maxY)) {
+            return 0;
+        }
+        // Otherwise, the closest points are an end of the segment or a corner of the rectangle
+        double distance = Math.min(
+                pointToRectangle(x1, y1, minX, minY, maxX, maxY),
+                pointToRectangle(x2, y2, minX, minY, maxX, maxY));
+        distance = Math.min(distance, pointToSegment(minX, minY, x1, y1, x2, y2));
+        distance = Math.min(distance, pointToSegment(minX, maxY, x1, y1, x2, y2));
+        distance = Math.min(distance, pointToSegment(maxX, minY, x1, y1, x2, y2));
+        distance = Math.min(distance, pointToSegment(maxX, maxY, x1, y1, x2, y2));
+        return distance;
+    }
+
+    /**
+     * Clips a line segment to a rectangle (Liang-Barsky) and returns true if any of it remains
+     */
+    private static boolean segmentIntersectsRectangle(double x1, double y1, double x2, double y2,
+                                                      double minX, double minY,
+                                                      double maxX, double maxY) {
+        final double dx = x2 - x1;
+        final double dy = y2 - y1;
+        final double[] p = {-dx, dx, -dy, dy};
+        final double[] q = {x1 - minX, maxX - x1, y1 - minY, maxY - y1};
+        double t0 = 0;
+        double t1 = 1;
+        for (int i = 0; i < 4; i++) {
+            if (p[i] == 0) {
+                if (q[i] < 0) {
+                    return false;
+                }
+            } else {
+                final double t = q[i] / p[i];
+                if (p[i] < 0) {
+                    t0 = Math.max(t0, t);
+                } else {
+                    t1 = Math.min(t1, t);
+                }
+                if (t0 > t1) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static double pointToRectangle(double x, double y, double minX, double minY,
+                                           double maxX, double maxY) {
+        final double dx = Math.max(Math.max(minX - x, 0), x - maxX);
+        final double dy = Math.max(Math.max(minY - y, 0), y - maxY);
+        return Math.hypot(dx, dy);
+    }
+
+    private static double pointToSegment(double x, double y, double x1, double y1,
+                                         double x2, double y2) {
+        final double dx = x2 - x1;
+        final double dy = y2 - y1;
+        final double lengthSquared = dx * dx + dy * dy;
+        double t = 0;
+        if (lengthSquared != 0) {
+            t = Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / lengthSquared));
+        }
+        return Math.hypot(x - (x1 + t * dx), y - (y1 + t * dy));
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.build;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes one Mapbox vector tile (version 2.1 of the specification)
+ * <p>
+ * Geometry is given in tile coordinates, from 0 to the extent across the tile. Only points and
+ * lines are supported, because the map has no polygons.
+ *
+ * @see <a href="https://github.com/mapbox/vector-tile-spec/tree/master/2.1">Vector tile
+ * specification</a>
+ */
+public final class VectorTileEncoder {
+    public static final int TYPE_POINT = 1;
+    public static final int TYPE_LINE = 2;
+
+    private static final int COMMAND_MOVE_TO = 1;
+    private static final int COMMAND_LINE_TO = 2;
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_FIXED64 = 1;
+    private static final int WIRE_LENGTH = 2;
+
+    private final int mExtent;
+
+    /**
+     * The layers, in the order they were first used
+     */
+    private final Map<String, Layer> mLayers = new LinkedHashMap<>();
+
+    /**
+     * @param extent the size of the tile in tile coordinates
+     */
+    public VectorTileEncoder(int extent) {
+        mExtent = extent;
+    }
+
+    /**
+     * Adds a feature
+     *
+     * @param layerName  the name of the layer to add the feature to
+     * @param properties the feature properties. Values may be strings, numbers, or booleans.
+     *                   Null values are left out.
+     * @param type       {@link #TYPE_POINT} or {@link #TYPE_LINE}
+     * @param parts      for points, one array of x, y pairs for all the points. For lines,
+     *                   one array of x, y pairs for each line.
+     */
+    public void addFeature(String layerName, Map<?, ?> properties, int type, List<int[]> parts) {
+        if (type != TYPE_POINT && type != TYPE_LINE) {
+            throw new IllegalArgumentException("Unsupported geometry type " + type);
+        }
+        final Layer layer = mLayers.computeIfAbsent(layerName, name -> new Layer());
+
+        final ByteArrayOutputStream tags = new ByteArrayOutputStream();
+        for (Map.Entry<?, ?> property : properties.entrySet()) {
+            final Object value = normalizeValue(property.getValue());
+            if (value != null) {
+                writeVarint(tags, layer.mKeys.computeIfAbsent(String.valueOf(property.getKey()),
+                        key -> layer.mKeys.size()));
+                writeVarint(tags, layer.mValues.computeIfAbsent(value,
+                        key -> layer.mValues.size()));
+            }
+        }
+
+        final ByteArrayOutputStream geometry = new ByteArrayOutputStream();
+        int cursorX = 0;
+        int cursorY = 0;
+        for (int[] part : parts) {
+            final int pointCount = part.length / 2;
+            for (int i = 0; i < pointCount; i++) {
+                if (i == 0) {
+                    writeVarint(geometry, command(COMMAND_MOVE_TO,
+                            type == TYPE_POINT ? pointCount : 1));
+                } else if (i == 1 && type == TYPE_LINE) {
+                    writeVarint(geometry, command(COMMAND_LINE_TO, pointCount - 1));
+                }
+                final int x = part[2 * i];
+                final int y = part[2 * i + 1];
+                writeVarint(geometry, zigZag(x - cursorX));
+                writeVarint(geometry, zigZag(y - cursorY));
+                cursorX = x;
+                cursorY = y;
+            }
+        }
+
+        final ByteArrayOutputStream feature = new ByteArrayOutputStream();
+        if (tags.size() != 0) {
+            writeBytes(feature, 2, tags.toByteArray());
+        }
+        writeTag(feature, 3, WIRE_VARINT);
+        writeVarint(feature, type);
+        writeBytes(feature, 4, geometry.toByteArray());
+        layer.mFeatures.add(feature.toByteArray());
+    }
+
+    /**
+     * @return true if no features have been added
+     */
+    public boolean isEmpty() {
+        return mLayers.isEmpty();
+    }
+
+    /**
+     * @return the encoded tile
+     */
+    public byte[] encode() {
+        final ByteArrayOutputStream tile = new ByteArrayOutputStream();
+        for (Map.Entry<String, Layer> entry : mLayers.entrySet()) {
+            final Layer layer = entry.getValue();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeTag(out, 15, WIRE_VARINT);
+            writeVarint(out, 2);
+            writeBytes(out, 1, entry.getKey().getBytes(StandardCharsets.UTF_8));
+            for (byte[] feature : layer.mFeatures) {
+                writeBytes(out, 2, feature);
+            }
+            // Keys and values were numbered in insertion order
+            for (String key : layer.mKeys.keySet()) {
+                writeBytes(out, 3, key.getBytes(StandardCharsets.UTF_8));
+            }
+            for (Object value : layer.mValues.keySet()) {
+                writeBytes(out, 4, encodeValue(value));
+            }
+            writeTag(out, 5, WIRE_VARINT);
+            writeVarint(out, mExtent);
+            writeBytes(tile, 3, out.toByteArray());
+        }
+        return tile.toByteArray();
+    }
+
+    /**
+     * Converts a property value to a String, Long, Double, or Boolean, so that equal values
+     * are stored once
+     */
+    private static Object normalizeValue(Object value) {
+        if (value == null || value instanceof String || value instanceof Boolean) {
+            return value;
+        }
+        if (value instanceof Number) {
+            final Number number = (Number) value;
+            final double doubleValue = number.doubleValue();
+            if (doubleValue == Math.rint(doubleValue) && Math.abs(doubleValue) < 1L << 53) {
+                return number.longValue();
+            }
+            return doubleValue;
+        }
+        throw new IllegalArgumentException("Unsupported property value " + value);
+    }
+
+    private static byte[] encodeValue(Object value) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (value instanceof String) {
+            writeBytes(out, 1, ((String) value).getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof Double) {
+            writeTag(out, 3, WIRE_FIXED64);
+            final long bits = Double.doubleToLongBits((Double) value);
+            for (int i = 0; i < 8; i++) {
+                out.write((int) (bits >>> (8 * i)));
+            }
+        } else if (value instanceof Long) {
+            writeTag(out, 6, WIRE_VARINT);
+            writeVarint(out, zigZag((Long) value));
+        } else {
+            writeTag(out, 7, WIRE_VARINT);
+            writeVarint(out, ((Boolean) value) ? 1 : 0);
+        }
+        return out.toByteArray();
+    }
+
+    private static int command(int id, int count) {
+        return (id & 0x7) | (count << 3);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void writeTag(ByteArrayOutputStream out, int field, int wireType) {
+        writeVarint(out, ((long) field << 3) | wireType);
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, int field, byte[] bytes) {
+        writeTag(out, field, WIRE_LENGTH);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * The features, keys, and values of one layer. Each key and value is mapped to its index.
+     */
+    private static final class Layer {
+        final List<byte[]> mFeatures = new ArrayList<>();
+        final Map<String, Integer> mKeys = new LinkedHashMap<>();
+        final Map<Object, Integer> mValues = new LinkedHashMap<>();
+    }
+}
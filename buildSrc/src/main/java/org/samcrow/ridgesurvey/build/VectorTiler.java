@@ -0,0 +1,399 @@
+/*
+ * Copyright (c) 2025 Sam Crow
+ *
+ * This file is part of JRBPSurvey.
+ *
+ * JRBPSurvey is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JRBPSurvey is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Foobar.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.samcrow.ridgesurvey.build;
+
+import groovy.json.JsonSlurper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Cuts GeoJSON features into vector tiles
+ * <p>
+ * Lines are simplified at each zoom level except the highest, so that low zoom levels do not
+ * have more detail than can be seen. They are then clipped to each tile, with a small buffer so
+ * that lines continue across tile edges. Points are put in the tile that contains them.
+ * <p>
+ * Coordinates are in Web Mercator, scaled so that the world is from 0 to 1 in each direction,
+ * with y increasing to the south like tile coordinates.
+ */
+public final class VectorTiler {
+    /**
+     * The size of a tile in tile coordinates
+     */
+    public static final int EXTENT = 4096;
+    /**
+     * The distance, in tile coordinates, that lines extend past the edges of a tile
+     */
+    private static final int BUFFER = 64;
+    /**
+     * The Douglas-Peucker tolerance, in tile coordinates. MapLibre draws tiles 512 pixels wide,
+     * so this is one pixel.
+     */
+    private static final double SIMPLIFY_TOLERANCE = EXTENT / 512.0;
+
+    /**
+     * Receives tiles from {@link #forEachTile(int, boolean, TileConsumer)}
+     */
+    public interface TileConsumer {
+        void accept(int x, int y, byte[] tile) throws IOException;
+    }
+
+    private final List<SourceFeature> mFeatures = new ArrayList<>();
+
+    /**
+     * Adds all features from a GeoJSON file to a layer
+     *
+     * @param layerName the name of the layer in the tiles
+     * @param file      a GeoJSON file that contains a FeatureCollection
+     * @return this tiler
+     * @throws IOException if the file could not be read or contains unsupported geometry
+     */
+    public VectorTiler addGeoJson(String layerName, File file) throws IOException {
+        final Map<?, ?> collection = (Map<?, ?>) new JsonSlurper().parse(file);
+        for (Object featureObject : (List<?>) collection.get("features")) {
+            final Map<?, ?> feature = (Map<?, ?>) featureObject;
+            final Map<?, ?> geometry = (Map<?, ?>) feature.get("geometry");
+            Map<?, ?> properties = (Map<?, ?>) feature.get("properties");
+            if (properties == null) {
+                properties = Collections.emptyMap();
+            }
+            final String type = String.valueOf(geometry.get("type"));
+            final List<?> coordinates = (List<?>) geometry.get("coordinates");
+            final List<double[]> parts = new ArrayList<>();
+            final int tileType;
+            switch (type) {
+                case "Point":
+                    parts.add(project(Collections.singletonList(coordinates)));
+                    tileType = VectorTileEncoder.TYPE_POINT;
+                    break;
+                case "MultiPoint":
+                    parts.add(project(coordinates));
+                    tileType = VectorTileEncoder.TYPE_POINT;
+                    break;
+                case "LineString":
+                    parts.add(project(coordinates));
+                    tileType = VectorTileEncoder.TYPE_LINE;
+                    break;
+                case "MultiLineString":
+                    for (Object line : coordinates) {
+                        parts.add(project((List<?>) line));
+                    }
+                    tileType = VectorTileEncoder.TYPE_LINE;
+                    break;
+                default:
+                    throw new IOException("Unsupported geometry type " + type + " in " + file);
+            }
+            mFeatures.add(new SourceFeature(layerName, properties, tileType, parts));
+        }
+        return this;
+    }
+
+    /**
+     * Cuts the features into tiles at one zoom level
+     *
+     * @param zoom     the zoom level
+     * @param simplify if lines should be simplified
+     * @param consumer receives each tile that contains at least one feature
+     */
+    public void forEachTile(int zoom, boolean simplify, TileConsumer consumer) throws IOException {
+        final int tileCount = 1 << zoom;
+        final double buffer = (double) BUFFER / EXTENT;
+        final Map<Long, VectorTileEncoder> tiles = new TreeMap<>();
+        for (SourceFeature feature : mFeatures) {
+            if (feature.mType == VectorTileEncoder.TYPE_POINT) {
+                // Group the points by tile
+                final Map<Long, List<Integer>> pointsByTile = new TreeMap<>();
+                final double[] points = feature.mParts.get(0);
+                for (int i = 0; i < points.length; i += 2) {
+                    final double x = points[i] * tileCount;
+                    final double y = points[i + 1] * tileCount;
+                    final int tileX = Math.min(tileCount - 1, (int) Math.floor(x));
+                    final int tileY = Math.min(tileCount - 1, (int) Math.floor(y));
+                    final List<Integer> tilePoints = pointsByTile.computeIfAbsent(
+                            key(tileX, tileY), k -> new ArrayList<>());
+                    tilePoints.add((int) Math.round((x - tileX) * EXTENT));
+                    tilePoints.add((int) Math.round((y - tileY) * EXTENT));
+                }
+                for (Map.Entry<Long, List<Integer>> entry : pointsByTile.entrySet()) {
+                    final int[] coordinates = entry.getValue().stream()
+                            .mapToInt(Integer::intValue).toArray();
+                    tiles.computeIfAbsent(entry.getKey(), k -> new VectorTileEncoder(EXTENT))
+                            .addFeature(feature.mLayer, feature.mProperties, feature.mType,
+                                    Collections.singletonList(coordinates));
+                }
+                continue;
+            }
+
+            // Lines, in tile units at this zoom
+            final List<double[]> lines = new ArrayList<>();
+            for (double[] part : feature.mParts) {
+                final double[] scaled = new double[part.length];
+                for (int i = 0; i < part.length; i++) {
+                    scaled[i] = part[i] * tileCount;
+                }
+                lines.add(simplify ? simplify(scaled, SIMPLIFY_TOLERANCE / EXTENT) : scaled);
+            }
+            final int minTileX = Math.max(0, (int) Math.floor(feature.mMinX * tileCount - buffer));
+            final int maxTileX = Math.min(tileCount - 1,
+                    (int) Math.floor(feature.mMaxX * tileCount + buffer));
+            final int minTileY = Math.max(0, (int) Math.floor(feature.mMinY * tileCount - buffer));
+            final int maxTileY = Math.min(tileCount - 1,
+                    (int) Math.floor(feature.mMaxY * tileCount + buffer));
+            for (int tileX = minTileX; tileX <= maxTileX; tileX++) {
+                for (int tileY = minTileY; tileY <= maxTileY; tileY++) {
+                    final List<int[]> clipped = new ArrayList<>();
+                    for (double[] line : lines) {
+                        clip(line, tileX - buffer, tileY - buffer, tileX + 1 + buffer,
+                                tileY + 1 + buffer, tileX, tileY, clipped);
+                    }
+                    if (!clipped.isEmpty()) {
+                        tiles.computeIfAbsent(key(tileX, tileY),
+                                        k -> new VectorTileEncoder(EXTENT))
+                                .addFeature(feature.mLayer, feature.mProperties, feature.mType,
+                                        clipped);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<Long, VectorTileEncoder> tile : tiles.entrySet()) {
+            consumer.accept((int) (tile.getKey() >> 32), (int) (long) tile.getKey(),
+                    tile.getValue().encode());
+        }
+    }
+
+    /**
+     * Projects GeoJSON positions (longitude, latitude) to x, y pairs
+     */
+    private static double[] project(List<?> positions) {
+        final double[] projected = new double[positions.size() * 2];
+        for (int i = 0; i < positions.size(); i++) {
+            final List<?> position = (List<?>) positions.get(i);
+            final double longitude = ((Number) position.get(0)).doubleValue();
+            final double latitude = Math.toRadians(((Number) position.get(1)).doubleValue());
+            projected[2 * i] = (longitude + 180.0) / 360.0;
+            projected[2 * i + 1] = (1.0 - Math.log(Math.tan(latitude) + 1.0 / Math.cos(latitude))
+                    / Math.PI) / 2.0;
+        }
+        return projected;
+    }
+
+    /**
+     * Simplifies a line with the Douglas-Peucker algorithm
+     *
+     * @param line      x, y pairs
+     * @param tolerance the largest distance that a removed point may be from the simplified line
+     * @return the remaining x, y pairs
+     */
+    private static double[] simplify(double[] line, double tolerance) {
+        final int count = line.length / 2;
+        if (count < 3) {
+            return line;
+        }
+        final boolean[] keep = new boolean[count];
+        keep[0] = true;
+        keep[count - 1] = true;
+        final int[] stack = new int[2 * count];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        stack[stackSize++] = count - 1;
+        while (stackSize != 0) {
+            final int last = stack[--stackSize];
+            final int first = stack[--stackSize];
+            double maxDistance = -1;
+            int farthest = -1;
+            for (int i = first + 1; i < last; i++) {
+                final double distance = distanceToSegment(line, i, first, last);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+            if (farthest != -1 && maxDistance > tolerance) {
+                keep[farthest] = true;
+                stack[stackSize++] = first;
+                stack[stackSize++] = farthest;
+                stack[stackSize++] = farthest;
+                stack[stackSize++] = last;
+            }
+        }
+        int kept = 0;
+        for (boolean k : keep) {
+            kept += k ? 1 : 0;
+        }
+        final double[] simplified = new double[2 * kept];
+        int j = 0;
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                simplified[j++] = line[2 * i];
+                simplified[j++] = line[2 * i + 1];
+            }
+        }
+        return simplified;
+    }
+
+    /**
+     * @return the distance from point p to the segment from point a to point b
+     */
+    private static double distanceToSegment(double[] line, int p, int a, int b) {
+        final double px = line[2 * p];
+        final double py = line[2 * p + 1];
+        final double ax = line[2 * a];
+        final double ay = line[2 * a + 1];
+        final double dx = line[2 * b] - ax;
+        final double dy = line[2 * b + 1] - ay;
+        final double lengthSquared = dx * dx + dy * dy;
+        double t = 0;
+        if (lengthSquared != 0) {
+            t = Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+        }
+        return Math.hypot(px - (ax + t * dx), py - (ay + t * dy));
+    }
+
+    /**
+     * Clips a line to a rectangle and adds the pieces inside it, in tile coordinates, to a list
+     *
+     * @param line   x, y pairs in tile units
+     * @param minX   the west edge of the rectangle, in tile units
+     * @param minY   the north edge of the rectangle, in tile units
+     * @param maxX   the east edge of the rectangle, in tile units
+     * @param maxY   the south edge of the rectangle, in tile units
+     * @param tileX  the X coordinate of the tile
+     * @param tileY  the Y coordinate of the tile
+     * @param pieces the list to add pieces to
+     */
+    private static void clip(double[] line, double minX, double minY, double maxX, double maxY,
+                             int tileX, int tileY, List<int[]> pieces) {
+        // The piece being built, as tile coordinates, or null if the line is outside
+        List<Integer> piece = null;
+        for (int i = 2; i < line.length; i += 2) {
+            final double x1 = line[i - 2];
+            final double y1 = line[i - 1];
+            final double dx = line[i] - x1;
+            final double dy = line[i + 1] - y1;
+            // Liang-Barsky
+            final double[] p = {-dx, dx, -dy, dy};
+            final double[] q = {x1 - minX, maxX - x1, y1 - minY, maxY - y1};
+            double t0 = 0;
+            double t1 = 1;
+            boolean inside = true;
+            for (int side = 0; side < 4 && inside; side++) {
+                if (p[side] == 0) {
+                    inside = q[side] >= 0;
+                } else {
+                    final double t = q[side] / p[side];
+                    if (p[side] < 0) {
+                        t0 = Math.max(t0, t);
+                    } else {
+                        t1 = Math.min(t1, t);
+                    }
+                    inside = t0 <= t1;
+                }
+            }
+            if (!inside) {
+                piece = finishPiece(piece, pieces);
+                continue;
+            }
+            if (piece == null || t0 > 0) {
+                piece = finishPiece(piece, pieces);
+                piece = new ArrayList<>();
+                addPoint(piece, x1 + t0 * dx, y1 + t0 * dy, tileX, tileY);
+            }
+            addPoint(piece, x1 + t1 * dx, y1 + t1 * dy, tileX, tileY);
+            if (t1 < 1) {
+                piece = finishPiece(piece, pieces);
+            }
+        }
+        finishPiece(piece, pieces);
+    }
+
+    /**
+     * Adds a point in tile coordinates to a piece, unless it is the same as the last point
+     */
+    private static void addPoint(List<Integer> piece, double x, double y, int tileX, int tileY) {
+        final int tx = (int) Math.round((x - tileX) * EXTENT);
+        final int ty = (int) Math.round((y - tileY) * EXTENT);
+        final int size = piece.size();
+        if (size >= 2 && piece.get(size - 2) == tx && piece.get(size - 1) == ty) {
+            return;
+        }
+        piece.add(tx);
+        piece.add(ty);
+    }
+
+    /**
+     * Adds a piece to the list if it has at least two points
+     *
+     * @return null
+     */
+    private static List<Integer> finishPiece(List<Integer> piece, List<int[]> pieces) {
+        if (piece != null && piece.size() >= 4) {
+            pieces.add(piece.stream().mapToInt(Integer::intValue).toArray());
+        }
+        return null;
+    }
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * A feature read from GeoJSON, with projected coordinates
+     */
+    private static final class SourceFeature {
+        final String mLayer;
+        final Map<?, ?> mProperties;
+        final int mType;
+        /**
+         * For points, one array of x, y pairs. For lines, one array of x, y pairs for each line.
+         */
+        final List<double[]> mParts;
+        final double mMinX;
+        final double mMinY;
+        final double mMaxX;
+        final double mMaxY;
+
+        SourceFeature(String layer, Map<?, ?> properties, int type, List<double[]> parts) {
+            mLayer = layer;
+            mProperties = properties;
+            mType = type;
+            mParts = parts;
+            double minX = Double.POSITIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            for (double[] part : parts) {
+                for (int i = 0; i < part.length; i += 2) {
+                    minX = Math.min(minX, part[i]);
+                    maxX = Math.max(maxX, part[i]);
+                    minY = Math.min(minY, part[i + 1]);
+                    maxY = Math.max(maxY, part[i + 1]);
+                }
+            }
+            mMinX = minX;
+            mMinY = minY;
+            mMaxX = maxX;
+            mMaxY = maxY;
+        }
+    }
+}
@@ -2,10 +2,25 @@
  * This Google script accepts key/value pairs from an HTTP POST request and inserts them into the first sheet of a spreadsheet.
  *
  * The script looks for headers in row 1 of the spreadsheet. For each HTTP POST parameter that matches a header,
- * it inserts the corresponding value into the spreadsheet. It inserts only one row each time it is invoked.
+ * it inserts the corresponding value into the spreadsheet. It inserts one row each time it is invoked, unless the
+ * request is a batch (see below).
  *
  * When it completes, it returns JSON with a "result" key corresponding to either "success" or "error", and a "message" key
  * containing additional information.
+ *
+ * Batch mode: if the request body is JSON (content type application/json), it must be an object with a "rows" key
+ * containing an array of objects. Each object maps column names to values, like the POST parameters of a single-row
+ * request. All valid rows are appended with one range write. The response has a "results" array with one entry for
+ * each row in the request, in the same order. Each entry has a "result" key of "success" or "error", and a "message" key
+ * for errors.
+ *
+ * Duplicates: a row may have an idempotency key, in the "_key" parameter or the "_key" value of a batch row. The keys of
+ * added rows are stored in a hidden sheet named "Upload keys". A row with a key that has already been added is not added
+ * again, and its result is "success" with "duplicate" set to true. This makes it safe for a client to send a row again if
+ * it did not receive the response to an earlier request.
+ *
+ * A GET request returns JSON with "batch" set to true, so that clients can check if this version of the script is
+ * deployed before sending batches.
  */
 
 /*
@@ -22,18 +37,46 @@
  * 8. Copy the web app URL. You can send POST requests to that URL to run the script.
  */
 
+// The ID of the spreadsheet to insert into
+var sheetID = "1TMBLRNYbcvIP5KG83BZ4NprRxCsfX6tXZJTD42ZnnHM";
+// The name of the sheet that stores the idempotency keys of added rows
+var keySheetName = "Upload keys";
+// The request parameter that contains the idempotency key of a row
+var keyParameter = "_key";
+
+function doGet(e) {
+  return jsonOutput({
+    result: "success",
+    batch: true
+  });
+}
+
 function doPost(e) {
   if (!e) return;
 
-  // The ID of the spreadsheet to insert into
-  var sheetID = "1TMBLRNYbcvIP5KG83BZ4NprRxCsfX6tXZJTD42ZnnHM";
+  // The type may have parameters, like "application/json; charset=utf-8". The stand-in server
+  // (benchmark UploadStandInServer) uses the same prefix match.
+  if (e.postData && e.postData.type && e.postData.type.indexOf("application/json") == 0) {
+    return jsonOutput(insertBatch(e.postData.contents));
+  }
+
   var status = {};
 
   var lock = LockService.getScriptLock();
   lock.waitLock(30000);
 
   try {
-    var sheet = SpreadsheetApp.openById(sheetID).getSheets()[0];
+    var spreadsheet = SpreadsheetApp.openById(sheetID);
+    var sheet = spreadsheet.getSheets()[0];
+    var keySheet = getKeySheet(spreadsheet);
+    var key = e.parameter[keyParameter];
+    if (key && findKeys(keySheet, [key])[key]) {
+      return jsonOutput({
+        result: "success",
+        duplicate: true,
+        message: "Row was already added"
+      });
+    }
     // Get headers from row 1 of the sheet
     var headers = sheet.getRange(1, 1, 1, sheet.getLastColumn()).getValues()[0];
     // Add the data
@@ -56,6 +99,9 @@ function doPost(e) {
 
     if (row.length) {
       sheet.appendRow(row);
+      if (key) {
+        saveKeys(keySheet, [key]);
+      }
       status = {
         result: "success",
         message: "Row added at position " + sheet.getLastRow(),
@@ -78,6 +124,179 @@ function doPost(e) {
     lock.releaseLock();
   }
 
+  return jsonOutput(status);
+}
+
+/*
+ * Inserts a batch of rows from a JSON request body and returns the status object
+ */
+function insertBatch(body) {
+  var rows;
+  try {
+    rows = JSON.parse(body).rows;
+  } catch (e) {
+    return {
+      result: "error",
+      message: "Invalid JSON: " + e.toString()
+    };
+  }
+  if (!Array.isArray(rows)) {
+    return {
+      result: "error",
+      message: "No rows array"
+    };
+  }
+
+  var status = {};
+
+  var lock = LockService.getScriptLock();
+  lock.waitLock(30000);
+
+  try {
+    var spreadsheet = SpreadsheetApp.openById(sheetID);
+    var sheet = spreadsheet.getSheets()[0];
+    var keySheet = getKeySheet(spreadsheet);
+    var rowKeys = [];
+    for (var k = 0; k < rows.length; k++) {
+      if (rows[k] && rows[k][keyParameter]) {
+        rowKeys.push(String(rows[k][keyParameter]));
+      }
+    }
+    var addedKeys = findKeys(keySheet, rowKeys);
+    // Get headers from row 1 of the sheet
+    var headers = sheet.getRange(1, 1, 1, sheet.getLastColumn()).getValues()[0];
+    // The rows to write, and the index in results of each one
+    var values = [];
+    var resultIndices = [];
+    var results = [];
+    // The keys of the rows to write
+    var newKeys = [];
+
+    for (var r = 0; r < rows.length; r++) {
+      var input = rows[r] || {};
+      var key = input[keyParameter];
+      if (key && addedKeys[key]) {
+        results.push({
+          result: "success",
+          duplicate: true,
+          message: "Row was already added"
+        });
+        continue;
+      }
+      var row = [];
+      var recognized = false;
+      // For each value that matches a heading, add the value to the row
+      // If no value matches, add an empty string
+      for (var i = 0; i < headers.length; i++) {
+        var value = input[headers[i]];
+        if (value === undefined || value === null) {
+          value = "";
+        }
+        if (value !== "") {
+          recognized = true;
+        }
+        row.push(value);
+      }
+
+      if (recognized) {
+        if (key) {
+          addedKeys[key] = true;
+          newKeys.push(key);
+        }
+        resultIndices.push(results.length);
+        values.push(row);
+        results.push({ result: "success" });
+      } else {
+        results.push({
+          result: "error",
+          message: "No recognized values were entered"
+        });
+      }
+    }
+
+    if (values.length) {
+      var firstRow = sheet.getLastRow() + 1;
+      sheet.getRange(firstRow, 1, values.length, headers.length).setValues(values);
+      // Save the keys after the rows, so that a failure can cause a duplicate but not a lost row
+      saveKeys(keySheet, newKeys);
+      for (var j = 0; j < resultIndices.length; j++) {
+        results[resultIndices[j]].message = "Row added at position " + (firstRow + j);
+      }
+    }
+
+    status = {
+      result: "success",
+      message: values.length + " of " + rows.length + " rows added",
+      results: results
+    };
+
+  } catch (e) {
+    status = {
+      result: "error",
+      message: e.toString()
+    };
+  } finally {
+    lock.releaseLock();
+  }
+
+  return status;
+}
+
+/*
+ * Returns the sheet that stores idempotency keys, creating it if it does not exist
+ */
+function getKeySheet(spreadsheet) {
+  var keySheet = spreadsheet.getSheetByName(keySheetName);
+  if (!keySheet) {
+    // Add the sheet at the end, so that the data sheet stays first
+    keySheet = spreadsheet.insertSheet(keySheetName, spreadsheet.getNumSheets());
+    keySheet.hideSheet();
+  }
+  return keySheet;
+}
+
+/*
+ * Returns an object with a true value for each of the given idempotency keys that has been
+ * added
+ *
+ * The key column grows with every upload, so it is searched with one TextFinder call instead
+ * of being read into the script.
+ */
+function findKeys(keySheet, keys) {
+  var found = {};
+  var lastRow = keySheet.getLastRow();
+  if (lastRow > 0 && keys.length) {
+    var patterns = [];
+    for (var i = 0; i < keys.length; i++) {
+      patterns.push(keys[i].replace(/[.*+?^${}()|[\]\\]/g, "\\$&"));
+    }
+    var matches = keySheet.getRange(1, 1, lastRow, 1)
+        .createTextFinder("^(?:" + patterns.join("|") + ")$")
+        .useRegularExpression(true)
+        .matchEntireCell(true)
+        .matchCase(true)
+        .findAll();
+    for (var j = 0; j < matches.length; j++) {
+      found[matches[j].getValue()] = true;
+    }
+  }
+  return found;
+}
+
+/*
+ * Appends idempotency keys to the key sheet with one range write
+ */
+function saveKeys(keySheet, keys) {
+  if (keys.length) {
+    var values = [];
+    for (var i = 0; i < keys.length; i++) {
+      values.push([keys[i]]);
+    }
+    keySheet.getRange(keySheet.getLastRow() + 1, 1, values.length, 1).setValues(values);
+  }
+}
+
+function jsonOutput(status) {
   return ContentService
     .createTextOutput(JSON.stringify(status))
     .setMimeType(ContentService.MimeType.JSON);